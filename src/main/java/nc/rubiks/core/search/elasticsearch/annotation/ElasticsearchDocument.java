@@ -1,5 +1,7 @@
 package nc.rubiks.core.search.elasticsearch.annotation;
 
+import org.elasticsearch.index.VersionType;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -48,4 +50,32 @@ public @interface ElasticsearchDocument {
      * @return true if synced, false otherwise
      */
     boolean synced() default false;
+
+    /**
+     * Whether or not the document is serialized (using the DocumentMapper) when the transaction modifying
+     * the entity commits, and stored compressed in the ElasticsearchSyncAction.
+     * The sync then sends this payload to Elasticsearch without reloading the entity from the database.
+     * Only applies to synced entities indexed as is (ignored when a documentType is set).
+     *
+     * @return true if the document is snapshotted at commit time, false otherwise
+     */
+    boolean snapshot() default false;
+
+    /**
+     * The versioning of the indexed documents.
+     * With VersionType.EXTERNAL or VersionType.EXTERNAL_GTE, documents are indexed with the version held by the versionField,
+     * so that an older state of a document can never overwrite a newer one (the outdated write is then ignored).
+     * Default is VersionType.INTERNAL : documents are always overwritten.
+     *
+     * @return The versionType used when indexing documents
+     */
+    VersionType versionType() default VersionType.INTERNAL;
+
+    /**
+     * The name of the field of the indexed class holding the version of the document (numeric or date).
+     * Only used with an external versionType. If not provided or empty, the field annotated with JPA @Version is used.
+     *
+     * @return The version field name
+     */
+    String versionField() default "";
 }
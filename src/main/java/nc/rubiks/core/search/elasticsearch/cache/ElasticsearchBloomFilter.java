@@ -0,0 +1,107 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of document ids, answering whether a document might exist without querying ES.
+ *
+ * An id that was never put is reported absent with certainty, an id that was put is always reported as possibly present :
+ * false positives (ids reported present while they were never put) occur with the configured probability.
+ * Ids can't be removed : deleted documents remain reported as possibly present.
+ */
+public class ElasticsearchBloomFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long nbBits;
+
+    private final int nbHashFunctions;
+
+    /**
+     * @param expectedInsertions the number of ids expected to be put in the filter
+     * @param falsePositiveProbability the expected probability of false positives once all these ids are put (e.g. 0.01)
+     */
+    public ElasticsearchBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        Validate.isTrue(expectedInsertions > 0, "The expectedInsertions must be positive");
+        Validate.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "The falsePositiveProbability must be between 0 and 1");
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        // Bits are indexed by positive ints : at most 2^31 bits (256 MB)
+        int nbLongs = (int) Math.min(1 << 25, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(nbLongs);
+        this.nbBits = nbLongs * 64L;
+        this.nbHashFunctions = Math.max(1, (int) Math.round((double) nbBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Records an id in the filter
+     * @param id the id of the document
+     */
+    public void put(String id) {
+        long hash = hash(id);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= nbHashFunctions; i++) {
+            long bit = index(hash1 + i * hash2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(word);
+            } while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask));
+        }
+    }
+
+    /**
+     * @param id the id of the document
+     * @return false if the id was never put in the filter, true if it might have been
+     */
+    public boolean mightContain(String id) {
+        long hash = hash(id);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 1; i <= nbHashFunctions; i++) {
+            long bit = index(hash1 + i * hash2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the filter, in bits
+     */
+    public long getNbBits() {
+        return nbBits;
+    }
+
+    /**
+     * @return the number of bits set per id
+     */
+    public int getNbHashFunctions() {
+        return nbHashFunctions;
+    }
+
+    private long index(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % nbBits;
+    }
+
+    /**
+     * 64 bits FNV-1a hash of the id, mixed with the murmur3 finalizer
+     */
+    private static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,172 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Near cache of the documents of a repository, read by findOne.
+ *
+ * Documents are stored serialized (the bytes of their source) : each read gets its own instance,
+ * and the memory used by the cache is bounded in number of documents and in bytes (the least recently used documents being evicted first).
+ * Documents also expire after a TTL, which bounds how long a document modified by another application (or node) can be read outdated.
+ *
+ * Documents written through the repository are updated (or invalidated) in the cache.
+ */
+public class ElasticsearchDocumentCache {
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final long ttlMilliseconds;
+
+    private final LinkedHashMap<String, Value> documents = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Incremented on each write : documents read before a write are not cached
+     */
+    private long generation = 0;
+
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of cached documents
+     * @param maxBytes the maximum size of the cached documents, in bytes (0 for no limit)
+     * @param ttlMilliseconds how long a document is cached
+     */
+    public ElasticsearchDocumentCache(int maxEntries, long maxBytes, long ttlMilliseconds) {
+        Validate.isTrue(maxEntries > 0, "The maxEntries must be positive");
+        Validate.isTrue(maxBytes >= 0, "The maxBytes can't be negative");
+        Validate.isTrue(ttlMilliseconds > 0, "The ttlMilliseconds must be positive");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlMilliseconds = ttlMilliseconds;
+    }
+
+    /**
+     * Returns the cached source of a document, or reads it and caches it
+     * @param id the id of the document
+     * @param reader reads the source of the document, null when it does not exist (not cached)
+     * @return the source of the document, null when it does not exist
+     */
+    public byte[] get(String id, Function<String, byte[]> reader) {
+        long readGeneration;
+        synchronized (documents) {
+            Value value = documents.get(id);
+            if (value != null && value.expiresAt > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return value.source;
+            }
+            if (value != null) {
+                remove(id);
+            }
+            readGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        byte[] source = reader.apply(id);
+        if (source != null) {
+            synchronized (documents) {
+                if (generation == readGeneration) {
+                    store(id, source);
+                }
+            }
+        }
+        return source;
+    }
+
+    /**
+     * Caches the source of a document that was just written
+     * @param id the id of the document
+     * @param source its source
+     */
+    public void put(String id, byte[] source) {
+        synchronized (documents) {
+            generation++;
+            remove(id);
+            store(id, source);
+        }
+    }
+
+    /**
+     * Invalidates a document
+     * @param id the id of the document
+     */
+    public void invalidate(String id) {
+        synchronized (documents) {
+            generation++;
+            remove(id);
+        }
+    }
+
+    /**
+     * Invalidates all the documents
+     */
+    public void clear() {
+        synchronized (documents) {
+            generation++;
+            documents.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * @return the statistics of the cache (hits, misses, evictions, size in documents and bytes) and its settings
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hits", hits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("evictions", evictions.get());
+        synchronized (documents) {
+            statistics.put("size", documents.size());
+            statistics.put("bytes", bytes);
+        }
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("maxBytes", maxBytes);
+        statistics.put("ttlMilliseconds", ttlMilliseconds);
+        return statistics;
+    }
+
+    private void store(String id, byte[] source) {
+        if (maxBytes > 0 && source.length > maxBytes) {
+            return;
+        }
+        Value previous = documents.put(id, new Value(source, System.currentTimeMillis() + ttlMilliseconds));
+        bytes += source.length - (previous != null ? previous.source.length : 0);
+
+        Iterator<Value> eldest = documents.values().iterator();
+        while (documents.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes)) {
+            bytes -= eldest.next().source.length;
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String id) {
+        Value value = documents.remove(id);
+        if (value != null) {
+            bytes -= value.source.length;
+        }
+    }
+
+    private static final class Value {
+
+        private final byte[] source;
+        private final long expiresAt;
+
+        private Value(byte[] source, long expiresAt) {
+            this.source = source;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
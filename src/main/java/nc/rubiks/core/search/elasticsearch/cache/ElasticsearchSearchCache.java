@@ -0,0 +1,213 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Client side cache of search results, shared by all the repositories.
+ *
+ * Results are cached by index and by request (the JSON of the search source, which contains the query, the page and the sort),
+ * bounded in size (the least recently used results being evicted first) and in time (TTL).
+ * The results of an index are invalidated whenever a document of this index is written by the application.
+ * Writes not refreshed yet are invisible to searches : after such an invalidation, the results of the index are not cached
+ * during the refresh interval, in order not to cache results missing the written documents.
+ *
+ * Cached results are shared between callers : they must not be modified.
+ */
+public class ElasticsearchSearchCache {
+
+    private final int maxSize;
+
+    private final long ttlMilliseconds;
+
+    private final long refreshIntervalMilliseconds;
+
+    private final Map<Key, Value> results;
+
+    /**
+     * Generation of each index, incremented when its results are invalidated :
+     * results of searches started before an invalidation are not cached
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Time until which the results of each index are not cached, its last writes being not refreshed yet
+     */
+    private final Map<String, Long> uncachedUntil = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of cached results
+     * @param ttlMilliseconds how long a result is cached
+     */
+    public ElasticsearchSearchCache(int maxSize, long ttlMilliseconds) {
+        this(maxSize, ttlMilliseconds, 0);
+    }
+
+    /**
+     * @param maxSize the maximum number of cached results
+     * @param ttlMilliseconds how long a result is cached
+     * @param refreshIntervalMilliseconds the refresh interval of the indices, during which results are not cached after an unrefreshed write
+     */
+    @SuppressWarnings("serial")
+    public ElasticsearchSearchCache(int maxSize, long ttlMilliseconds, long refreshIntervalMilliseconds) {
+        Validate.isTrue(maxSize > 0, "The maxSize must be positive");
+        Validate.isTrue(ttlMilliseconds > 0, "The ttlMilliseconds must be positive");
+        Validate.isTrue(refreshIntervalMilliseconds >= 0, "The refreshIntervalMilliseconds must not be negative");
+        this.maxSize = maxSize;
+        this.ttlMilliseconds = ttlMilliseconds;
+        this.refreshIntervalMilliseconds = refreshIntervalMilliseconds;
+        this.results = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+                if (size() > ElasticsearchSearchCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a search, or executes it and caches its result
+     * @param index the searched index
+     * @param request the request (identifying the search and the type of its result)
+     * @param search the search to execute on a miss
+     * @param <V> the type of the result
+     * @return the result of the search
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String index, String request, Supplier<V> search) {
+        Key key = new Key(index, request);
+        long now = System.currentTimeMillis();
+
+        synchronized (results) {
+            Value value = results.get(key);
+            if (value != null && value.expiresAt > now) {
+                hits.incrementAndGet();
+                return (V) value.result;
+            }
+            if (value != null) {
+                results.remove(key);
+            }
+        }
+
+        misses.incrementAndGet();
+        long generation = generation(index).get();
+        V result = search.get();
+        if (result != null) {
+            synchronized (results) {
+                if (generation(index).get() == generation && uncachedUntil.getOrDefault(index, 0L) <= System.currentTimeMillis()) {
+                    results.put(key, new Value(result, System.currentTimeMillis() + ttlMilliseconds));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Invalidates all the cached results of an index, after writes already visible to searches
+     * @param index the modified index
+     */
+    public void invalidate(String index) {
+        invalidate(index, true);
+    }
+
+    /**
+     * Invalidates all the cached results of an index
+     * @param index the modified index
+     * @param refreshed false if the writes are not refreshed yet : the results of the index are then not cached during the refresh interval
+     */
+    public void invalidate(String index, boolean refreshed) {
+        synchronized (results) {
+            generation(index).incrementAndGet();
+            if (!refreshed && refreshIntervalMilliseconds > 0) {
+                uncachedUntil.put(index, System.currentTimeMillis() + refreshIntervalMilliseconds);
+            }
+            results.keySet().removeIf(key -> key.index.equals(index));
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * Invalidates all the cached results
+     */
+    public void clear() {
+        synchronized (results) {
+            generations.values().forEach(AtomicLong::incrementAndGet);
+            results.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * @return the statistics of the cache (hits, misses, evictions, invalidations, size) and its settings
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        long nbHits = hits.get();
+        long nbMisses = misses.get();
+        statistics.put("hits", nbHits);
+        statistics.put("misses", nbMisses);
+        statistics.put("hitRatio", nbHits + nbMisses == 0 ? 0D : (double) nbHits / (nbHits + nbMisses));
+        statistics.put("evictions", evictions.get());
+        statistics.put("invalidations", invalidations.get());
+        synchronized (results) {
+            statistics.put("size", results.size());
+        }
+        statistics.put("maxSize", maxSize);
+        statistics.put("ttlMilliseconds", ttlMilliseconds);
+        statistics.put("refreshIntervalMilliseconds", refreshIntervalMilliseconds);
+        return statistics;
+    }
+
+    private AtomicLong generation(String index) {
+        return generations.computeIfAbsent(index, k -> new AtomicLong());
+    }
+
+    private static final class Key {
+
+        private final String index;
+        private final String request;
+
+        private Key(String index, String request) {
+            this.index = index;
+            this.request = request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(index, key.index) && Objects.equals(request, key.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, request);
+        }
+    }
+
+    private static final class Value {
+
+        private final Object result;
+        private final long expiresAt;
+
+        private Value(Object result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
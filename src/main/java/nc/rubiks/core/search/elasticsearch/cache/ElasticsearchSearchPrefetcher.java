@@ -0,0 +1,122 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prefetches the next page of searches walked page after page, into the ElasticsearchSearchCache :
+ * the next page is then read from the cache when requested.
+ *
+ * Prefetches are bounded : at most "concurrency" prefetches run at the same time (further ones are skipped, never queued),
+ * and pages larger than "maxPageSize" are not prefetched. The memory used by prefetched pages is bounded by the search cache.
+ */
+public class ElasticsearchSearchPrefetcher {
+
+    private static final int MAX_SEQUENCES = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSearchPrefetcher.class);
+
+    private final int maxPageSize;
+
+    private final Semaphore permits;
+
+    private final ExecutorService executor;
+
+    /**
+     * Last page read of each sequence (search without its page), the least recently read sequences being forgotten first
+     */
+    @SuppressWarnings("serial")
+    private final Map<String, Integer> lastPages = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_SEQUENCES;
+        }
+    };
+
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param concurrency the maximum number of prefetches running at the same time
+     * @param maxPageSize the maximum size of the prefetched pages
+     */
+    public ElasticsearchSearchPrefetcher(int concurrency, int maxPageSize) {
+        Validate.isTrue(concurrency > 0, "The concurrency must be positive");
+        Validate.isTrue(maxPageSize > 0, "The maxPageSize must be positive");
+        this.maxPageSize = maxPageSize;
+        this.permits = new Semaphore(concurrency);
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("es-search-prefetch-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(concurrency, threadFactory);
+    }
+
+    /**
+     * Records the page read in a sequence
+     * @param sequence the search, without its page
+     * @param pageNumber the page read
+     * @return true if the previous page of this sequence was the last one read (sequential access)
+     */
+    public boolean isSequential(String sequence, int pageNumber) {
+        synchronized (lastPages) {
+            Integer lastPage = lastPages.put(sequence, pageNumber);
+            return lastPage != null && lastPage == pageNumber - 1;
+        }
+    }
+
+    /**
+     * Prefetches a page in background, unless the page is too large or too many prefetches are running
+     * @param pageSize the size of the page
+     * @param search the search of the page, storing its response in the search cache
+     */
+    public void prefetch(int pageSize, Runnable search) {
+        if (pageSize > maxPageSize || !permits.tryAcquire()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    search.run();
+                    prefetched.incrementAndGet();
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    log.debug("Prefetch of the next page failed : {}", ex);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            skipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of pages prefetched, skipped (limits reached) and failed
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("prefetched", prefetched.get());
+        statistics.put("skipped", skipped.get());
+        statistics.put("failed", failed.get());
+        return statistics;
+    }
+
+    /**
+     * Stops prefetching, the running prefetches being abandoned
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
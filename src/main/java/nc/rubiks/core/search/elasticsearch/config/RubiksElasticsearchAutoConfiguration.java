@@ -1,5 +1,11 @@
 package nc.rubiks.core.search.elasticsearch.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchPrefetcher;
+import nc.rubiks.core.search.elasticsearch.endpoint.ElasticsearchSearchCacheEndpoint;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
+import nc.rubiks.core.search.elasticsearch.mapper.JacksonDocumentMapper;
 import nc.rubiks.core.search.elasticsearch.repository.impl.ElasticSearchTemplate;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -15,15 +21,21 @@ import org.elasticsearch.client.RestHighLevelClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import javax.annotation.PreDestroy;
 import javax.net.ssl.SSLContext;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Stream;
 
 /**
@@ -38,6 +50,7 @@ public class RubiksElasticsearchAutoConfiguration {
     private RubiksElasticsearchProperties rubiksElasticsearchProperties;
     private ElasticSearchTemplate elasticSearchTemplate;
     private RestClient restClient;
+    private ExecutorService asyncExecutor;
 
     public RubiksElasticsearchAutoConfiguration(RubiksElasticsearchProperties rubiksElasticsearchProperties) {
         this.rubiksElasticsearchProperties = rubiksElasticsearchProperties;
@@ -46,10 +59,57 @@ public class RubiksElasticsearchAutoConfiguration {
     @Bean
     @ConditionalOnMissingBean
     public ElasticSearchTemplate buildElasticSearchTemplate() {
-        elasticSearchTemplate = new ElasticSearchTemplate(rubiksElasticsearchProperties.getContext(), rubiksElasticsearchProperties.getTestMode());
+        elasticSearchTemplate = new ElasticSearchTemplate(
+            rubiksElasticsearchProperties.getContext(),
+            rubiksElasticsearchProperties.getTestMode(),
+            rubiksElasticsearchProperties.getIndexExistsCacheTtlMilliseconds());
+        elasticSearchTemplate.setCursorOffsetThreshold(rubiksElasticsearchProperties.getCursorOffsetThreshold());
+        elasticSearchTemplate.setMultiGetChunkSize(rubiksElasticsearchProperties.getMultiGetChunkSize());
+        elasticSearchTemplate.setSearchSingleFlight(rubiksElasticsearchProperties.getSearchSingleFlight());
+        if (rubiksElasticsearchProperties.getAsyncPoolSize() > 0) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("es-async-");
+            threadFactory.setDaemon(true);
+            asyncExecutor = Executors.newFixedThreadPool(rubiksElasticsearchProperties.getAsyncPoolSize(), threadFactory);
+            elasticSearchTemplate.setAsyncExecutor(asyncExecutor);
+        }
+        if (rubiksElasticsearchProperties.getSearchCacheEnabled()) {
+            elasticSearchTemplate.setSearchCache(new ElasticsearchSearchCache(
+                rubiksElasticsearchProperties.getSearchCacheMaxSize(),
+                rubiksElasticsearchProperties.getSearchCacheTtlMilliseconds(),
+                rubiksElasticsearchProperties.getSearchCacheRefreshIntervalMilliseconds()));
+            if (rubiksElasticsearchProperties.getSearchPrefetchEnabled()) {
+                elasticSearchTemplate.setSearchPrefetcher(new ElasticsearchSearchPrefetcher(
+                    rubiksElasticsearchProperties.getSearchPrefetchConcurrency(),
+                    rubiksElasticsearchProperties.getSearchPrefetchMaxPageSize()));
+            }
+        }
         return elasticSearchTemplate;
     }
 
+    /**
+     * Endpoint exposing the statistics of the search cache, when it is enabled
+     * @param template the ElasticSearchTemplate holding the cache
+     * @return the endpoint
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    @ConfigurationProperties(prefix = "endpoints.elasticsearch_search_cache")
+    @ConditionalOnProperty(prefix = "rubiks.elasticsearch", name = "search-cache-enabled", havingValue = "true")
+    public ElasticsearchSearchCacheEndpoint buildSearchCacheEndpoint(ElasticSearchTemplate template) {
+        return new ElasticsearchSearchCacheEndpoint(template.getSearchCache());
+    }
+
+    /**
+     * Default DocumentMapper, based on a copy of the application's ObjectMapper when there is one
+     * @param objectMapper the application's ObjectMapper
+     * @return the DocumentMapper
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public DocumentMapper buildDocumentMapper(Optional<ObjectMapper> objectMapper) {
+        return new JacksonDocumentMapper(objectMapper.map(ObjectMapper::copy).orElseGet(ObjectMapper::new));
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public RestHighLevelClient buildRestClient(ElasticSearchTemplate template) {
@@ -123,9 +183,16 @@ public class RubiksElasticsearchAutoConfiguration {
      *
      * This will be called by Spring context after before a context is destroyed
      * It will only clean when the test-mode is enabled
+     * It also stops the prefetch of search pages and the async executor
      */
     @PreDestroy
     void preDestroy() {
+        if (this.asyncExecutor != null) {
+            this.asyncExecutor.shutdown();
+        }
+        if (this.elasticSearchTemplate != null && this.elasticSearchTemplate.getSearchPrefetcher() != null) {
+            this.elasticSearchTemplate.getSearchPrefetcher().shutdown();
+        }
         if (rubiksElasticsearchProperties.getTestMode()) {
             try {
                 this.elasticSearchTemplate.deleteAllIndices(this.restClient);
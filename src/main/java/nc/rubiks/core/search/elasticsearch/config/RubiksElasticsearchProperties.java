@@ -24,6 +24,18 @@ public class RubiksElasticsearchProperties {
     private String password = StringUtils.EMPTY;
     private String scanBasePackage = StringUtils.EMPTY;
     private String indexedObjects = StringUtils.EMPTY;
+    private Long indexExistsCacheTtlMilliseconds = 30000L;
+    private Integer cursorOffsetThreshold = 0;
+    private Integer multiGetChunkSize = 1000;
+    private Boolean searchCacheEnabled = false;
+    private Integer searchCacheMaxSize = 1000;
+    private Long searchCacheTtlMilliseconds = 60000L;
+    private Long searchCacheRefreshIntervalMilliseconds = 1000L;
+    private Boolean searchSingleFlight = false;
+    private Boolean searchPrefetchEnabled = false;
+    private Integer searchPrefetchConcurrency = 2;
+    private Integer searchPrefetchMaxPageSize = 100;
+    private Integer asyncPoolSize = 0;
 
     public List<Pair<String, Integer>> getClusterNodes() {
 
@@ -116,4 +128,100 @@ public class RubiksElasticsearchProperties {
     public void setIndexedObjects(String indexedObjects) {
         this.indexedObjects = indexedObjects;
     }
+
+    public Long getIndexExistsCacheTtlMilliseconds() {
+        return indexExistsCacheTtlMilliseconds;
+    }
+
+    public void setIndexExistsCacheTtlMilliseconds(Long indexExistsCacheTtlMilliseconds) {
+        this.indexExistsCacheTtlMilliseconds = indexExistsCacheTtlMilliseconds;
+    }
+
+    public Integer getCursorOffsetThreshold() {
+        return cursorOffsetThreshold;
+    }
+
+    public void setCursorOffsetThreshold(Integer cursorOffsetThreshold) {
+        this.cursorOffsetThreshold = cursorOffsetThreshold;
+    }
+
+    public Integer getMultiGetChunkSize() {
+        return multiGetChunkSize;
+    }
+
+    public void setMultiGetChunkSize(Integer multiGetChunkSize) {
+        this.multiGetChunkSize = multiGetChunkSize;
+    }
+
+    public Boolean getSearchCacheEnabled() {
+        return searchCacheEnabled;
+    }
+
+    public void setSearchCacheEnabled(Boolean searchCacheEnabled) {
+        this.searchCacheEnabled = searchCacheEnabled;
+    }
+
+    public Integer getSearchCacheMaxSize() {
+        return searchCacheMaxSize;
+    }
+
+    public void setSearchCacheMaxSize(Integer searchCacheMaxSize) {
+        this.searchCacheMaxSize = searchCacheMaxSize;
+    }
+
+    public Long getSearchCacheTtlMilliseconds() {
+        return searchCacheTtlMilliseconds;
+    }
+
+    public void setSearchCacheTtlMilliseconds(Long searchCacheTtlMilliseconds) {
+        this.searchCacheTtlMilliseconds = searchCacheTtlMilliseconds;
+    }
+
+    public Long getSearchCacheRefreshIntervalMilliseconds() {
+        return searchCacheRefreshIntervalMilliseconds;
+    }
+
+    public void setSearchCacheRefreshIntervalMilliseconds(Long searchCacheRefreshIntervalMilliseconds) {
+        this.searchCacheRefreshIntervalMilliseconds = searchCacheRefreshIntervalMilliseconds;
+    }
+
+    public Boolean getSearchSingleFlight() {
+        return searchSingleFlight;
+    }
+
+    public void setSearchSingleFlight(Boolean searchSingleFlight) {
+        this.searchSingleFlight = searchSingleFlight;
+    }
+
+    public Boolean getSearchPrefetchEnabled() {
+        return searchPrefetchEnabled;
+    }
+
+    public void setSearchPrefetchEnabled(Boolean searchPrefetchEnabled) {
+        this.searchPrefetchEnabled = searchPrefetchEnabled;
+    }
+
+    public Integer getSearchPrefetchConcurrency() {
+        return searchPrefetchConcurrency;
+    }
+
+    public void setSearchPrefetchConcurrency(Integer searchPrefetchConcurrency) {
+        this.searchPrefetchConcurrency = searchPrefetchConcurrency;
+    }
+
+    public Integer getSearchPrefetchMaxPageSize() {
+        return searchPrefetchMaxPageSize;
+    }
+
+    public void setSearchPrefetchMaxPageSize(Integer searchPrefetchMaxPageSize) {
+        this.searchPrefetchMaxPageSize = searchPrefetchMaxPageSize;
+    }
+
+    public Integer getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(Integer asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
 }
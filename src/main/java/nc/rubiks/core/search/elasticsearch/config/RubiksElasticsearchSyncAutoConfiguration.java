@@ -1,18 +1,23 @@
 package nc.rubiks.core.search.elasticsearch.config;
 
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
 import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncService;
 import nc.rubiks.core.search.elasticsearch.service.EntityToElasticsearchDocumentConverter;
+import nc.rubiks.core.search.elasticsearch.service.impl.ElasticsearchDirectIndexer;
 import nc.rubiks.core.search.elasticsearch.service.impl.ElasticsearchSyncServiceImpl;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
 import net.javacrumbs.shedlock.core.LockProvider;
 import net.javacrumbs.shedlock.provider.jdbctemplate.JdbcTemplateLockProvider;
 import net.javacrumbs.shedlock.spring.ScheduledLockConfiguration;
 import net.javacrumbs.shedlock.spring.ScheduledLockConfigurationBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -20,6 +25,8 @@ import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.Assert;
 
 import javax.persistence.EntityManager;
 import javax.sql.DataSource;
@@ -39,6 +46,7 @@ import java.util.Optional;
 @EnableAsync
 @EnableScheduling
 @EnableAspectJAutoProxy
+@EnableConfigurationProperties({RubiksElasticsearchSyncProperties.class})
 @ConditionalOnProperty(prefix = "rubiks.elasticsearch.sync", name = "enabled", havingValue = "true")
 public class RubiksElasticsearchSyncAutoConfiguration {
 
@@ -52,12 +60,44 @@ public class RubiksElasticsearchSyncAutoConfiguration {
                                                      Optional<List<EntityToElasticsearchDocumentConverter>> elasticsearchConverters,
                                                      EntityManager entityManager,
                                                      @Value("${rubiks.elasticsearch.sync.nb-retry:3}")
-                                                     int nbTryouts) {
+                                                     int nbTryouts,
+                                                     ElasticsearchSyncThrottle elasticsearchSyncThrottle,
+                                                     Optional<DocumentMapper> documentMapper,
+                                                     Optional<RestHighLevelClient> highLevelClient,
+                                                     RubiksElasticsearchSyncProperties rubiksElasticsearchSyncProperties) {
         return new ElasticsearchSyncServiceImpl(
             elasticsearchSyncActionRepository,
             elasticsearchRepositories,
             elasticsearchConverters.orElse(Collections.emptyList()),
-            entityManager, nbTryouts);
+            entityManager, nbTryouts,
+            elasticsearchSyncThrottle,
+            documentMapper.orElse(null),
+            highLevelClient.orElse(null),
+            rubiksElasticsearchSyncProperties);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ElasticsearchSyncThrottle elasticsearchSyncThrottle(RubiksElasticsearchSyncProperties rubiksElasticsearchSyncProperties) {
+        return new ElasticsearchSyncThrottle(rubiksElasticsearchSyncProperties);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "rubiks.elasticsearch.sync.direct", name = "enabled", havingValue = "true")
+    public ElasticsearchDirectIndexer elasticsearchDirectIndexer(ElasticsearchSyncService elasticsearchSyncService,
+                                                                 RestHighLevelClient highLevelClient,
+                                                                 DocumentMapper documentMapper,
+                                                                 PlatformTransactionManager transactionManager,
+                                                                 RubiksElasticsearchSyncProperties rubiksElasticsearchSyncProperties) {
+        Assert.isInstanceOf(ElasticsearchSyncServiceImpl.class, elasticsearchSyncService,
+            "The direct indexing mode requires the default ElasticsearchSyncService");
+        return new ElasticsearchDirectIndexer(
+            (ElasticsearchSyncServiceImpl) elasticsearchSyncService,
+            highLevelClient,
+            documentMapper,
+            transactionManager,
+            rubiksElasticsearchSyncProperties.getDirect());
     }
 
     @Bean
@@ -0,0 +1,256 @@
+package nc.rubiks.core.search.elasticsearch.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Advanced settings of the synchronization job (rubiks.elasticsearch.sync.*)
+ *
+ * The basic settings (enabled, rate-milliseconds, nb-retry) are still read directly
+ * by the job and the auto configuration.
+ *
+ * Type specific settings are keyed by the entity's canonical class name or simple class name.
+ */
+@ConfigurationProperties(prefix = "rubiks.elasticsearch.sync")
+public class RubiksElasticsearchSyncProperties {
+
+    private Throttle throttle = new Throttle();
+
+    private Pipeline pipeline = new Pipeline();
+
+    private Direct direct = new Direct();
+
+    private Map<String, TypeProperties> types = new HashMap<>();
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    public void setThrottle(Throttle throttle) {
+        this.throttle = throttle;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public Direct getDirect() {
+        return direct;
+    }
+
+    public void setDirect(Direct direct) {
+        this.direct = direct;
+    }
+
+    public Map<String, TypeProperties> getTypes() {
+        return types;
+    }
+
+    public void setTypes(Map<String, TypeProperties> types) {
+        this.types = types;
+    }
+
+    /**
+     * Throughput limits of the synchronization. 0 (the default) means unlimited.
+     */
+    public static class Throttle {
+
+        private long documentsPerSecond = 0;
+
+        private long bytesPerSecond = 0;
+
+        public long getDocumentsPerSecond() {
+            return documentsPerSecond;
+        }
+
+        public void setDocumentsPerSecond(long documentsPerSecond) {
+            this.documentsPerSecond = documentsPerSecond;
+        }
+
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        public void setBytesPerSecond(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+    }
+
+    /**
+     * Settings of the pipelined synchronization (disabled by default).
+     *
+     * Actions are processed by batches going through the stages load, convert, serialize, send and acknowledge,
+     * each stage running in its own threads and being connected to the next one by a bounded queue.
+     * The send stage always runs in a single thread, so that bulk requests are sent in the order of the actions.
+     */
+    public static class Pipeline {
+
+        private boolean enabled = false;
+
+        private int batchSize = 100;
+
+        private int queueCapacity = 2;
+
+        private int loadParallelism = 2;
+
+        private int convertParallelism = 2;
+
+        private int serializeParallelism = 1;
+
+        private int acknowledgeParallelism = 1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getLoadParallelism() {
+            return loadParallelism;
+        }
+
+        public void setLoadParallelism(int loadParallelism) {
+            this.loadParallelism = loadParallelism;
+        }
+
+        public int getConvertParallelism() {
+            return convertParallelism;
+        }
+
+        public void setConvertParallelism(int convertParallelism) {
+            this.convertParallelism = convertParallelism;
+        }
+
+        public int getSerializeParallelism() {
+            return serializeParallelism;
+        }
+
+        public void setSerializeParallelism(int serializeParallelism) {
+            this.serializeParallelism = serializeParallelism;
+        }
+
+        public int getAcknowledgeParallelism() {
+            return acknowledgeParallelism;
+        }
+
+        public void setAcknowledgeParallelism(int acknowledgeParallelism) {
+            this.acknowledgeParallelism = acknowledgeParallelism;
+        }
+    }
+
+    /**
+     * Settings of the direct indexing mode (disabled by default).
+     *
+     * Changes are indexed right after their transaction commits by a background worker, through a bounded queue.
+     * Their ElasticsearchSyncAction are stored with them : when the queue is full or Elasticsearch fails, they are left for the sync job.
+     */
+    public static class Direct {
+
+        private boolean enabled = false;
+
+        private int queueCapacity = 10000;
+
+        private int batchSize = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
+    /**
+     * Settings applying to a single synced type
+     */
+    public static class TypeProperties {
+
+        private Throttle throttle = new Throttle();
+
+        private Debounce debounce = new Debounce();
+
+        public Throttle getThrottle() {
+            return throttle;
+        }
+
+        public void setThrottle(Throttle throttle) {
+            this.throttle = throttle;
+        }
+
+        public Debounce getDebounce() {
+            return debounce;
+        }
+
+        public void setDebounce(Debounce debounce) {
+            this.debounce = debounce;
+        }
+    }
+
+    /**
+     * Debounce of the synchronization of a type : a document is only synced once it has not been modified
+     * for quietPeriodMilliseconds, or at least every maxDelayMilliseconds. 0 (the default) means disabled.
+     */
+    public static class Debounce {
+
+        private long quietPeriodMilliseconds = 0;
+
+        private long maxDelayMilliseconds = 0;
+
+        public long getQuietPeriodMilliseconds() {
+            return quietPeriodMilliseconds;
+        }
+
+        public void setQuietPeriodMilliseconds(long quietPeriodMilliseconds) {
+            this.quietPeriodMilliseconds = quietPeriodMilliseconds;
+        }
+
+        public long getMaxDelayMilliseconds() {
+            return maxDelayMilliseconds;
+        }
+
+        public void setMaxDelayMilliseconds(long maxDelayMilliseconds) {
+            this.maxDelayMilliseconds = maxDelayMilliseconds;
+        }
+    }
+}
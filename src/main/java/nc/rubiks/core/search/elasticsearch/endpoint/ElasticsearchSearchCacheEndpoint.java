@@ -0,0 +1,35 @@
+package nc.rubiks.core.search.elasticsearch.endpoint;
+
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Map;
+
+/**
+ * Endpoint exposing the statistics of the ElasticsearchSearchCache (hits, misses, evictions...).
+ *
+ * The cache can be cleared at runtime through the JMX operation of this endpoint.
+ * Declared by the RubiksElasticsearchAutoConfiguration when the search cache is enabled.
+ */
+@ManagedResource(objectName = "nc.rubiks.core.search.elasticsearch:type=ElasticsearchSearchCache")
+public class ElasticsearchSearchCacheEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final ElasticsearchSearchCache elasticsearchSearchCache;
+
+    public ElasticsearchSearchCacheEndpoint(ElasticsearchSearchCache elasticsearchSearchCache) {
+        super("elasticsearch_search_cache", true);
+        this.elasticsearchSearchCache = elasticsearchSearchCache;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        return elasticsearchSearchCache.getStatistics();
+    }
+
+    @ManagedOperation(description = "Clears all the cached search results")
+    public void clear() {
+        elasticsearchSearchCache.clear();
+    }
+}
@@ -0,0 +1,62 @@
+package nc.rubiks.core.search.elasticsearch.endpoint;
+
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Endpoint exposing the current limits of the ElasticsearchSyncThrottle.
+ *
+ * Limits can be changed at runtime through the JMX operations of this endpoint
+ * (e.g. using jconsole or the jolokia actuator endpoint), 0 meaning unlimited.
+ */
+@Component
+@ManagedResource(objectName = "nc.rubiks.core.search.elasticsearch:type=ElasticsearchSyncThrottle")
+@ConfigurationProperties(prefix = "endpoints.elasticsearch_sync_throttle")
+@ConditionalOnProperty(prefix = "rubiks.elasticsearch.sync", name = "enabled", havingValue = "true")
+public class ElasticsearchSyncThrottleEndpoint extends AbstractEndpoint<Map<String, Map<String, Long>>> {
+
+    private final ElasticsearchSyncThrottle elasticsearchSyncThrottle;
+
+    public ElasticsearchSyncThrottleEndpoint(ElasticsearchSyncThrottle elasticsearchSyncThrottle) {
+        super("elasticsearch_sync_throttle", true);
+        this.elasticsearchSyncThrottle = elasticsearchSyncThrottle;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> invoke() {
+        return elasticsearchSyncThrottle.getLimits();
+    }
+
+    @ManagedOperation(description = "Sets the global sync limits (0 = unlimited)")
+    @ManagedOperationParameters({
+        @ManagedOperationParameter(name = "documentsPerSecond", description = "Maximum documents per second"),
+        @ManagedOperationParameter(name = "bytesPerSecond", description = "Maximum bytes per second")})
+    public void setGlobalLimits(long documentsPerSecond, long bytesPerSecond) {
+        elasticsearchSyncThrottle.setGlobalLimits(documentsPerSecond, bytesPerSecond);
+    }
+
+    @ManagedOperation(description = "Sets the sync limits of a type (0 = unlimited)")
+    @ManagedOperationParameters({
+        @ManagedOperationParameter(name = "type", description = "Canonical or simple class name of the synced entity"),
+        @ManagedOperationParameter(name = "documentsPerSecond", description = "Maximum documents per second"),
+        @ManagedOperationParameter(name = "bytesPerSecond", description = "Maximum bytes per second")})
+    public void setTypeLimits(String type, long documentsPerSecond, long bytesPerSecond) {
+        elasticsearchSyncThrottle.setTypeLimits(type, documentsPerSecond, bytesPerSecond);
+    }
+
+    @ManagedOperation(description = "Removes the sync limits of a type")
+    @ManagedOperationParameters({
+        @ManagedOperationParameter(name = "type", description = "Canonical or simple class name of the synced entity")})
+    public void removeTypeLimits(String type) {
+        elasticsearchSyncThrottle.removeTypeLimits(type);
+    }
+}
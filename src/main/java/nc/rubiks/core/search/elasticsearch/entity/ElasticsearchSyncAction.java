@@ -29,6 +29,11 @@ public class ElasticsearchSyncAction {
 
     private int nbTryouts;
 
+    /**
+     * The gzipped JSON document to index, when the entity is synced in snapshot mode (null otherwise)
+     */
+    private byte[] payload;
+
     public UUID getId() {
         return id;
     }
@@ -77,6 +82,14 @@ public class ElasticsearchSyncAction {
         this.nbTryouts = nbTryouts;
     }
 
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -112,6 +125,7 @@ public class ElasticsearchSyncAction {
             ", action=" + action +
             ", createdDate=" + createdDate +
             ", nbTryouts=" + nbTryouts +
+            ", payload=" + (payload != null ? payload.length + " bytes" : null) +
             '}';
     }
 }
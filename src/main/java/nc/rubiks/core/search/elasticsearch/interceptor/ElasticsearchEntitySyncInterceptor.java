@@ -5,11 +5,19 @@ import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
 import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchTriggerSync;
 import nc.rubiks.core.search.elasticsearch.config.InitIndexUtil;
 import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
 import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncService;
+import nc.rubiks.core.search.elasticsearch.service.impl.ElasticsearchDirectIndexer;
+import nc.rubiks.core.search.elasticsearch.util.DocumentIdAccessor;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.reflect.FieldUtils;
 import org.hibernate.EmptyInterceptor;
+import org.hibernate.Hibernate;
+import org.hibernate.Transaction;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
 import org.hibernate.type.Type;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,11 +27,17 @@ import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * This interceptor is responsible for creating an ElasticsearchSyncAction record for any
@@ -34,6 +48,13 @@ import java.util.Map;
  *  spring.jpa.properties:
  *      hibernate.session_factory.interceptor: ElasticsearchEntitySyncInterceptor
  * </code>
+ *
+ * Entities annotated with @ElasticsearchDocument(snapshot = true) get their ElasticsearchSyncAction stored when flushed, as the others :
+ * they are serialized when the transaction completes and the document is then attached to their ElasticsearchSyncAction.
+ * If it can't be attached, the action is still committed and the sync reloads the entity.
+ *
+ * When the ElasticsearchDirectIndexer is enabled, the ElasticsearchSyncAction are stored when flushed as well :
+ * they are handed over to the ElasticsearchDirectIndexer once the transaction is committed, which deletes them after indexing their documents.
  * @author nicoraynaud
  */
 @Component
@@ -46,14 +67,35 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
 
     private static Map<Class, List<Field>> syncedTypes;
 
+    private static Set<Class> snapshotTypes;
+
+    private static DocumentMapper documentMapper;
+
+    private static ElasticsearchDirectIndexer elasticsearchDirectIndexer;
+
+    /**
+     * Changes collected until the transaction completes (snapshot and direct modes), by transaction
+     * (a new transaction can be started while another one is suspended)
+     */
+    private static final ThreadLocal<Deque<Map<String, PendingChange>>> pendingChanges = ThreadLocal.withInitial(ArrayDeque::new);
+
     private static final String NOT_CONFIGURED_PROPERLY_MESSAGE = "You must enable rubiks.elasticsearch.sync feature (set it to true) in order to use this Interceptor.";
 
-    @Autowired
     public synchronized void init(ElasticsearchSyncService elasticsearchSyncService, RubiksElasticsearchProperties rubiksElasticsearchProperties) {
+        init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.empty(), Optional.empty());
+    }
+
+    @Autowired
+    public synchronized void init(ElasticsearchSyncService elasticsearchSyncService,
+                                  RubiksElasticsearchProperties rubiksElasticsearchProperties,
+                                  Optional<DocumentMapper> documentMapper,
+                                  Optional<ElasticsearchDirectIndexer> elasticsearchDirectIndexer) {
 
         log.info("Initializing ElasticsearchEntitySyncInterceptor...");
 
         ElasticsearchEntitySyncInterceptor.elasticsearchSyncService = elasticsearchSyncService;
+        ElasticsearchEntitySyncInterceptor.documentMapper = documentMapper.orElse(null);
+        ElasticsearchEntitySyncInterceptor.elasticsearchDirectIndexer = elasticsearchDirectIndexer.orElse(null);
 
         // Scan classes having the @ElasticsearchDocument annotation with synced = true
         // Search for @ElasticsearchTriggerSync in order to map what fields need to trigger additional SyncActions
@@ -61,6 +103,112 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
         InitIndexUtil.findElasticsearchDocumentEntities(rubiksElasticsearchProperties.getScanBasePackage()).stream()
             .filter(clazz -> ((ElasticsearchDocument) clazz.getAnnotation(ElasticsearchDocument.class)).synced())
             .forEach(clazz -> syncedTypes.put(clazz, FieldUtils.getFieldsListWithAnnotation(clazz, ElasticsearchTriggerSync.class)));
+
+        // Snapshot mode only applies to entities indexed as is, and requires a DocumentMapper
+        snapshotTypes = new HashSet<>();
+        syncedTypes.keySet().forEach(clazz -> {
+            ElasticsearchDocument annotation = (ElasticsearchDocument) clazz.getAnnotation(ElasticsearchDocument.class);
+            if (!annotation.snapshot()) {
+                return;
+            }
+            if (annotation.documentType() != void.class || ElasticsearchEntitySyncInterceptor.documentMapper == null) {
+                log.warn("Snapshot mode ignored for [{}] : it requires a DocumentMapper and no documentType", clazz);
+                return;
+            }
+            snapshotTypes.add(clazz);
+        });
+    }
+
+    @Override
+    public void afterTransactionBegin(Transaction tx) {
+        pendingChanges.get().push(new LinkedHashMap<>());
+    }
+
+    @Override
+    public void beforeTransactionCompletion(Transaction tx) {
+
+        // In direct mode, changes are only handed over once the transaction is committed
+        Deque<Map<String, PendingChange>> changes = pendingChanges.get();
+        if (elasticsearchDirectIndexer != null || changes.isEmpty() || changes.peek().isEmpty()) {
+            return;
+        }
+
+        // Copy and clear first, the flush of the actions going through this interceptor as well
+        List<PendingChange> toSnapshot = new ArrayList<>(changes.peek().values());
+        changes.peek().clear();
+
+        // Exceptions thrown here are only logged by Hibernate : the actions were stored during the flush,
+        // a document that can't be attached is reloaded by the sync
+        for (PendingChange pending : toSnapshot) {
+            if (pending.stored == null) {
+                continue;
+            }
+            try {
+                elasticsearchSyncService.attachPayload(pending.stored, documentMapper.mapToString(Hibernate.unproxy(pending.entity)));
+            } catch (Exception ex) {
+                log.warn("Unable to snapshot object [{}] with id [{}], it will be reloaded by the sync : {}", pending.clazz, pending.id, ex);
+            }
+        }
+    }
+
+    @Override
+    public void afterTransactionCompletion(Transaction tx) {
+        Deque<Map<String, PendingChange>> changes = pendingChanges.get();
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<String, PendingChange> completed = changes.pop();
+        if (elasticsearchDirectIndexer != null && tx != null && tx.getStatus() == TransactionStatus.COMMITTED) {
+            completed.values().forEach(change -> elasticsearchDirectIndexer.offer(change.clazz, change.id, change.action, change.stored.getId()));
+        }
+    }
+
+    /**
+     * Adds the sync action of a modified entity, or collects it until the transaction completes (snapshot and direct modes)
+     */
+    private void addAction(Object entity, Serializable id, ElasticsearchSyncActionEnum action) {
+        addAction(entity.getClass(), entity, id, action);
+    }
+
+    private void addAction(Class clazz, Object entity, Serializable id, ElasticsearchSyncActionEnum action) {
+
+        if (elasticsearchDirectIndexer == null && !snapshotTypes.contains(clazz)) {
+            elasticsearchSyncService.addAction(clazz, id, action);
+            return;
+        }
+
+        Deque<Map<String, PendingChange>> changes = pendingChanges.get();
+        if (changes.isEmpty()) {
+            changes.push(new LinkedHashMap<>());
+        }
+
+        // In direct mode, every action is stored with the modification and handed over once committed
+        if (elasticsearchDirectIndexer != null) {
+            ElasticsearchSyncAction stored = elasticsearchSyncService.addSnapshotAction(clazz, id, action);
+            if (stored != null) {
+                changes.peek().put(stored.getId().toString(), new PendingChange(clazz, null, id, action, stored));
+            }
+            return;
+        }
+
+        String key = clazz.getName() + '#' + id;
+
+        // A deleted entity doesn't need to be snapshotted
+        if (action == ElasticsearchSyncActionEnum.DELETE) {
+            changes.peek().remove(key);
+            elasticsearchSyncService.addAction(clazz, id, action);
+            return;
+        }
+
+        // Keep the first action but always the latest state of the entity
+        PendingChange previous = changes.peek().get(key);
+        if (previous != null) {
+            changes.peek().put(key, new PendingChange(clazz, entity, id, previous.action, previous.stored));
+            return;
+        }
+
+        // In snapshot mode, the action is stored with the modification, its document being attached when the transaction completes
+        changes.peek().put(key, new PendingChange(clazz, entity, id, action, elasticsearchSyncService.addSnapshotAction(clazz, id, action)));
     }
 
     @Override
@@ -75,7 +223,7 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
         if (log.isDebugEnabled()) {
             log.debug("Trigger ES Create for object [{}] with id [{}]", entity.getClass(), id);
         }
-        elasticsearchSyncService.addAction(entity.getClass(), id, ElasticsearchSyncActionEnum.CREATE);
+        addAction(entity, id, ElasticsearchSyncActionEnum.CREATE);
         createAssociatedActions(entity);
 
         return false;
@@ -93,7 +241,7 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
         if (log.isDebugEnabled()) {
             log.debug("Trigger ES Update for object [{}] with id [{}]", entity.getClass(), id);
         }
-        elasticsearchSyncService.addAction(entity.getClass(), id, ElasticsearchSyncActionEnum.UPDATE);
+        addAction(entity, id, ElasticsearchSyncActionEnum.UPDATE);
         createAssociatedActions(entity);
 
         return false;
@@ -111,7 +259,7 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
         if (log.isDebugEnabled()) {
             log.debug("Trigger ES Delete for object [{}] with id [{}]", entity.getClass(), id);
         }
-        elasticsearchSyncService.addAction(entity.getClass(), id, ElasticsearchSyncActionEnum.DELETE);
+        addAction(entity, id, ElasticsearchSyncActionEnum.DELETE);
         createAssociatedActions(entity);
     }
 
@@ -133,22 +281,44 @@ public final class ElasticsearchEntitySyncInterceptor extends EmptyInterceptor {
                 // In case of a collection type, cast it and iterate over values
                 if (fieldValue instanceof Collection<?>) {
                     for (Object value : (Collection) fieldValue) {
-                        Object idObj = value.getClass().getMethod("getId").invoke(value);
-                        if (idObj != null) {
-                            elasticsearchSyncService.addAction(value.getClass(), (Serializable) idObj, ElasticsearchSyncActionEnum.UPDATE);
-                        }
-                    }
-                } else {
-                    Object idObj = fieldValue.getClass().getMethod("getId").invoke(fieldValue);
-                    if (idObj != null) {
-                        elasticsearchSyncService.addAction(fieldValue.getClass(), (Serializable) idObj, ElasticsearchSyncActionEnum.UPDATE);
+                        addAssociatedAction(value);
                     }
+                } else if (fieldValue != null) {
+                    addAssociatedAction(fieldValue);
                 }
             }
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
+        } catch (IllegalAccessException | RubiksElasticsearchException e) {
             throw new RubiksElasticsearchException(
                 String.format("Unable to trigger an additional Sync action for entity [%s]", entity.getClass().getSimpleName()), e);
         }
     }
 
+    /**
+     * Adds the sync action of an associated entity, which is often a lazy Hibernate proxy :
+     * its class and ID are read without initializing it
+     */
+    private void addAssociatedAction(Object value) {
+        Class clazz = HibernateProxyHelper.getClassWithoutInitializingProxy(value);
+        Object idObj = DocumentIdAccessor.of(clazz).getId(value);
+        if (idObj != null) {
+            addAction(clazz, value, (Serializable) idObj, ElasticsearchSyncActionEnum.UPDATE);
+        }
+    }
+
+    private static final class PendingChange {
+
+        private final Class clazz;
+        private final Object entity;
+        private final Serializable id;
+        private final ElasticsearchSyncActionEnum action;
+        private final ElasticsearchSyncAction stored;
+
+        private PendingChange(Class clazz, Object entity, Serializable id, ElasticsearchSyncActionEnum action, ElasticsearchSyncAction stored) {
+            this.clazz = clazz;
+            this.entity = entity;
+            this.id = id;
+            this.action = action;
+            this.stored = stored;
+        }
+    }
 }
@@ -1,9 +1,16 @@
 package nc.rubiks.core.search.elasticsearch.mapper;
 
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -18,4 +25,38 @@ public interface DocumentMapper {
     <T> T mapToObject(Map source, Class<T> clazz) throws IOException;
 
     JsonNode readTree(String inputSource) throws IOException;
+
+    /**
+     * Binds a UTF-8 JSON document read from a stream (e.g. the _source of a hit) to the given class.
+     * The default implementation reads the whole stream as a String : implementations should bind the bytes directly.
+     * The stream is not closed.
+     *
+     * @param source the JSON document
+     * @param clazz the class to bind the document to
+     * @param <T> the type of the document
+     * @return the document
+     * @throws IOException if the document can't be read
+     */
+    default <T> T mapToObject(InputStream source, Class<T> clazz) throws IOException {
+        return mapToObject(StreamUtils.copyToString(source, StandardCharsets.UTF_8), clazz);
+    }
+
+    /**
+     * Binds the JSON value the parser is positioned on (e.g. the _source of a hit within a search response) to the given class.
+     * The parser is left on the last token of the value.
+     * The default implementation copies the value as a String : implementations should read it from the parser directly.
+     *
+     * @param source the parser, positioned on the first token of the value
+     * @param clazz the class to bind the value to
+     * @param <T> the type of the document
+     * @return the document
+     * @throws IOException if the document can't be read
+     */
+    default <T> T mapToObject(JsonParser source, Class<T> clazz) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(writer)) {
+            generator.copyCurrentStructure(source);
+        }
+        return mapToObject(writer.toString(), clazz);
+    }
 }
@@ -0,0 +1,72 @@
+package nc.rubiks.core.search.elasticsearch.mapper;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Default DocumentMapper, based on Jackson.
+ *
+ * Unknown properties are ignored and single values are accepted as arrays.
+ * Documents read from a stream are bound directly to the target class, without any intermediate String or Map.
+ */
+public class JacksonDocumentMapper implements DocumentMapper {
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonDocumentMapper() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * @param objectMapper the ObjectMapper to use, configured by this constructor (pass a copy of a shared ObjectMapper)
+     */
+    public JacksonDocumentMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.objectMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        this.objectMapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+    }
+
+    @Override
+    public String mapToString(Object object) throws IOException {
+        return objectMapper.writeValueAsString(object);
+    }
+
+    @Override
+    public <T> T mapToObject(String source, Class<T> clazz) throws IOException {
+        return objectMapper.readValue(source, clazz);
+    }
+
+    @Override
+    public <T> T mapToObject(Map source, Class<T> clazz) throws IOException {
+        return objectMapper.convertValue(source, clazz);
+    }
+
+    @Override
+    public JsonNode readTree(String inputSource) throws IOException {
+        return objectMapper.readTree(inputSource);
+    }
+
+    @Override
+    public <T> T mapToObject(InputStream source, Class<T> clazz) throws IOException {
+        return objectMapper.readValue(source, clazz);
+    }
+
+    @Override
+    public <T> T mapToObject(JsonParser source, Class<T> clazz) throws IOException {
+        return objectMapper.readValue(source, clazz);
+    }
+
+    /**
+     * @return the underlying ObjectMapper
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+}
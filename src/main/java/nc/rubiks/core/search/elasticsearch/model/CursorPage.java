@@ -0,0 +1,59 @@
+package nc.rubiks.core.search.elasticsearch.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of results read with a cursor (search_after)
+ * The cursor of the next page is an opaque token to pass to the next search, it is null on the last page
+ * @param <T> The domain object being queried (results will be serialized to this type)
+ */
+public class CursorPage<T> {
+
+    private final List<T> content;
+    private final long total;
+    private final String nextCursor;
+
+    public CursorPage(List<T> content, long total, String nextCursor) {
+        this.content = content == null ? Collections.emptyList() : content;
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return The documents of this page
+     */
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * @return The total number of results (and not on this single page)
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return The cursor of the next page, or null if this page is the last one
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return true if there is a next page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "CursorPage{" +
+            "content=" + content +
+            ", total=" + total +
+            ", nextCursor='" + nextCursor + '\'' +
+            '}';
+    }
+}
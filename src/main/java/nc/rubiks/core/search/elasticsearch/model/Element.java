@@ -78,12 +78,15 @@ public class Element<T> {
 
     /**
      * @return The raw ES document as a Map object
+     * @deprecated searchComplex binds the documents directly to their type and does not fill the Map anymore, use getSource()
      */
+    @Deprecated
     @JsonProperty("_source")
     public Map<String, Object> getElementAsMap() {
         return elementAsMap;
     }
 
+    @Deprecated
     public void setElementAsMap(Map<String, Object> elementAsMap) {
         this.elementAsMap = elementAsMap;
     }
@@ -1,9 +1,11 @@
 package nc.rubiks.core.search.elasticsearch.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * The Result of a Complex ES query
@@ -18,6 +20,8 @@ public class Result<T> {
 
     private Map<String, Object> aggregations = new HashMap<>();
 
+    private Supplier<Map<String, Object>> aggregationsLoader;
+
     /**
      * @return The list of results for the ES query
      */
@@ -34,12 +38,26 @@ public class Result<T> {
      * @return The list of aggregations for the ES query
      */
     @JsonProperty("aggregations")
-    public Map<String, Object> getAggregations() {
+    public synchronized Map<String, Object> getAggregations() {
+        if (aggregationsLoader != null) {
+            aggregations = aggregationsLoader.get();
+            aggregationsLoader = null;
+        }
         return aggregations;
     }
 
-    public void setAggregations(Map<String, Object> aggregations) {
+    public synchronized void setAggregations(Map<String, Object> aggregations) {
         this.aggregations = aggregations;
+        this.aggregationsLoader = null;
+    }
+
+    /**
+     * Sets the aggregations to be parsed on their first access
+     * @param aggregationsLoader the loader of the aggregations
+     */
+    @JsonIgnore
+    public synchronized void setLazyAggregations(Supplier<Map<String, Object>> aggregationsLoader) {
+        this.aggregationsLoader = aggregationsLoader;
     }
     @Override
     public String toString() {
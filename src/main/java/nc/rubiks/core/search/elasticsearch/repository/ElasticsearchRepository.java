@@ -1,14 +1,22 @@
 package nc.rubiks.core.search.elasticsearch.repository;
 
+import nc.rubiks.core.search.elasticsearch.model.CursorPage;
 import nc.rubiks.core.search.elasticsearch.model.Result;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
+import javax.persistence.EntityManager;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Created by nicoraynaud on 28/04/2017.
@@ -31,6 +39,69 @@ public interface ElasticsearchRepository<T, ID extends Serializable> {
      */
     Page<T> search(Pageable pageable, QueryBuilder query);
 
+    /**
+     * Searches for records of an entity in elasticsearch using pagination, reading them into a projection :
+     * only the fields of the projection class are read from the documents (source filtering).
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @param projection the class of the projection (a lightweight DTO with some of the fields of the documents)
+     * @param <P> the type of the projection
+     * @return the paginated list of projections
+     */
+    <P> Page<P> search(Pageable pageable, QueryBuilder query, Class<P> projection);
+
+    /**
+     * Searches for records of an entity in elasticsearch using pagination, reading only the given fields into a projection
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @param projection the class of the projection
+     * @param includes the fields to read from the documents (source filtering, wildcards allowed)
+     * @param <P> the type of the projection
+     * @return the paginated list of projections
+     */
+    <P> Page<P> search(Pageable pageable, QueryBuilder query, Class<P> projection, String[] includes);
+
+    /**
+     * Searches for records of an entity in elasticsearch using pagination, reading the given fields from their doc values
+     * instead of the source of the documents (which is not fetched at all). Only fields having doc values can be read
+     * this way (keyword, numeric, date, boolean fields).
+     * Dotted fields are bound to nested properties of the projection, except keyword sub-fields ("name.keyword") bound to their parent property.
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @param projection the class of the projection
+     * @param fields the fields to read
+     * @param <P> the type of the projection
+     * @return the paginated list of projections
+     */
+    <P> Page<P> searchDocValues(Pageable pageable, QueryBuilder query, Class<P> projection, String... fields);
+
+    /**
+     * Searches for records of an entity in elasticsearch using pagination, only reading the IDs of the matching documents :
+     * the entities are then loaded from the database with a single query (using its second level cache, if any),
+     * and returned in the order of the hits. Entities not found in database (deleted and not synced yet) are left out of the page.
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @param entityClass the class of the JPA entity
+     * @param entityManager the entity manager used to load the entities
+     * @param <E> the type of the entity
+     * @return the paginated list of entities
+     */
+    <E> Page<E> searchHydrated(Pageable pageable, QueryBuilder query, Class<E> entityClass, EntityManager entityManager);
+
+    /**
+     * Searches for records of an entity in elasticsearch using pagination, only reading the IDs of the matching documents :
+     * the entities are then loaded with the given loader (i.e. JpaRepository::findAll) and returned in the order of the hits.
+     * Entities not returned by the loader are left out of the page.
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @param entityClass the class of the entity
+     * @param loader the loader of the entities by their IDs
+     * @param <E> the type of the entity
+     * @param <K> the type of the entity ID
+     * @return the paginated list of entities
+     */
+    <E, K extends Serializable> Page<E> searchHydrated(Pageable pageable, QueryBuilder query, Class<E> entityClass, Function<List<K>, ? extends Iterable<E>> loader);
+
     /**
      * Searches and aggregates the documents according to the given queries and aggregations
      * Note that this is the raw result from the REST ES client lib : entities are not deserialized
@@ -61,6 +132,52 @@ public interface ElasticsearchRepository<T, ID extends Serializable> {
     @Deprecated
     Result<T> searchComplex(Pageable pageable, String jsonQuery);
 
+    /**
+     * Searches for records of an entity in elasticsearch using a cursor (search_after) rather than an offset :
+     * the cost of a page does not depend on its depth.
+     * The documents are sorted with the given sort, followed by a unique tie-breaker.
+     * @param query The search query to use
+     * @param sort The sort of the documents (by score if null)
+     * @param size The size of the page
+     * @param cursor The cursor returned with the previous page, null for the first page
+     * @return the page of results, with the cursor of the next page
+     */
+    CursorPage<T> searchAfter(QueryBuilder query, Sort sort, int size, String cursor);
+
+    /**
+     * Streams all the documents matching a query, using the scroll API.
+     * Documents are fetched lazily, batch by batch, as the stream is consumed : the stream must be closed
+     * (i.e. used in a try-with-resources) to release the scroll context when not fully consumed.
+     * Documents are returned in no particular order.
+     * @param query The search query to use
+     * @param batchSize The number of documents fetched per request
+     * @return the lazy stream of documents
+     */
+    Stream<T> stream(QueryBuilder query, int batchSize);
+
+    /**
+     * Exports all the documents matching a query, reading one sliced scroll per shard of the index concurrently.
+     * @see #export(QueryBuilder, int, int, Consumer)
+     * @param query The search query to use
+     * @param batchSize The number of documents fetched per request and per slice
+     * @param consumer The consumer of the documents, called concurrently by the slices
+     * @return The number of exported documents
+     */
+    long export(QueryBuilder query, int batchSize, Consumer<? super T> consumer);
+
+    /**
+     * Exports all the documents matching a query, reading several sliced scrolls concurrently (one thread per slice).
+     * The consumer is called from the thread of each slice : the next batch of a slice is only fetched once the
+     * consumer has processed the current one, so a slow consumer slows down the export instead of buffering documents.
+     * The export stops at the first failure (of ES or of the consumer), which is rethrown.
+     * @param query The search query to use
+     * @param batchSize The number of documents fetched per request and per slice
+     * @param slices The number of slices (0 for the number of shards of the index)
+     * @param consumer The consumer of the documents, called concurrently by the slices : it must be thread safe
+     * @return The number of exported documents
+     */
+    long export(QueryBuilder query, int batchSize, int slices, Consumer<? super T> consumer);
+
     /**
      * Retrieves an entity by its id.
      *
@@ -70,6 +187,32 @@ public interface ElasticsearchRepository<T, ID extends Serializable> {
      */
     T findOne(ID id);
 
+    /**
+     * Retrieves a document by its id, reading only the fields of the projection class (source filtering)
+     * @param id must not be {@literal null}.
+     * @param projection the class of the projection
+     * @param <P> the type of the projection
+     * @return the projection of the document, null if it does not exist
+     */
+    <P> P findOne(ID id, Class<P> projection);
+
+    /**
+     * Retrieves several documents by their ID, using multi get requests (_mget) sent by chunks
+     * @param ids The IDs of the documents
+     * @return The documents, in the order of the IDs, null when a document does not exist
+     */
+    List<T> findAll(Iterable<ID> ids);
+
+    /**
+     * Retrieves several documents by their ID, using multi get requests (_mget) sent by chunks
+     * Only the given fields of the documents are read (source filtering)
+     * @param ids The IDs of the documents
+     * @param includes The fields to read (all when null or empty)
+     * @param excludes The fields not to read (none when null or empty)
+     * @return The documents, in the order of the IDs, null when a document does not exist
+     */
+    List<T> findAll(Iterable<ID> ids, String[] includes, String[] excludes);
+
     /**
      * Returns whether an entity with the given id exists.
      *
@@ -141,4 +284,45 @@ public interface ElasticsearchRepository<T, ID extends Serializable> {
      */
     Class<T> getIndexedClass();
 
+    /**
+     * Asynchronous variant of search(Pageable, QueryBuilder), sent without blocking the caller.
+     * The future is completed on the async executor of the ElasticSearchTemplate (never on the IO threads of the client),
+     * exceptionally when the search fails. Search responses are not read from the search cache.
+     * @param pageable the pagination information to request
+     * @param query the QueryBuilder query to use
+     * @return the future paginated list of results (empty when the index does not exist)
+     */
+    CompletableFuture<Page<T>> searchAsync(Pageable pageable, QueryBuilder query);
+
+    /**
+     * Asynchronous variant of findOne(ID), completed on the async executor, exceptionally when the request fails.
+     * Documents are not read from the document cache.
+     * @param id the id of the document
+     * @return the future document, null if it does not exist
+     */
+    CompletableFuture<T> findOneAsync(ID id);
+
+    /**
+     * Asynchronous variant of save(S), completed on the async executor, exceptionally when indexing fails
+     * (documents already indexed with a newer version are ignored).
+     * @param entity the entity to index
+     * @param <S> the type of the entity
+     * @return the future given entity, once indexed
+     */
+    <S extends T> CompletableFuture<S> saveAsync(S entity);
+
+    /**
+     * Asynchronous variant of delete(ID), completed on the async executor, exceptionally when the deletion fails
+     * (deleting a missing document is not a failure).
+     * @param id the id of the document
+     * @return the future completed once the document is deleted
+     */
+    CompletableFuture<Void> deleteAsync(ID id);
+
+    /**
+     * Asynchronous variant of count(), completed on the async executor, exceptionally when the request fails.
+     * @return the future number of documents (0 when the index does not exist)
+     */
+    CompletableFuture<Long> countAsync();
+
 }
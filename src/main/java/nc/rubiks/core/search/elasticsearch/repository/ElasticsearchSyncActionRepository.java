@@ -2,9 +2,11 @@ package nc.rubiks.core.search.elasticsearch.repository;
 
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,4 +19,8 @@ public interface ElasticsearchSyncActionRepository extends JpaRepository<Elastic
 
     @Query("select esa from ElasticsearchSyncAction esa where nbTryouts < :nbRetry order by esa.createdDate asc")
     List<ElasticsearchSyncAction> findAllOrderByCreatedDateAsc(@Param("nbRetry") int nbRetry);
+
+    @Modifying
+    @Query("delete from ElasticsearchSyncAction esa where esa.id in :ids")
+    void deleteByIds(@Param("ids") Collection<UUID> ids);
 }
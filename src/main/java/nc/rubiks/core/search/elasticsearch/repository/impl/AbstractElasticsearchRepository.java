@@ -2,30 +2,56 @@ package nc.rubiks.core.search.elasticsearch.repository.impl;
 
 import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
 import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchBloomFilter;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchDocumentCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchPrefetcher;
 import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
-import nc.rubiks.core.search.elasticsearch.model.Element;
+import nc.rubiks.core.search.elasticsearch.model.CursorPage;
 import nc.rubiks.core.search.elasticsearch.model.Result;
-import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import nc.rubiks.core.search.elasticsearch.util.DocumentIdAccessor;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.slice.SliceBuilder;
+import org.elasticsearch.search.sort.FieldSortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,11 +59,34 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import javax.persistence.EntityManager;
+import javax.persistence.Version;
+import javax.persistence.metamodel.EntityType;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by nicoraynaud on 28/04/2017.
@@ -49,7 +98,11 @@ import java.util.stream.Collectors;
  *
  * @author nicoraynaud
  */
-public abstract class AbstractElasticsearchRepository<T, ID extends Serializable> implements ElasticsearchRepository<T, ID> {
+public abstract class AbstractElasticsearchRepository<T, ID extends Serializable> implements ElasticsearchBulkRepository<T, ID> {
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final int EXISTS_FILTER_BATCH_SIZE = 5000;
+    private static final int MAX_CURSOR_ANCHORS = 1000;
 
     private final Logger log = LoggerFactory.getLogger(AbstractElasticsearchRepository.class);
 
@@ -59,6 +112,18 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
     private Class annotatedClass;
     private RestHighLevelClient highLevelClient;
     private ElasticSearchTemplate elasticSearchTemplate;
+    private VersionType versionType = VersionType.INTERNAL;
+    private Field versionField;
+    private ElasticsearchDocumentCache documentCache;
+    private volatile ElasticsearchBloomFilter existsFilter;
+    private volatile ElasticsearchBloomFilter existsFilterInBuild;
+    @SuppressWarnings("serial")
+    private final Map<String, Object[]> cursorAnchors = Collections.synchronizedMap(new LinkedHashMap<String, Object[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object[]> eldest) {
+            return size() > MAX_CURSOR_ANCHORS;
+        }
+    });
 
     /**
      * Build the ElasticsearchRepository for a given type and type id's type
@@ -76,6 +141,7 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
         this.elasticSearchTemplate = elasticSearchTemplate;
         this.indexedClass = indexedClass;
         this.indexName = getIndexName();
+        initVersioning();
     }
 
     /**
@@ -98,6 +164,7 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
         this.indexedClass = indexedClass;
         this.annotatedClass = annotatedClass;
         this.indexName = getIndexName();
+        initVersioning();
     }
 
     @Override
@@ -112,6 +179,186 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
             return new PageImpl<>(Collections.emptyList());
         }
 
+        SearchResponse response;
+        try {
+            response = search(buildPageSource(pageable, query));
+        } catch (ElasticsearchException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw ex;
+            }
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        rememberCursorAnchor(pageable, query, response.getHits().getHits());
+        prefetchNextPage(pageable, query, response.getHits().totalHits);
+        return new PageImpl<>(mapHits(response.getHits().getHits()), pageable, response.getHits().totalHits);
+    }
+
+    /**
+     * When the pages of a search are read one after the other, prefetches the page following the given one into the search cache
+     * @param pageable the page just read
+     * @param query the search query
+     * @param total the total number of documents found
+     */
+    private void prefetchNextPage(Pageable pageable, QueryBuilder query, long total) {
+        ElasticsearchSearchPrefetcher prefetcher = elasticSearchTemplate.getSearchPrefetcher();
+        if (prefetcher == null || elasticSearchTemplate.getSearchCache() == null) {
+            return;
+        }
+        Pageable next = pageable.next();
+        if (next.getOffset() >= total) {
+            return;
+        }
+        if (prefetcher.isSequential(getPageSequence(pageable, query), pageable.getPageNumber())) {
+            SearchSourceBuilder source = buildPageSource(next, query);
+            prefetcher.prefetch(next.getPageSize(), () -> search(source));
+        }
+    }
+
+    @Override
+    public <P> Page<P> search(Pageable pageable, QueryBuilder query, Class<P> projection) {
+        return search(pageable, query, projection, ProjectionFields.of(projection));
+    }
+
+    @Override
+    public <P> Page<P> search(Pageable pageable, QueryBuilder query, Class<P> projection, String[] includes) {
+
+        Validate.notNull(projection);
+        Validate.notEmpty(includes);
+
+        if (!indexExists()) {
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        SearchResponse response;
+        try {
+            response = search(buildSearchSource(pageable, query).fetchSource(includes, null));
+        } catch (ElasticsearchException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw ex;
+            }
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        return new PageImpl<>(mapHits(response.getHits().getHits(), projection), pageable, response.getHits().totalHits);
+    }
+
+    @Override
+    public <P> Page<P> searchDocValues(Pageable pageable, QueryBuilder query, Class<P> projection, String... fields) {
+
+        Validate.notNull(projection);
+        Validate.notEmpty(fields);
+
+        if (!indexExists()) {
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        SearchSourceBuilder sourceBuilder = buildSearchSource(pageable, query).fetchSource(false);
+        for (String field : fields) {
+            sourceBuilder.docValueField(field);
+        }
+
+        SearchResponse response;
+        try {
+            response = search(sourceBuilder);
+        } catch (ElasticsearchException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw ex;
+            }
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        return new PageImpl<>(Arrays.stream(response.getHits().getHits()).map(h -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (String field : fields) {
+                DocumentField documentField = h.field(field);
+                if (documentField != null && !documentField.getValues().isEmpty()) {
+                    putDocValue(values, field, documentField.getValues().size() == 1 ? documentField.getValue() : documentField.getValues());
+                }
+            }
+            try {
+                return documentMapper.mapToObject(values, projection);
+            } catch (IOException ex) {
+                log.error("Error occured during parsing of doc values", ex);
+                throw new RubiksElasticsearchException("Unable to parse result from ES : ", ex);
+            }
+        }).collect(Collectors.toList()), pageable, response.getHits().totalHits);
+    }
+
+    @Override
+    public <E> Page<E> searchHydrated(Pageable pageable, QueryBuilder query, Class<E> entityClass, EntityManager entityManager) {
+
+        Validate.notNull(entityManager);
+
+        EntityType<E> entityType = entityManager.getMetamodel().entity(entityClass);
+        String idAttribute = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        String jpql = "select e from " + entityType.getName() + " e where e." + idAttribute + " in :ids";
+
+        return searchHydrated(pageable, query, entityClass,
+            (List<Serializable> ids) -> entityManager.createQuery(jpql, entityClass).setParameter("ids", ids).getResultList());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E, K extends Serializable> Page<E> searchHydrated(Pageable pageable, QueryBuilder query, Class<E> entityClass, Function<List<K>, ? extends Iterable<E>> loader) {
+
+        Validate.notNull(entityClass);
+        Validate.notNull(loader);
+
+        if (!indexExists()) {
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        SearchResponse response;
+        try {
+            response = search(buildSearchSource(pageable, query).fetchSource(false));
+        } catch (ElasticsearchException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw ex;
+            }
+            return new PageImpl<>(Collections.emptyList());
+        }
+
+        SearchHit[] hits = response.getHits().getHits();
+        if (hits.length == 0) {
+            return new PageImpl<>(Collections.emptyList(), pageable, response.getHits().totalHits);
+        }
+
+        DocumentIdAccessor idAccessor = DocumentIdAccessor.of(entityClass);
+        List<K> ids = Arrays.stream(hits).map(h -> (K) idAccessor.parseId(h.getId())).collect(Collectors.toList());
+        Map<String, E> entities = new HashMap<>();
+        for (E entity : loader.apply(ids)) {
+            entities.put(String.valueOf(idAccessor.getId(entity)), entity);
+        }
+
+        List<E> content = Arrays.stream(hits).map(h -> entities.get(h.getId())).filter(Objects::nonNull).collect(Collectors.toList());
+        if (content.size() < hits.length) {
+            log.debug("{} documents {} found in ES were not loaded from database", hits.length - content.size(), indexName);
+        }
+        return new PageImpl<>(content, pageable, response.getHits().totalHits);
+    }
+
+    /**
+     * Puts the value of a doc value field in the map of projection properties :
+     * dotted fields are put into nested maps, keyword sub-fields are put as their parent field
+     */
+    @SuppressWarnings("unchecked")
+    private static void putDocValue(Map<String, Object> values, String field, Object value) {
+        String[] path = StringUtils.split(StringUtils.removeEnd(field, ".keyword"), '.');
+        Map<String, Object> current = values;
+        for (int i = 0; i < path.length - 1; i++) {
+            current = (Map<String, Object>) current.computeIfAbsent(path[i], k -> new LinkedHashMap<>());
+        }
+        current.put(path[path.length - 1], value);
+    }
+
+    /**
+     * Builds the source of a paginated (from/size) and sorted search
+     * @param pageable the requested page
+     * @param query the search query
+     * @return the source of the search
+     */
+    SearchSourceBuilder buildSearchSource(Pageable pageable, QueryBuilder query) {
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
         sourceBuilder.from(pageable.getOffset());
         sourceBuilder.size(pageable.getPageSize());
@@ -122,21 +369,171 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
                 sourceBuilder.sort(order.getProperty(), SortOrder.fromString(order.getDirection().name()));
             }
         }
+        return sourceBuilder;
+    }
+
+    /**
+     * @return the name of the index to query (prefixed in test mode)
+     */
+    String getRootIndexName() {
+        return elasticSearchTemplate.getRootIndexName(indexName);
+    }
+
+    /**
+     * Builds the source of a page of search(Pageable, QueryBuilder).
+     * Offset pagination costs more the deeper the page : when a cursor offset threshold is set, pages are sorted with the cursor
+     * tie-breaker so that, beyond the threshold, a page following the one previously read for the same search is fetched
+     * with search_after (from the sort values of the last hit of that page) instead of skipping all the documents before it.
+     * Other deep pages (i.e. jumping directly to a page) are still fetched with from/size.
+     * @param pageable the requested page
+     * @param query the search query
+     * @return the source of the search
+     */
+    SearchSourceBuilder buildPageSource(Pageable pageable, QueryBuilder query) {
+        SearchSourceBuilder sourceBuilder = buildSearchSource(pageable, query);
+        int cursorOffsetThreshold = elasticSearchTemplate.getCursorOffsetThreshold();
+        if (cursorOffsetThreshold <= 0) {
+            return sourceBuilder;
+        }
+
+        if (pageable.getSort() == null) {
+            sourceBuilder.sort(SortBuilders.scoreSort());
+        }
+        if (pageable.getSort() == null || pageable.getSort().getOrderFor(getCursorTieBreaker()) == null) {
+            sourceBuilder.sort(getCursorTieBreaker(), SortOrder.ASC);
+        }
+
+        if (pageable.getOffset() >= cursorOffsetThreshold) {
+            Object[] anchor = cursorAnchors.get(getCursorAnchorKey(pageable, query, pageable.getOffset()));
+            if (anchor != null) {
+                sourceBuilder.from(0).searchAfter(anchor);
+            }
+        }
+        return sourceBuilder;
+    }
+
+    /**
+     * Remembers the sort values of the last hit of a full page read beyond (or up to) the cursor offset threshold,
+     * so that the following page of the same search can be fetched with search_after (see buildPageSource)
+     * @param pageable the page just read
+     * @param query the search query
+     * @param hits the hits of the page
+     */
+    private void rememberCursorAnchor(Pageable pageable, QueryBuilder query, SearchHit[] hits) {
+        int cursorOffsetThreshold = elasticSearchTemplate.getCursorOffsetThreshold();
+        int nextOffset = pageable.getOffset() + pageable.getPageSize();
+        if (cursorOffsetThreshold <= 0 || nextOffset < cursorOffsetThreshold || hits.length < pageable.getPageSize()) {
+            return;
+        }
+        cursorAnchors.put(getCursorAnchorKey(pageable, query, nextOffset), hits[hits.length - 1].getSortValues());
+    }
+
+    private String getCursorAnchorKey(Pageable pageable, QueryBuilder query, int offset) {
+        return getPageSequence(pageable, query) + '@' + offset;
+    }
+
+    /**
+     * @return the key identifying the successive pages of a same search
+     */
+    private String getPageSequence(Pageable pageable, QueryBuilder query) {
+        return indexName + ':' + pageable.getPageSize() + ':' + pageable.getSort() + ':' + Strings.toString(query);
+    }
+
+    @Override
+    public CursorPage<T> searchAfter(QueryBuilder query, Sort sort, int size, String cursor) {
+
+        Validate.notNull(query);
+        Validate.isTrue(size > 0, "The size must be positive");
+
+        Object[] searchAfter = cursor == null ? null : decodeCursor(cursor);
+
+        if (!indexExists()) {
+            return new CursorPage<>(Collections.emptyList(), 0, null);
+        }
+
+        SearchResponse response;
+        try {
+            response = search(buildCursorSource(query, sort, size, searchAfter));
+        } catch (ElasticsearchException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw ex;
+            }
+            return new CursorPage<>(Collections.emptyList(), 0, null);
+        }
+
+        SearchHit[] hits = response.getHits().getHits();
+        String nextCursor = hits.length < size ? null : encodeCursor(hits[hits.length - 1].getSortValues());
+
+        // Following a cursor is sequential access : the next page is prefetched into the search cache
+        ElasticsearchSearchPrefetcher prefetcher = elasticSearchTemplate.getSearchPrefetcher();
+        if (cursor != null && nextCursor != null && prefetcher != null && elasticSearchTemplate.getSearchCache() != null) {
+            SearchSourceBuilder source = buildCursorSource(query, sort, size, decodeCursor(nextCursor));
+            prefetcher.prefetch(size, () -> search(source));
+        }
+        return new CursorPage<>(mapHits(hits), response.getHits().totalHits, nextCursor);
+    }
+
+    /**
+     * The field used to break ties between documents having the same sort values when paginating with a cursor.
+     * It must be unique per document and have doc values (numeric, keyword...) : the default is the id property of documents,
+     * override it when the id is mapped as a text field (i.e. "id.keyword" with the dynamic mapping of a String id).
+     * @return the name of the tie-breaker field
+     */
+    protected String getCursorTieBreaker() {
+        return "id";
+    }
+
+    private SearchSourceBuilder buildCursorSource(QueryBuilder query, Sort sort, int size, Object[] searchAfter) {
+        SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
+        sourceBuilder.size(size);
+        sourceBuilder.query(query);
+
+        if (sort != null) {
+            for (Sort.Order order : sort) {
+                sourceBuilder.sort(order.getProperty(), SortOrder.fromString(order.getDirection().name()));
+            }
+        } else {
+            sourceBuilder.sort(SortBuilders.scoreSort());
+        }
+        sourceBuilder.sort(getCursorTieBreaker(), SortOrder.ASC);
 
-        SearchResponse response = search(sourceBuilder);
+        if (searchAfter != null) {
+            sourceBuilder.searchAfter(searchAfter);
+        }
+        return sourceBuilder;
+    }
 
-        Page<T> result = new PageImpl<>(Arrays.stream(response.getHits().getHits()).map(h -> {
+    private String encodeCursor(Object[] sortValues) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(documentMapper.mapToString(sortValues).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new RubiksElasticsearchException("Unable to build the cursor of the next page", ex);
+        }
+    }
+
+    private Object[] decodeCursor(String cursor) {
+        try {
+            Object[] sortValues = documentMapper.mapToObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), Object[].class);
+            Validate.isTrue(sortValues != null && sortValues.length > 0);
+            return sortValues;
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("Invalid cursor [%s]", cursor), ex);
+        }
+    }
+
+    private List<T> mapHits(SearchHit[] hits) {
+        return mapHits(hits, getIndexedClass());
+    }
+
+    private <P> List<P> mapHits(SearchHit[] hits, Class<P> type) {
+        return Arrays.stream(hits).map(h -> {
             try {
-                return documentMapper.mapToObject(h.getSourceAsMap(), getIndexedClass());
+                return h.getSourceRef() == null ? null : documentMapper.mapToObject(h.getSourceRef().streamInput(), type);
             } catch (IOException ex) {
                 log.error("Error occured during parsing of searchComplex results", ex);
                 throw new RubiksElasticsearchException("Unable to parse result from ES : ", ex);
             }
-        }).collect(Collectors.toList()),
-            pageable,
-            response.getHits().totalHits);
-
-        return result;
+        }).collect(Collectors.toList());
     }
 
     @Override
@@ -162,6 +559,8 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
     /**
      * Low level hook of ES advanced search
      * This method makes sure the correct index is used for querying
+     * When the search cache of the template is enabled, the response is cached by search source (query, page, sort...)
+     * When single flight is enabled, identical concurrent searches share a single request and its response
      * @param sourceBuilder The Source builder object to query the index with (see https://www.elastic.co/guide/en/elasticsearch/client/java-rest/current/java-rest-high-search.html#_using_the_searchsourcebuilder)
      * @return The raw searchResponse
      */
@@ -170,7 +569,45 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
         SearchRequest searchRequest = new SearchRequest(elasticSearchTemplate.getRootIndexName(indexName));
         searchRequest.types(indexName);
         searchRequest.source(sourceBuilder);
-        return search(searchRequest);
+
+        ElasticsearchSearchCache searchCache = elasticSearchTemplate.getSearchCache();
+        boolean singleFlight = elasticSearchTemplate.isSearchSingleFlight();
+        if (searchCache == null && !singleFlight) {
+            return search(searchRequest);
+        }
+
+        String key = indexName + ':' + Strings.toString(sourceBuilder);
+        Supplier<SearchResponse> search = singleFlight
+            ? () -> elasticSearchTemplate.getSingleFlight().execute(getRootIndexName(), key, () -> search(searchRequest))
+            : () -> search(searchRequest);
+        return searchCache != null ? searchCache.get(getRootIndexName(), key, search) : search.get();
+    }
+
+    @Override
+    public void evictSearchCache() {
+        elasticSearchTemplate.evictSearchCache(indexName);
+    }
+
+    @Override
+    public void evictDocumentCache(String id) {
+        if (documentCache != null) {
+            documentCache.invalidate(id);
+        }
+    }
+
+    /**
+     * @return the near cache of the documents read by findOne, null when disabled
+     */
+    public ElasticsearchDocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    /**
+     * Sets the near cache of the documents read by findOne
+     * @param documentCache the cache, null to disable it
+     */
+    public void setDocumentCache(ElasticsearchDocumentCache documentCache) {
+        this.documentCache = documentCache;
     }
 
     /**
@@ -230,29 +667,92 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
 
     /**
      * Private method responsible for parsing search results into a list of entities and a total
+     * The response is streamed : documents are bound directly to the indexed class and aggregations are parsed on access
      * @param searchResponse the SearchResponse to parse
      * @return a paris of list of results and the total number of results
      * @throws IOException When reading the response fails
      */
-    @SuppressWarnings("unchecked")
     private Result<T> parseResults(Response searchResponse, Pageable pageable) throws IOException {
+        try (InputStream content = searchResponse.getEntity().getContent()) {
+            return SearchResultParser.parse(content, documentMapper, getIndexedClass(), pageable);
+        }
+    }
 
-        Result<T> result = documentMapper.mapToObject(EntityUtils.toString(searchResponse.getEntity()), Result.class);
-        result.getHits().getRawResults().forEach(r -> {
-            try {
-                r.setSource(documentMapper.mapToObject(r.getElementAsMap(), getIndexedClass()));
-            } catch (IOException ex) {
-                log.error("Error occured during parsing of searchComplex results", ex);
-            }
-        });
+    @Override
+    public Stream<T> stream(QueryBuilder query, int batchSize) {
+        Validate.notNull(query);
+        Validate.isTrue(batchSize > 0, "The batchSize must be positive");
 
-        result.getHits().setResults(
-            new PageImpl<T>(
-                result.getHits().getRawResults().stream().map(Element::getSource).collect(Collectors.toList()),
-            pageable,
-            result.getHits().getTotal()));
+        if (!indexExists()) {
+            return Stream.empty();
+        }
+
+        ScrollIterator iterator = new ScrollIterator(query, batchSize, null);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(iterator::close);
+    }
+
+    @Override
+    public long export(QueryBuilder query, int batchSize, Consumer<? super T> consumer) {
+        return export(query, batchSize, 0, consumer);
+    }
+
+    @Override
+    public long export(QueryBuilder query, int batchSize, int slices, Consumer<? super T> consumer) {
+        Validate.notNull(query);
+        Validate.notNull(consumer);
+        Validate.isTrue(batchSize > 0, "The batchSize must be positive");
+        Validate.isTrue(slices >= 0, "The number of slices can't be negative");
+
+        if (!indexExists()) {
+            return 0;
+        }
+
+        int nbSlices = slices > 0 ? slices : elasticSearchTemplate.getNumberOfShards(highLevelClient.getLowLevelClient(), indexName);
+        AtomicLong exported = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        // ES refuses slices of a single slice
+        if (nbSlices == 1) {
+            export(new ScrollIterator(query, batchSize, null), consumer, exported, failed);
+            return exported.get();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(nbSlices, new CustomizableThreadFactory("es-export-" + indexName + '-'));
+        try {
+            CompletableFuture.allOf(IntStream.range(0, nbSlices)
+                .mapToObj(slice -> CompletableFuture.runAsync(
+                    () -> export(new ScrollIterator(query, batchSize, new SliceBuilder(slice, nbSlices)), consumer, exported, failed),
+                    executor))
+                .toArray(CompletableFuture[]::new))
+                .join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RubiksElasticsearchException("An error occured during export of documents " + indexName, ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        log.debug("Exported {} documents {} using {} slices", exported.get(), indexName, nbSlices);
+        return exported.get();
+    }
 
-        return result;
+    /**
+     * Feeds the documents of a scroll to the consumer, until the scroll is exhausted or another slice failed
+     */
+    private void export(ScrollIterator iterator, Consumer<? super T> consumer, AtomicLong exported, AtomicBoolean failed) {
+        try {
+            while (!failed.get() && iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                exported.incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            failed.set(true);
+            throw ex;
+        } finally {
+            iterator.close();
+        }
     }
 
     @Override
@@ -260,24 +760,236 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
 
         Validate.notNull(id);
 
+        if (isFilteredOut(id.toString())) {
+            log.debug("Document {} with id [{}] does not exists", indexName, id);
+            return null;
+        }
+        try {
+            if (documentCache != null) {
+                byte[] source = documentCache.get(id.toString(), this::readSource);
+                return source != null ? documentMapper.mapToObject(new ByteArrayInputStream(source), getIndexedClass()) : null;
+            }
+            GetResponse getResponse = get(id.toString());
+            if (!getResponse.isExists()) {
+                log.error("Document {} with id [{}] does not exists", indexName, id);
+                return null;
+            }
+            return documentMapper.mapToObject(getResponse.getSourceAsBytesRef().streamInput(), getIndexedClass());
+        } catch (Exception ex) {
+            log.error("Error occured during fetching of document {} with id [{}] : {}", indexName, id, ex);
+        }
+        return null;
+    }
+
+    private GetResponse get(String id) throws IOException {
+        return highLevelClient.get(new GetRequest().index(elasticSearchTemplate.getRootIndexName(indexName)).type(indexName).id(id));
+    }
+
+    /**
+     * Reads the source of a document to be cached
+     * @param id the id of the document
+     * @return the source of the document, null if it does not exist
+     */
+    private byte[] readSource(String id) {
+        try {
+            GetResponse getResponse = get(id);
+            if (!getResponse.isExists()) {
+                log.debug("Document {} with id [{}] does not exists", indexName, id);
+                return null;
+            }
+            return BytesReference.toBytes(getResponse.getSourceAsBytesRef());
+        } catch (IOException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to fetch document %s with id [%s]", indexName, id), ex);
+        }
+    }
+
+    @Override
+    public <P> P findOne(ID id, Class<P> projection) {
+
+        Validate.notNull(id);
+        Validate.notNull(projection);
+
         GetResponse getResponse = null;
         try {
-            GetRequest get = new GetRequest().index(elasticSearchTemplate.getRootIndexName(indexName)).type(indexName).id(id.toString());
+            GetRequest get = new GetRequest().index(elasticSearchTemplate.getRootIndexName(indexName)).type(indexName).id(id.toString())
+                .fetchSourceContext(new FetchSourceContext(true, ProjectionFields.of(projection), null));
             getResponse = highLevelClient.get(get);
             if (!getResponse.isExists()) {
-                log.error("Document {} with id [{}] does not exists", indexName, id);
+                log.debug("Document {} with id [{}] does not exists", indexName, id);
                 return null;
             }
-            return documentMapper.mapToObject(getResponse.getSource(), getIndexedClass());
+            return documentMapper.mapToObject(getResponse.getSourceAsBytesRef().streamInput(), projection);
         } catch (Exception ex) {
             log.error("Error occured during fetching of document {} with id [{}] : {}", indexName, id, ex);
         }
         return null;
     }
 
+    @Override
+    public List<T> findAll(Iterable<ID> ids) {
+        return findAll(ids, null, null);
+    }
+
+    @Override
+    public List<T> findAll(Iterable<ID> ids, String[] includes, String[] excludes) {
+
+        Validate.notNull(ids);
+
+        List<String> keys = new ArrayList<>();
+        for (ID id : ids) {
+            Validate.notNull(id);
+            keys.add(id.toString());
+        }
+
+        if (keys.isEmpty() || !indexExists()) {
+            return new ArrayList<>(Collections.nCopies(keys.size(), null));
+        }
+
+        Map<String, String> params = new HashMap<>();
+        if (ArrayUtils.isNotEmpty(includes)) {
+            params.put("_source_include", String.join(",", includes));
+        }
+        if (ArrayUtils.isNotEmpty(excludes)) {
+            params.put("_source_exclude", String.join(",", excludes));
+        }
+
+        // Each ID is only requested once, whatever its number of occurences
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, T> documents = new HashMap<>();
+        int chunkSize = Math.max(1, elasticSearchTemplate.getMultiGetChunkSize());
+        for (int from = 0; from < distinctKeys.size(); from += chunkSize) {
+            documents.putAll(multiGet(distinctKeys.subList(from, Math.min(from + chunkSize, distinctKeys.size())), params));
+        }
+
+        return keys.stream().map(documents::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Executes a multi get request (_mget) for a chunk of IDs
+     * @param ids the IDs of the documents
+     * @param params the parameters of the request (source filtering)
+     * @return the found documents by ID
+     */
+    private Map<String, T> multiGet(List<String> ids, Map<String, String> params) {
+        Response response = null;
+        try (NStringEntity nStringEntity = new NStringEntity(documentMapper.mapToString(Collections.singletonMap("ids", ids)), ContentType.APPLICATION_JSON)) {
+            response = highLevelClient.getLowLevelClient().performRequest(
+                HttpPost.METHOD_NAME,
+                '/' + elasticSearchTemplate.getRootIndexName(indexName) + '/' + indexName + "/_mget",
+                params,
+                nStringEntity);
+            try (InputStream content = response.getEntity().getContent()) {
+                return MultiGetResultParser.parse(content, documentMapper, getIndexedClass());
+            }
+        } catch (IOException ex) {
+            log.error("Error occured during multi get of documents {} with ids {} : {}", indexName, ids, ex);
+            throw new RubiksElasticsearchException("An error occured during execution of Multi Get request", ex);
+        } finally {
+            if (response != null) EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    /**
+     * Checks the existence of a document with a HEAD request (without reading its source).
+     * When the exists filter is built, documents it does not contain are reported missing without querying ES.
+     * @param id the id of the document
+     * @return true if the document exists
+     */
     @Override
     public boolean exists(ID id) {
-        return findOne(id) != null;
+        Validate.notNull(id);
+
+        if (isFilteredOut(id.toString())) {
+            return false;
+        }
+        try {
+            return highLevelClient.exists(new GetRequest().index(elasticSearchTemplate.getRootIndexName(indexName)).type(indexName).id(id.toString()));
+        } catch (Exception ex) {
+            log.error("Error occured during existence check of document {} with id [{}] : {}", indexName, id, ex);
+        }
+        return false;
+    }
+
+    /**
+     * Builds the exists filter of this repository : a Bloom filter of the ids of all its documents, read by a scroll
+     * once the index is refreshed (documents indexed but not refreshed yet being invisible to the scroll).
+     * Once built, exists and findOne answer without querying ES for documents missing from the filter.
+     * Documents indexed through this repository (save, sync job, direct indexing) are added to the filter, including during its build.
+     * Documents indexed by other applications or nodes are not : only use the filter when all the documents are indexed by this instance,
+     * or rebuild it regularly.
+     * @param expectedDocuments the number of documents expected in the index (including the ones indexed later)
+     * @param falsePositiveProbability the probability for a missing document to be looked up in ES anyway (e.g. 0.01)
+     */
+    public void buildExistsFilter(long expectedDocuments, double falsePositiveProbability) {
+        ElasticsearchBloomFilter filter = new ElasticsearchBloomFilter(expectedDocuments, falsePositiveProbability);
+        existsFilterInBuild = filter;
+        try {
+            refreshIndex();
+            ScrollIterator iterator = new ScrollIterator(QueryBuilders.matchAllQuery(), EXISTS_FILTER_BATCH_SIZE, null, false);
+            long nbIds = 0;
+            while (iterator.hasNext()) {
+                filter.put(iterator.nextHit().getId());
+                nbIds++;
+            }
+            existsFilter = filter;
+            log.debug("Exists filter of document {} built with {} ids", indexName, nbIds);
+        } finally {
+            existsFilterInBuild = null;
+        }
+    }
+
+    /**
+     * Makes the documents indexed so far visible to searches and scrolls
+     */
+    private void refreshIndex() {
+        Response refreshResponse = null;
+        try {
+            refreshResponse = highLevelClient.getLowLevelClient().performRequest(
+                HttpPost.METHOD_NAME,
+                '/' + elasticSearchTemplate.getRootIndexName(indexName) + "/_refresh",
+                Collections.emptyMap());
+        } catch (ResponseException ex) {
+            if (!isIndexNotFound(ex)) {
+                throw new RubiksElasticsearchException(String.format("Unable to refresh the index of document %s", indexName), ex);
+            }
+        } catch (IOException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to refresh the index of document %s", indexName), ex);
+        } finally {
+            if (refreshResponse != null) EntityUtils.consumeQuietly(refreshResponse.getEntity());
+        }
+    }
+
+    /**
+     * @return the exists filter of this repository, null when it is not built
+     */
+    public ElasticsearchBloomFilter getExistsFilter() {
+        return existsFilter;
+    }
+
+    /**
+     * @param id the id of a document
+     * @return true if the document is known to be missing from the index
+     */
+    private boolean isFilteredOut(String id) {
+        ElasticsearchBloomFilter filter = existsFilter;
+        return filter != null && !filter.mightContain(id);
+    }
+
+    /**
+     * Records the id of a document being indexed in the exists filter
+     * @param id the id of the document
+     */
+    private void addToExistsFilter(String id) {
+        // The filter in build is read first : it is published as the exists filter before being cleared,
+        // so the id can't miss both when the build completes meanwhile
+        ElasticsearchBloomFilter filter = existsFilterInBuild;
+        if (filter != null) {
+            filter.put(id);
+        }
+        filter = existsFilter;
+        if (filter != null) {
+            filter.put(id);
+        }
     }
 
     @Override
@@ -294,6 +1006,10 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
                 Collections.emptyMap());
             CountObject result = documentMapper.mapToObject(EntityUtils.toString(countResponse.getEntity()), CountObject.class);
             return result.getCount();
+        } catch (ResponseException ex) {
+            if (!isIndexNotFound(ex)) {
+                log.error("Error occured during counting of document {} : {}", indexName, ex);
+            }
         } catch (Exception ex) {
             log.error("Error occured during counting of document {} : {}", indexName, ex);
         } finally {
@@ -303,31 +1019,360 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
         return 0;
     }
 
+    @Override
+    public CompletableFuture<Page<T>> searchAsync(Pageable pageable, QueryBuilder query) {
+        Validate.notNull(pageable);
+        Validate.notNull(query);
+
+        CompletableFuture<Page<T>> future = new CompletableFuture<>();
+        SearchRequest searchRequest = new SearchRequest(elasticSearchTemplate.getRootIndexName(indexName));
+        searchRequest.types(indexName);
+        searchRequest.source(buildPageSource(pageable, query));
+        highLevelClient.searchAsync(searchRequest, completing(future,
+            response -> {
+                rememberCursorAnchor(pageable, query, response.getHits().getHits());
+                return new PageImpl<>(mapHits(response.getHits().getHits()), pageable, response.getHits().totalHits);
+            },
+            failure -> {
+                if (isIndexNotFound(failure)) {
+                    return new PageImpl<>(Collections.emptyList());
+                }
+                throw failure;
+            }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<T> findOneAsync(ID id) {
+        Validate.notNull(id);
+
+        if (isFilteredOut(id.toString())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        highLevelClient.getAsync(new GetRequest().index(elasticSearchTemplate.getRootIndexName(indexName)).type(indexName).id(id.toString()),
+            completing(future,
+                response -> response.isExists() ? documentMapper.mapToObject(response.getSourceAsBytesRef().streamInput(), getIndexedClass()) : null,
+                failure -> {
+                    if (isIndexNotFound(failure)) {
+                        return null;
+                    }
+                    throw failure;
+                }));
+        return future;
+    }
+
+    @Override
+    public <S extends T> CompletableFuture<S> saveAsync(S entity) {
+        Validate.notNull(entity);
+
+        IndexRequest indexRequest;
+        try {
+            indexRequest = buildIndexRequest(entity);
+        } catch (Exception ex) {
+            CompletableFuture<S> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+        indexRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
+
+        CompletableFuture<S> future = new CompletableFuture<>();
+        highLevelClient.indexAsync(indexRequest, completing(future,
+            response -> {
+                evictSearchCache();
+                if (documentCache != null) {
+                    documentCache.put(indexRequest.id(), BytesReference.toBytes(indexRequest.source()));
+                }
+                return entity;
+            },
+            failure -> {
+                evictDocumentCache(indexRequest.id());
+                if (isVersionConflict(failure)) {
+                    log.debug("Document {} [{}] is already indexed with a newer version", indexName, entity);
+                    return entity;
+                }
+                throw failure;
+            }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(ID id) {
+        Validate.notNull(id);
+
+        DeleteRequest deleteRequest = new DeleteRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id.toString());
+        deleteRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        highLevelClient.deleteAsync(deleteRequest, completing(future,
+            response -> {
+                evictSearchCache();
+                evictDocumentCache(id.toString());
+                return null;
+            },
+            failure -> {
+                evictDocumentCache(id.toString());
+                if (isIndexNotFound(failure)) {
+                    return null;
+                }
+                throw failure;
+            }));
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Long> countAsync() {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        highLevelClient.getLowLevelClient().performRequestAsync(
+            HttpGet.METHOD_NAME,
+            '/' + elasticSearchTemplate.getRootIndexName(indexName) + '/' + indexName + "/_count",
+            Collections.emptyMap(),
+            new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    complete(future, () -> {
+                        try {
+                            return documentMapper.mapToObject(EntityUtils.toString(response.getEntity()), CountObject.class).getCount();
+                        } finally {
+                            EntityUtils.consumeQuietly(response.getEntity());
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(Exception failure) {
+                    complete(future, () -> {
+                        if (isIndexNotFound(failure)) {
+                            return 0L;
+                        }
+                        throw failure;
+                    });
+                }
+            });
+        return future;
+    }
+
+    /**
+     * Builds the listener of an asynchronous request, completing the future with the mapped response, or failure
+     * @param future the future to complete
+     * @param onResponse maps the response to the result
+     * @param onFailure maps the failure to a result, or rethrows it
+     * @param <R> the type of the response
+     * @param <V> the type of the result
+     * @return the listener
+     */
+    private <R, V> ActionListener<R> completing(CompletableFuture<V> future, AsyncMapping<R, V> onResponse, AsyncMapping<Exception, V> onFailure) {
+        return new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                complete(future, () -> onResponse.map(response));
+            }
+
+            @Override
+            public void onFailure(Exception failure) {
+                complete(future, () -> onFailure.map(failure));
+            }
+        };
+    }
+
+    /**
+     * Completes a future on the async executor of the template, rather than on the IO threads of the client
+     * @param future the future to complete
+     * @param result computes the result of the future
+     * @param <V> the type of the result
+     */
+    private <V> void complete(CompletableFuture<V> future, Callable<V> result) {
+        try {
+            elasticSearchTemplate.getAsyncExecutor().execute(() -> {
+                try {
+                    future.complete(result.call());
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Mapping of the response (or failure) of an asynchronous request
+     */
+    @FunctionalInterface
+    private interface AsyncMapping<R, V> {
+        V map(R value) throws Exception;
+    }
+
     @Override
     public <S extends T> S save(S entity) {
         Validate.notNull(entity);
 
+        IndexRequest indexRequest = null;
         try {
-            String id = getIndexedClass().getMethod("getId").invoke(entity).toString();
-            IndexRequest indexRequest = new IndexRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id);
-            String json = documentMapper.mapToString(entity);
-            indexRequest.source(json, XContentType.JSON);
+            indexRequest = buildIndexRequest(entity);
             indexRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
             highLevelClient.index(indexRequest);
+            evictSearchCache();
+            if (documentCache != null) {
+                documentCache.put(indexRequest.id(), BytesReference.toBytes(indexRequest.source()));
+            }
         } catch (Exception ex) {
-            log.error("Error occured during indexing of document {} : {}", indexName, ex);
+            if (indexRequest != null) {
+                evictDocumentCache(indexRequest.id());
+            }
+            if (isVersionConflict(ex)) {
+                log.debug("Document {} [{}] is already indexed with a newer version", indexName, entity);
+            } else {
+                log.error("Error occured during indexing of document {} : {}", indexName, ex);
+            }
         }
 
         return entity;
     }
 
+    /**
+     * Saves all the given entities using a single Bulk request
+     * @param entities the entities to index
+     * @return the given entities
+     */
     @Override
     public <S extends T> Iterable<S> save(Iterable<S> entities) {
         Validate.notNull(entities);
-        entities.forEach(this::save);
+
+        BulkRequest bulkRequest = new BulkRequest();
+        try {
+            for (S entity : entities) {
+                bulkRequest.add(buildIndexRequest(entity));
+            }
+            if (bulkRequest.numberOfActions() == 0) {
+                return entities;
+            }
+            bulkRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
+            BulkResponse bulkResponse = highLevelClient.bulk(bulkRequest);
+            evictSearchCache();
+            BulkItemResponse[] itemResponses = bulkResponse.getItems();
+            for (int i = 0; i < itemResponses.length; i++) {
+                BulkItemResponse itemResponse = itemResponses[i];
+                if (!itemResponse.isFailed()) {
+                    if (documentCache != null) {
+                        documentCache.put(itemResponse.getId(), BytesReference.toBytes(((IndexRequest) bulkRequest.requests().get(i)).source()));
+                    }
+                    continue;
+                }
+                evictDocumentCache(itemResponse.getId());
+                // Documents already indexed with a newer version are ignored
+                if (itemResponse.getFailure().getStatus() != RestStatus.CONFLICT) {
+                    log.error("Error occured during bulk indexing of document {} with id [{}] : {}", indexName, itemResponse.getId(), itemResponse.getFailureMessage());
+                }
+            }
+        } catch (Exception ex) {
+            bulkRequest.requests().forEach(request -> evictDocumentCache(request.id()));
+            log.error("Error occured during bulk indexing of documents {} : {}", indexName, ex);
+        }
+
         return entities;
     }
 
+    /**
+     * Builds the IndexRequest of a given entity (without any refresh policy)
+     * @param entity the entity to index
+     * @return the IndexRequest, ready to be sent alone or within a bulk
+     * @throws Exception if the Id of the entity cannot be read or the entity cannot be serialized
+     */
+    protected IndexRequest buildIndexRequest(T entity) throws Exception {
+        Validate.notNull(entity);
+        String id = DocumentIdAccessor.of(getIndexedClass()).getId(entity).toString();
+        addToExistsFilter(id);
+        IndexRequest indexRequest = new IndexRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id);
+        indexRequest.source(documentMapper.mapToString(entity), XContentType.JSON);
+        if (versionField != null) {
+            applyVersion(indexRequest, toVersion(versionField.get(entity)));
+        }
+        return indexRequest;
+    }
+
+    @Override
+    public IndexRequest buildIndexRequest(String id, byte[] source, T document) {
+        Validate.notNull(id);
+        Validate.notNull(source);
+        addToExistsFilter(id);
+        IndexRequest indexRequest = new IndexRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id);
+        indexRequest.source(source, XContentType.JSON);
+        if (versionField != null) {
+            try {
+                // Without the document, it is bound back from its source to read its version field as when indexing an entity
+                T versioned = document != null ? document : documentMapper.mapToObject(new ByteArrayInputStream(source), getIndexedClass());
+                applyVersion(indexRequest, toVersion(versionField.get(versioned)));
+            } catch (IOException | IllegalAccessException ex) {
+                throw new RubiksElasticsearchException(String.format("Unable to read the version of document %s with id [%s]", indexName, id), ex);
+            }
+        }
+        return indexRequest;
+    }
+
+    /**
+     * Sets the external version of an IndexRequest.
+     * @throws RubiksElasticsearchException if the document has no version : indexing it without versioning
+     * would increment the version in ES and make the next versioned writes conflict
+     */
+    private void applyVersion(IndexRequest indexRequest, Long version) {
+        if (version == null) {
+            throw new RubiksElasticsearchException(String.format("Document %s with id [%s] has no version, it can't be indexed with versionType %s",
+                indexName, indexRequest.id(), versionType));
+        }
+        indexRequest.versionType(versionType).version(version);
+    }
+
+    private static Long toVersion(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        if (value instanceof Instant) {
+            return ((Instant) value).toEpochMilli();
+        }
+        throw new RubiksElasticsearchException(String.format("Unsupported version type %s", value.getClass()));
+    }
+
+    /**
+     * @param ex an exception thrown by the ES client
+     * @return true if the write was rejected because the document is already indexed with a newer version
+     */
+    protected static boolean isVersionConflict(Exception ex) {
+        return ex instanceof ElasticsearchException && ((ElasticsearchException) ex).status() == RestStatus.CONFLICT;
+    }
+
+    @Override
+    public void indexSource(String id, byte[] source) {
+        IndexRequest indexRequest = buildIndexRequest(id, source, null);
+        indexRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
+        try {
+            highLevelClient.index(indexRequest);
+            evictSearchCache();
+            if (documentCache != null) {
+                documentCache.put(id, source);
+            }
+        } catch (Exception ex) {
+            evictDocumentCache(id);
+            if (isVersionConflict(ex)) {
+                log.debug("Document {} with id [{}] is already indexed with a newer version", indexName, id);
+                return;
+            }
+            throw new RubiksElasticsearchException(String.format("Unable to index document %s with id [%s]", indexName, id), ex);
+        }
+    }
+
+    @Override
+    public DeleteRequest buildDeleteRequest(String id) {
+        Validate.notNull(id);
+        return new DeleteRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id);
+    }
+
     @Override
     public void delete(ID id) {
         Validate.notNull(id);
@@ -340,9 +1385,11 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
             DeleteRequest deleteRequest = new DeleteRequest(elasticSearchTemplate.getRootIndexName(indexName), indexName, id.toString());
             deleteRequest.setRefreshPolicy(elasticSearchTemplate.getRefreshPolicy());
             highLevelClient.delete(deleteRequest);
+            evictSearchCache();
         } catch (Exception ex) {
             log.error("Error occured during deleting of document {} with id [{}] : {}", indexName, id, ex);
         }
+        evictDocumentCache(id.toString());
     }
 
     @Override
@@ -352,7 +1399,7 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
 
         log.debug("Deleting record for document {} and entity [{}]", indexName, entity);
         try {
-            Object id = getIndexedClass().getMethod("getId").invoke(entity);
+            Object id = DocumentIdAccessor.of(getIndexedClass()).getId(entity);
             delete((ID) id);
         } catch (Exception ex) {
             log.error("Error occured during deletion of document {} with entity [{}] : {}", indexName, entity, ex);
@@ -382,9 +1429,17 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
                     "    \"match_all\": {}\n" +
                     "  }\n" +
                     "}", ContentType.APPLICATION_JSON));
+            evictSearchCache();
+        } catch (ResponseException ex) {
+            if (!isIndexNotFound(ex)) {
+                log.error("Error occured during deletion of all records for index {} : {}", indexName, ex);
+            }
         } catch (Exception ex) {
             log.error("Error occured during deletion of all records for index {} : {}", indexName, ex);
         }
+        if (documentCache != null) {
+            documentCache.clear();
+        }
     }
 
     @Override
@@ -396,6 +1451,166 @@ public abstract class AbstractElasticsearchRepository<T, ID extends Serializable
         return elasticSearchTemplate.indexExists(highLevelClient.getLowLevelClient(), indexName, indexName);
     }
 
+    /**
+     * As the existence of the index is cached, it may have been deleted since then.
+     * When so, the index is evicted from the cache and the operation is considered done on an empty index.
+     * @param ex the exception thrown by a request
+     * @return true if the request failed because the index does not exist
+     */
+    protected boolean isIndexNotFound(Exception ex) {
+        boolean notFound = ex instanceof ElasticsearchException ?
+            ((ElasticsearchException) ex).status() == RestStatus.NOT_FOUND :
+            ex instanceof ResponseException && ((ResponseException) ex).getResponse().getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND;
+        if (notFound) {
+            log.debug("Index of document {} not found", indexName);
+            elasticSearchTemplate.evictIndexExists(indexName);
+        }
+        return notFound;
+    }
+
+    /**
+     * Iterates over the hits of a scroll, fetching the next batch when the current one is consumed.
+     * The scroll context is cleared once all hits are fetched, or when closed.
+     */
+    private final class ScrollIterator implements Iterator<T> {
+
+        private final QueryBuilder query;
+        private final int batchSize;
+        private final SliceBuilder slice;
+        private final boolean fetchSource;
+        private String scrollId;
+        private SearchHit[] hits = new SearchHit[0];
+        private int position = 0;
+        private long fetched = 0;
+        private boolean exhausted = false;
+
+        private ScrollIterator(QueryBuilder query, int batchSize, SliceBuilder slice) {
+            this(query, batchSize, slice, true);
+        }
+
+        private ScrollIterator(QueryBuilder query, int batchSize, SliceBuilder slice, boolean fetchSource) {
+            this.query = query;
+            this.batchSize = batchSize;
+            this.slice = slice;
+            this.fetchSource = fetchSource;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < hits.length) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            fetch();
+            return position < hits.length;
+        }
+
+        @Override
+        public T next() {
+            SearchHit hit = nextHit();
+            try {
+                return hit.getSourceRef() == null ? null : documentMapper.mapToObject(hit.getSourceRef().streamInput(), getIndexedClass());
+            } catch (IOException ex) {
+                log.error("Error occured during parsing of scroll results", ex);
+                throw new RubiksElasticsearchException("Unable to parse result from ES : ", ex);
+            }
+        }
+
+        private SearchHit nextHit() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SearchHit hit = hits[position];
+            // Release the hit as soon as it is consumed
+            hits[position++] = null;
+            return hit;
+        }
+
+        private void fetch() {
+            try {
+                SearchResponse response;
+                if (scrollId == null) {
+                    SearchRequest searchRequest = new SearchRequest(elasticSearchTemplate.getRootIndexName(indexName));
+                    searchRequest.types(indexName);
+                    searchRequest.scroll(SCROLL_KEEP_ALIVE);
+                    SearchSourceBuilder sourceBuilder = new SearchSourceBuilder().query(query).size(batchSize).sort(FieldSortBuilder.DOC_FIELD_NAME).fetchSource(fetchSource);
+                    if (slice != null) {
+                        sourceBuilder.slice(slice);
+                    }
+                    searchRequest.source(sourceBuilder);
+                    response = highLevelClient.search(searchRequest);
+                } else {
+                    response = highLevelClient.searchScroll(new SearchScrollRequest(scrollId).scroll(SCROLL_KEEP_ALIVE));
+                }
+                scrollId = response.getScrollId();
+                hits = response.getHits().getHits();
+                position = 0;
+                fetched += hits.length;
+                if (hits.length == 0 || fetched >= response.getHits().getTotalHits()) {
+                    close();
+                }
+            } catch (ElasticsearchException ex) {
+                close();
+                if (!isIndexNotFound(ex)) {
+                    throw ex;
+                }
+            } catch (IOException ex) {
+                close();
+                log.error("Error occured during scroll of documents {} : {}", indexName, ex);
+                throw new RubiksElasticsearchException("An error occured during execution of Scroll request", ex);
+            }
+        }
+
+        private void close() {
+            exhausted = true;
+            if (scrollId == null) {
+                return;
+            }
+            try {
+                ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+                clearScrollRequest.addScrollId(scrollId);
+                highLevelClient.clearScroll(clearScrollRequest);
+            } catch (Exception ex) {
+                log.warn("Unable to clear the scroll of documents {}, it will expire by itself : {}", indexName, ex);
+            }
+            scrollId = null;
+        }
+    }
+
+    /**
+     * Reads the versioning settings of the ElasticsearchDocument annotation.
+     * The version field is the one named in the annotation, or the one annotated with @Version, looked up in the class hierarchy.
+     */
+    private void initVersioning() {
+        ElasticsearchDocument annotation = getIndexedClass().getAnnotation(ElasticsearchDocument.class);
+        if (annotation == null && annotatedClass != null) {
+            annotation = (ElasticsearchDocument) annotatedClass.getAnnotation(ElasticsearchDocument.class);
+        }
+        if (annotation == null || annotation.versionType() == VersionType.INTERNAL) {
+            return;
+        }
+        Validate.isTrue(annotation.versionType() == VersionType.EXTERNAL || annotation.versionType() == VersionType.EXTERNAL_GTE,
+            "Unsupported versionType %s for document %s", annotation.versionType(), indexName);
+
+        for (Class clazz = getIndexedClass(); clazz != null && versionField == null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (StringUtils.isNotBlank(annotation.versionField()) ?
+                    field.getName().equals(annotation.versionField()) :
+                    field.isAnnotationPresent(Version.class)) {
+                    versionField = field;
+                    break;
+                }
+            }
+        }
+        if (versionField == null) {
+            throw new RubiksElasticsearchException(String.format("Unable to find the version field of document %s in class %s", indexName, getIndexedClass()));
+        }
+        versionField.setAccessible(true);
+        versionType = annotation.versionType();
+    }
+
     /**
      * The indexName is calculated based on the following rule :
      * - When specified in the "indexName" property of the ElasticsearchDocument annotation, use it
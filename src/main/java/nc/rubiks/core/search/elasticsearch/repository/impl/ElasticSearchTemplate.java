@@ -1,5 +1,7 @@
 package nc.rubiks.core.search.elasticsearch.repository.impl;
 
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchPrefetcher;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpDelete;
@@ -21,6 +23,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by nicoraynaud on 11/05/2017.
@@ -31,6 +36,8 @@ import java.util.UUID;
  * It is initialiazed with a "testMode" mode in order to create specific index names on the server
  * whenever the testMode mode is true. This will ensure that no test can be ran against the same indices
  * as a running application.
+ *
+ * Existing indices are cached for a given TTL, in order to avoid querying the cluster before each operation.
  */
 @Component
 public class ElasticSearchTemplate {
@@ -40,6 +47,19 @@ public class ElasticSearchTemplate {
     private final boolean testMode;
     private final String context;
     private final String prefix;
+    private final long indexExistsCacheTtlMilliseconds;
+    private int cursorOffsetThreshold = 0;
+    private int multiGetChunkSize = 1000;
+    private ElasticsearchSearchCache searchCache;
+    private boolean searchSingleFlight = false;
+    private ElasticsearchSearchPrefetcher searchPrefetcher;
+    private Executor asyncExecutor = ForkJoinPool.commonPool();
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * Existing indices (root index name) and the time until which their existence is cached
+     */
+    private final Map<String, Long> existingIndices = new ConcurrentHashMap<>();
 
     /**
      * Constructor
@@ -50,8 +70,22 @@ public class ElasticSearchTemplate {
      *              When set to no, no prefix will be used and indices will be as passed in parameter for each method.
      */
     public ElasticSearchTemplate(String context, Boolean testMode) {
+        this(context, testMode, 0);
+    }
+
+    /**
+     * Constructor
+     * @param context the context the elasticsearch cluster is available at (i.e.: http://es.intranet.opt/my-context:9200 =&gt; "my-context").
+     *                this parameter can be null or empty if no context is used.
+     * @param testMode the test mode for this instance.
+     *              When set to yes, all indices will be automatically prefixed when used (ex: "test_d4a2e0d7-e968-4ca3-8c11-21d2d1b54e2c_{index}")
+     *              When set to no, no prefix will be used and indices will be as passed in parameter for each method.
+     * @param indexExistsCacheTtlMilliseconds how long the existence of an index is cached (0 to disable the cache)
+     */
+    public ElasticSearchTemplate(String context, Boolean testMode, long indexExistsCacheTtlMilliseconds) {
         this.context = context;
         this.testMode = testMode;
+        this.indexExistsCacheTtlMilliseconds = indexExistsCacheTtlMilliseconds;
         if (this.testMode) {
             prefix = "test_" + UUID.randomUUID() + "_";
         } else {
@@ -71,21 +105,34 @@ public class ElasticSearchTemplate {
 
     /**
      * Queries ES to check whether a specific index exists with the given typeName
+     * The existence of an index is cached (missing indices are not)
      * @param client The ES RestClient
      * @param indexName the Index
      * @param typeName the type inside the Index
      * @return true if exists, false otherwise
      */
     public boolean indexExists(RestClient client, String indexName, String typeName) {
+        String rootIndexName = getRootIndexName(indexName);
+        Long cachedUntil = existingIndices.get(rootIndexName);
+        if (cachedUntil != null && cachedUntil > System.currentTimeMillis()) {
+            return true;
+        }
+
         try {
             Response existsResponse = client.performRequest(
                 HttpHead.METHOD_NAME,
-                '/' + getRootIndexName(indexName),
+                '/' + rootIndexName,
                 Collections.emptyMap());
 
-            log.debug("Verify existence of index {}/{} resulted with status [{}]", getRootIndexName(indexName), typeName, existsResponse.getStatusLine().getStatusCode());
+            log.debug("Verify existence of index {}/{} resulted with status [{}]", rootIndexName, typeName, existsResponse.getStatusLine().getStatusCode());
 
-            return existsResponse.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND;
+            boolean exists = existsResponse.getStatusLine().getStatusCode() != HttpStatus.SC_NOT_FOUND;
+            if (exists && indexExistsCacheTtlMilliseconds > 0) {
+                existingIndices.put(rootIndexName, System.currentTimeMillis() + indexExistsCacheTtlMilliseconds);
+            } else {
+                existingIndices.remove(rootIndexName);
+            }
+            return exists;
         } catch (Exception ex) {
             log.error("Error occured during query of index existence {} : {}", typeName, ex);
         }
@@ -93,6 +140,27 @@ public class ElasticSearchTemplate {
         return false;
     }
 
+    /**
+     * Removes an index from the existence cache, to be used when an index is found missing
+     * @param indexName the Index
+     */
+    public void evictIndexExists(String indexName) {
+        existingIndices.remove(getRootIndexName(indexName));
+    }
+
+    /**
+     * Invalidates the cached search results of an index, to be used whenever its documents are written.
+     * Unless writes are refreshed, the results of the index are not cached until they become visible to searches.
+     * The searches in flight on the index are no longer shared with the new ones.
+     * @param indexName the Index
+     */
+    public void evictSearchCache(String indexName) {
+        singleFlight.invalidate(getRootIndexName(indexName));
+        if (searchCache != null) {
+            searchCache.invalidate(getRootIndexName(indexName), getRefreshPolicy() != WriteRequest.RefreshPolicy.NONE);
+        }
+    }
+
     /**
      * Reads and return the JSON of an Index
      * @param client the ES RestClient
@@ -120,12 +188,40 @@ public class ElasticSearchTemplate {
         return null;
     }
 
+    /**
+     * Reads the number of primary shards of an Index
+     * @param client the ES RestClient
+     * @param indexName the Index to read
+     * @return the number of primary shards of the Index, 1 when it can't be read
+     */
+    public int getNumberOfShards(RestClient client, String indexName) {
+        Response shardsResponse = null;
+        try {
+            Map<String, String> params = new HashMap<>();
+            params.put("h", "pri");
+            shardsResponse = client.performRequest(
+                HttpGet.METHOD_NAME,
+                "/_cat/indices/" + getRootIndexName(indexName),
+                params);
+
+            return Integer.parseInt(EntityUtils.toString(shardsResponse.getEntity()).trim());
+        } catch (Exception ex) {
+            log.error("Error occured during read of the number of shards of index {} : {}", getRootIndexName(indexName), ex);
+        } finally {
+            if (shardsResponse != null) EntityUtils.consumeQuietly(shardsResponse.getEntity());
+        }
+
+        return 1;
+    }
+
     /**
      * Deletes an existing index from ES cluster
      * @param client The ES RestClient
      * @param indexName The Index to delete
      */
     public void deleteIndex(RestClient client, String indexName) {
+        evictIndexExists(indexName);
+        evictSearchCache(indexName);
         Response deleteResponse = null;
         try {
             deleteResponse = client.performRequest(
@@ -151,6 +247,10 @@ public class ElasticSearchTemplate {
      * @param client the ES RestClient
      */
     public void deleteAllIndices(RestClient client) {
+        existingIndices.clear();
+        if (searchCache != null) {
+            searchCache.clear();
+        }
         Response deleteResponse = null;
         try {
             deleteResponse = client.performRequest(
@@ -178,6 +278,8 @@ public class ElasticSearchTemplate {
      * @param setting the settings in JSON ES compliant format
      */
     public void createIndex(RestClient client, String indexName, String typeName, String setting) {
+        evictIndexExists(indexName);
+        evictSearchCache(indexName);
         try {
             Response createResponse = client.performRequest(
                 HttpPut.METHOD_NAME,
@@ -214,6 +316,106 @@ public class ElasticSearchTemplate {
         }
     }
 
+    /**
+     * @return the offset from which the pages following the one previously read are fetched with search_after instead of from/size (0 when disabled)
+     */
+    public int getCursorOffsetThreshold() {
+        return cursorOffsetThreshold;
+    }
+
+    /**
+     * Sets the offset from which the pages following the one previously read (for the same search) are fetched with search_after instead of from/size
+     * @param cursorOffsetThreshold the offset threshold, 0 to disable
+     */
+    public void setCursorOffsetThreshold(int cursorOffsetThreshold) {
+        this.cursorOffsetThreshold = cursorOffsetThreshold;
+    }
+
+    /**
+     * @return the maximum number of documents read per multi get request
+     */
+    public int getMultiGetChunkSize() {
+        return multiGetChunkSize;
+    }
+
+    /**
+     * Sets the maximum number of documents read per multi get request
+     * @param multiGetChunkSize the chunk size
+     */
+    public void setMultiGetChunkSize(int multiGetChunkSize) {
+        this.multiGetChunkSize = multiGetChunkSize;
+    }
+
+    /**
+     * @return the cache of search results, null when disabled
+     */
+    public ElasticsearchSearchCache getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Sets the cache of search results shared by the repositories
+     * @param searchCache the cache, null to disable it
+     */
+    public void setSearchCache(ElasticsearchSearchCache searchCache) {
+        this.searchCache = searchCache;
+    }
+
+    /**
+     * @return true if identical concurrent searches share a single request to ES
+     */
+    public boolean isSearchSingleFlight() {
+        return searchSingleFlight;
+    }
+
+    /**
+     * Sets whether identical concurrent searches (same index and search source) share a single request to ES,
+     * the callers waiting for the search in flight and sharing its response
+     * @param searchSingleFlight true to coalesce identical concurrent searches
+     */
+    public void setSearchSingleFlight(boolean searchSingleFlight) {
+        this.searchSingleFlight = searchSingleFlight;
+    }
+
+    /**
+     * @return the prefetcher of the next pages of sequential searches, null when disabled
+     */
+    public ElasticsearchSearchPrefetcher getSearchPrefetcher() {
+        return searchPrefetcher;
+    }
+
+    /**
+     * Sets the prefetcher of the next pages of searches walked page after page.
+     * Prefetched pages are stored in the search cache : the prefetcher is only used when the search cache is set.
+     * @param searchPrefetcher the prefetcher, null to disable it
+     */
+    public void setSearchPrefetcher(ElasticsearchSearchPrefetcher searchPrefetcher) {
+        this.searchPrefetcher = searchPrefetcher;
+    }
+
+    /**
+     * @return the executor completing the futures of the asynchronous repository operations
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor completing the futures of the asynchronous repository operations (searchAsync, findOneAsync...) :
+     * responses are parsed, and the callbacks of the futures run, on this executor rather than on the IO threads of the client
+     * @param asyncExecutor the executor, the common ForkJoinPool by default
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * @return the coalescing of identical concurrent searches
+     */
+    SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
     /**
      * Responsible for creating the default parameters for any query made to ES
      * Ex: in testMode mode, each query will have a default refresh mode at "true" in order
@@ -0,0 +1,58 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+
+import java.io.Serializable;
+
+/**
+ * Internal operations used by the sync (job, pipeline, direct indexing and reindexing) to write documents in bulk.
+ * They are not part of the ElasticsearchRepository API : only repositories extending AbstractElasticsearchRepository
+ * can be synchronized in bulk.
+ */
+public interface ElasticsearchBulkRepository<T, ID extends Serializable> extends ElasticsearchRepository<T, ID> {
+
+    /**
+     * Builds the request indexing an already serialized document in this repository's index,
+     * to be sent within a bulk request.
+     * @param id the id of the document
+     * @param source the JSON source of the document
+     * @param document the document the source was serialized from, giving its version when this repository is versioned
+     *                 (can be null, the source is then bound back to a document to read it)
+     * @return the IndexRequest (without any refresh policy)
+     * @throws nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException if this repository is versioned and the document has no version
+     */
+    IndexRequest buildIndexRequest(String id, byte[] source, T document);
+
+    /**
+     * Builds the request deleting a document from this repository's index,
+     * to be sent within a bulk request.
+     * @param id the id of the document
+     * @return the DeleteRequest (without any refresh policy)
+     */
+    DeleteRequest buildDeleteRequest(String id);
+
+    /**
+     * Indexes an already serialized document as is, with the refresh policy of this repository,
+     * updating the caches as save does.
+     * @param id the id of the document
+     * @param source the JSON source of the document
+     * @throws nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException if the document can't be indexed
+     * (indexing an outdated version is not an error)
+     */
+    void indexSource(String id, byte[] source);
+
+    /**
+     * Invalidates the cached search results of this repository's index (see ElasticsearchSearchCache),
+     * to be called whenever its documents are written through bulk requests built by this repository.
+     */
+    void evictSearchCache();
+
+    /**
+     * Invalidates a document in the near cache of this repository (see ElasticsearchDocumentCache),
+     * to be called whenever it is written through a bulk request built by this repository.
+     * @param id the id of the document
+     */
+    void evictDocumentCache(String id);
+}
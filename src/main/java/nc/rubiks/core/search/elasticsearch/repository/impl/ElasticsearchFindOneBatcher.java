@@ -0,0 +1,166 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batching front of ElasticsearchRepository.findOne for concurrent lookups.
+ *
+ * Lookups are collected during a short window (starting with the first pending lookup) and resolved with a single
+ * multi get request, as soon as the window ends or the batch is full. A lookup is therefore delayed by the window at most.
+ * Concurrent lookups of the same ID share the same result.
+ *
+ * @param <T> The type of the documents
+ * @param <ID> The type of the documents ID
+ */
+public class ElasticsearchFindOneBatcher<T, ID extends Serializable> implements DisposableBean {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchFindOneBatcher.class);
+
+    private final ElasticsearchRepository<T, ID> repository;
+
+    private final long windowMilliseconds;
+
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+
+    private Map<ID, CompletableFuture<T>> pending = new LinkedHashMap<>();
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    /**
+     * @param repository the repository used to load the documents
+     * @param windowMilliseconds the maximum time a lookup waits for other lookups
+     * @param maxBatchSize the maximum number of IDs per multi get request
+     */
+    public ElasticsearchFindOneBatcher(ElasticsearchRepository<T, ID> repository, long windowMilliseconds, int maxBatchSize) {
+        this(repository, windowMilliseconds, maxBatchSize, 2);
+    }
+
+    /**
+     * @param repository the repository used to load the documents
+     * @param windowMilliseconds the maximum time a lookup waits for other lookups
+     * @param maxBatchSize the maximum number of IDs per multi get request
+     * @param parallelism the number of threads sending the multi get requests
+     */
+    public ElasticsearchFindOneBatcher(ElasticsearchRepository<T, ID> repository, long windowMilliseconds, int maxBatchSize, int parallelism) {
+        Validate.notNull(repository);
+        Validate.isTrue(windowMilliseconds >= 0, "The window can't be negative");
+        Validate.isTrue(maxBatchSize > 0, "The maxBatchSize must be positive");
+        Validate.isTrue(parallelism > 0, "The parallelism must be positive");
+        this.repository = repository;
+        this.windowMilliseconds = windowMilliseconds;
+        this.maxBatchSize = maxBatchSize;
+        this.executor = Executors.newScheduledThreadPool(parallelism, new CustomizableThreadFactory("es-find-one-batcher-"));
+    }
+
+    /**
+     * Looks up a document, along with the other lookups of the current window
+     * @param id The ID of the document
+     * @return The future document, completed with null when it does not exist
+     */
+    public CompletableFuture<T> findOneAsync(ID id) {
+        Validate.notNull(id);
+
+        CompletableFuture<T> future;
+        Map<ID, CompletableFuture<T>> full = null;
+        synchronized (lock) {
+            future = pending.computeIfAbsent(id, k -> new CompletableFuture<>());
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = executor.schedule(this::flush, windowMilliseconds, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (full != null) {
+            Map<ID, CompletableFuture<T>> batch = full;
+            executor.execute(() -> load(batch));
+        }
+        return future;
+    }
+
+    /**
+     * Looks up a document, along with the other lookups of the current window, and waits for it
+     * @param id The ID of the document
+     * @return The document, null when it does not exist
+     */
+    public T findOne(ID id) {
+        try {
+            return findOneAsync(id).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RubiksElasticsearchException("Interrupted while waiting for document with id " + id, ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new RubiksElasticsearchException("Unable to load document with id " + id, ex.getCause());
+        }
+    }
+
+    /**
+     * Resolves the pending lookups and stops the batcher
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        flush();
+        executor.shutdown();
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private Map<ID, CompletableFuture<T>> takePending() {
+        Map<ID, CompletableFuture<T>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void flush() {
+        Map<ID, CompletableFuture<T>> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            load(batch);
+        }
+    }
+
+    private void load(Map<ID, CompletableFuture<T>> batch) {
+        List<ID> ids = new ArrayList<>(batch.keySet());
+        try {
+            log.debug("Loading a batch of {} documents", ids.size());
+            List<T> documents = repository.findAll(ids);
+            for (int i = 0; i < ids.size(); i++) {
+                batch.get(ids.get(i)).complete(documents.get(i));
+            }
+        } catch (RuntimeException ex) {
+            batch.values().forEach(future -> future.completeExceptionally(ex));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.model.Result;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs several searches, against one or several repositories, in a single request (_msearch).
+ *
+ * Searches are added to the multi search, which is then executed once. Each search gets its own result or failure :
+ * a failing search does not prevent the others from succeeding.
+ *
+ * <pre>
+ * ElasticsearchMultiSearch multiSearch = new ElasticsearchMultiSearch(highLevelClient);
+ * ElasticsearchMultiSearch.Entry&lt;Client&gt; clients = multiSearch.add(clientSearchRepository, pageable, clientQuery);
+ * ElasticsearchMultiSearch.Entry&lt;Order&gt; orders = multiSearch.add(orderSearchRepository, pageable, orderQuery, byStatus);
+ * multiSearch.execute();
+ * Page&lt;Client&gt; page = clients.getPage();
+ * </pre>
+ *
+ * A multi search is not thread safe and can only be executed once.
+ */
+public class ElasticsearchMultiSearch {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // ES refuses the charset parameter on this content type : the body is sent as UTF-8 bytes
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchMultiSearch.class);
+
+    private final RestHighLevelClient highLevelClient;
+
+    private final List<Entry<?>> entries = new ArrayList<>();
+
+    private boolean executed = false;
+
+    /**
+     * @param highLevelClient the ES client
+     */
+    public ElasticsearchMultiSearch(RestHighLevelClient highLevelClient) {
+        this.highLevelClient = highLevelClient;
+    }
+
+    /**
+     * Adds a search to the multi search
+     * @param repository the repository of the searched documents
+     * @param pageable the requested page (and its sort)
+     * @param query the search query
+     * @param aggregations the aggregations to compute
+     * @param <T> the type of the documents
+     * @return the entry holding the result of the search once executed
+     */
+    public <T> Entry<T> add(AbstractElasticsearchRepository<T, ?> repository, Pageable pageable, QueryBuilder query, AggregationBuilder... aggregations) {
+        Validate.notNull(repository);
+        Validate.notNull(pageable);
+        Validate.notNull(query);
+        Validate.validState(!executed, "The multi search was already executed");
+
+        SearchSourceBuilder source = repository.buildSearchSource(pageable, query);
+        for (AggregationBuilder aggregation : aggregations) {
+            source.aggregation(aggregation);
+        }
+        Entry<T> entry = new Entry<>(repository, pageable, source);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Executes all the searches in a single request
+     * Searches on indices that do not exist are not sent, and return an empty result.
+     */
+    public void execute() {
+        Validate.validState(!executed, "The multi search was already executed");
+        executed = true;
+
+        List<Entry<?>> sent = new ArrayList<>();
+        StringBuilder body = new StringBuilder();
+        try {
+            for (Entry<?> entry : entries) {
+                if (!entry.repository.indexExists()) {
+                    entry.empty();
+                    continue;
+                }
+                Map<String, String> header = new LinkedHashMap<>();
+                header.put("index", entry.repository.getRootIndexName());
+                header.put("type", entry.repository.indexName);
+                body.append(entry.repository.documentMapper.mapToString(header)).append('\n');
+                body.append(Strings.toString(entry.source)).append('\n');
+                sent.add(entry);
+            }
+        } catch (IOException ex) {
+            fail(entries, new RubiksElasticsearchException("Unable to build the Multi Search request", ex));
+            return;
+        }
+
+        if (sent.isEmpty()) {
+            return;
+        }
+
+        Response response = null;
+        try {
+            response = highLevelClient.getLowLevelClient().performRequest(HttpPost.METHOD_NAME, "/_msearch", Collections.emptyMap(),
+                new NByteArrayEntity(body.toString().getBytes(StandardCharsets.UTF_8), NDJSON));
+            try (InputStream content = response.getEntity().getContent()) {
+                parse(content, sent);
+            }
+        } catch (IOException ex) {
+            log.error("Error occured during execution of Multi Search request of {} searches : {}", sent.size(), ex);
+            fail(sent, new RubiksElasticsearchException("An error occured during execution of Multi Search request", ex));
+        } finally {
+            if (response != null) EntityUtils.consumeQuietly(response.getEntity());
+        }
+    }
+
+    private void parse(InputStream content, List<Entry<?>> sent) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected Multi Search response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("responses".equals(field) && token == JsonToken.START_ARRAY) {
+                    int index = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT && index < sent.size()) {
+                        sent.get(index++).parse(parser);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        fail(sent, new RubiksElasticsearchException("No response received for this search"));
+    }
+
+    private static void fail(List<Entry<?>> entries, RuntimeException failure) {
+        entries.stream().filter(entry -> !entry.done).forEach(entry -> entry.fail(failure));
+    }
+
+    /**
+     * A search of the multi search, holding its result (or failure) once executed
+     * @param <T> the type of the documents
+     */
+    public static final class Entry<T> {
+
+        private final AbstractElasticsearchRepository<T, ?> repository;
+        private final Pageable pageable;
+        private final SearchSourceBuilder source;
+        private boolean done = false;
+        private Result<T> result;
+        private RuntimeException failure;
+
+        private Entry(AbstractElasticsearchRepository<T, ?> repository, Pageable pageable, SearchSourceBuilder source) {
+            this.repository = repository;
+            this.pageable = pageable;
+            this.source = source;
+        }
+
+        /**
+         * @return the result of the search (documents and aggregations)
+         * @throws RuntimeException the failure of the search if it failed
+         */
+        public Result<T> getResult() {
+            Validate.validState(done, "The multi search was not executed");
+            if (failure != null) {
+                throw failure;
+            }
+            return result;
+        }
+
+        /**
+         * @return the page of documents found by the search
+         * @throws RuntimeException the failure of the search if it failed
+         */
+        public Page<T> getPage() {
+            return getResult().getHits().getResults();
+        }
+
+        /**
+         * @return true if the search failed
+         */
+        public boolean isFailed() {
+            Validate.validState(done, "The multi search was not executed");
+            return failure != null;
+        }
+
+        /**
+         * @return the failure of the search, null if it succeeded
+         */
+        public RuntimeException getFailure() {
+            return failure;
+        }
+
+        private void parse(JsonParser parser) throws IOException {
+            try {
+                result = SearchResultParser.parse(parser, repository.documentMapper, repository.getIndexedClass(), pageable);
+                done = true;
+            } catch (RubiksElasticsearchException ex) {
+                fail(ex);
+            }
+        }
+
+        private void empty() {
+            result = new Result<>();
+            result.getHits().setResults(new PageImpl<>(Collections.emptyList(), pageable, 0));
+            done = true;
+        }
+
+        private void fail(RuntimeException failure) {
+            this.failure = failure;
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming parser of ES multi get (_mget) responses.
+ *
+ * The _source of each found document is bound directly to the document type.
+ * Documents not found or in error (unavailable shard, missing index) are left out of the result.
+ */
+final class MultiGetResultParser {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiGetResultParser.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private MultiGetResultParser() {
+    }
+
+    /**
+     * @param response the body of the _mget response
+     * @param documentMapper the mapper used to bind the documents
+     * @param documentType the type of the documents
+     * @param <T> the type of the documents
+     * @return the found documents by ID
+     * @throws IOException if the response can't be read
+     */
+    static <T> Map<String, T> parse(InputStream response, DocumentMapper documentMapper, Class<T> documentType) throws IOException {
+
+        Map<String, T> documents = new HashMap<>();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("docs".equals(field)) {
+                    expect(token, JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parseDocument(parser, documentMapper, documentType, documents);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return documents;
+    }
+
+    private static <T> void parseDocument(JsonParser parser, DocumentMapper documentMapper, Class<T> documentType, Map<String, T> documents) throws IOException {
+        String id = null;
+        T source = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "_id":
+                    id = parser.getText();
+                    break;
+                case "_source":
+                    source = documentMapper.mapToObject(parser, documentType);
+                    break;
+                case "error":
+                    log.warn("Unable to get document with id [{}] : {}", id, copy(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (id != null && source != null) {
+            documents.put(id, source);
+        }
+    }
+
+    private static String copy(JsonParser parser) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return writer.toString();
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException(String.format("Unexpected token %s in ES response, expecting %s", token, expected));
+        }
+    }
+}
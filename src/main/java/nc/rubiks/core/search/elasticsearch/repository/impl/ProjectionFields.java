@@ -0,0 +1,47 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the document fields read into a projection class : its (inherited) properties, named as Jackson would
+ * serialize them (@JsonProperty), ignoring static, transient and @JsonIgnore fields.
+ */
+final class ProjectionFields {
+
+    private static final Map<Class, String[]> FIELDS = new ConcurrentHashMap<>();
+
+    private ProjectionFields() {
+    }
+
+    /**
+     * @param projection the projection class
+     * @return the names of the document fields to read
+     */
+    static String[] of(Class<?> projection) {
+        return FIELDS.computeIfAbsent(projection, ProjectionFields::resolve);
+    }
+
+    private static String[] resolve(Class<?> projection) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (Class current = projection; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+                    || field.isSynthetic() || field.isAnnotationPresent(JsonIgnore.class)) {
+                    continue;
+                }
+                JsonProperty property = field.getAnnotation(JsonProperty.class);
+                fields.add(property != null && StringUtils.isNotEmpty(property.value()) ? property.value() : field.getName());
+            }
+        }
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,173 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
+import nc.rubiks.core.search.elasticsearch.model.Element;
+import nc.rubiks.core.search.elasticsearch.model.Hits;
+import nc.rubiks.core.search.elasticsearch.model.Result;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming parser of ES search responses.
+ *
+ * The response is read once : the _source of each hit is bound directly to the document type,
+ * and the aggregations are kept as raw JSON, only parsed when accessed.
+ */
+final class SearchResultParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private SearchResultParser() {
+    }
+
+    /**
+     * @param response the body of the search response
+     * @param documentMapper the mapper used to bind the documents
+     * @param documentType the type of the documents
+     * @param pageable the requested page
+     * @param <T> the type of the documents
+     * @return the parsed Result
+     * @throws IOException if the response can't be read
+     */
+    static <T> Result<T> parse(InputStream response, DocumentMapper documentMapper, Class<T> documentType, Pageable pageable) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            return parse(parser, documentMapper, documentType, pageable);
+        }
+    }
+
+    /**
+     * Parses the search response the parser is positioned on (START_OBJECT), leaving the parser on its END_OBJECT
+     * @param parser the parser of the response
+     * @param documentMapper the mapper used to bind the documents
+     * @param documentType the type of the documents
+     * @param pageable the requested page
+     * @param <T> the type of the documents
+     * @return the parsed Result
+     * @throws IOException if the response can't be read
+     * @throws RubiksElasticsearchException if the response is an error (the whole response being read)
+     */
+    static <T> Result<T> parse(JsonParser parser, DocumentMapper documentMapper, Class<T> documentType, Pageable pageable) throws IOException {
+
+        Result<T> result = new Result<>();
+        String error = null;
+
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("hits".equals(field)) {
+                result.setHits(parseHits(parser, documentMapper, documentType));
+            } else if ("aggregations".equals(field)) {
+                byte[] aggregations = copy(parser);
+                result.setLazyAggregations(() -> parseAggregations(aggregations, documentMapper));
+            } else if ("error".equals(field)) {
+                error = new String(copy(parser), StandardCharsets.UTF_8);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (error != null) {
+            throw new RubiksElasticsearchException("ES search failed : " + error);
+        }
+
+        Hits<T> hits = result.getHits();
+        hits.setResults(new PageImpl<>(
+            hits.getRawResults().stream().map(Element::getSource).collect(Collectors.toList()),
+            pageable,
+            hits.getTotal()));
+
+        return result;
+    }
+
+    private static <T> Hits<T> parseHits(JsonParser parser, DocumentMapper documentMapper, Class<T> documentType) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        Hits<T> hits = new Hits<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("total".equals(field)) {
+                hits.setTotal(parser.getLongValue());
+            } else if ("max_score".equals(field)) {
+                hits.setMaxScore(token == JsonToken.VALUE_NULL ? null : parser.getFloatValue());
+            } else if ("hits".equals(field)) {
+                expect(token, JsonToken.START_ARRAY);
+                List<Element<T>> elements = new ArrayList<>();
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    elements.add(parseElement(parser, documentMapper, documentType));
+                }
+                hits.setRawResults(elements);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return hits;
+    }
+
+    private static <T> Element<T> parseElement(JsonParser parser, DocumentMapper documentMapper, Class<T> documentType) throws IOException {
+        Element<T> element = new Element<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "_index":
+                    element.setIndex(parser.getText());
+                    break;
+                case "_type":
+                    element.setType(parser.getText());
+                    break;
+                case "_id":
+                    element.setId(parser.getText());
+                    break;
+                case "_score":
+                    element.setScore(token == JsonToken.VALUE_NULL ? null : parser.getFloatValue());
+                    break;
+                case "_source":
+                    element.setSource(documentMapper.mapToObject(parser, documentType));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return element;
+    }
+
+    private static byte[] copy(JsonParser parser) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parseAggregations(byte[] aggregations, DocumentMapper documentMapper) {
+        try {
+            return documentMapper.mapToObject(new ByteArrayInputStream(aggregations), Map.class);
+        } catch (IOException ex) {
+            throw new RubiksElasticsearchException("Unable to parse the aggregations from ES", ex);
+        }
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException(String.format("Unexpected token %s in ES response, expecting %s", token, expected));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical concurrent calls : while a call is in flight, callers with the same key wait for it
+ * and share its result (or failure) instead of executing it again.
+ *
+ * Calls are grouped (i.e. by index) : once a group is invalidated (i.e. written), new calls no longer join the calls
+ * of this group started before, whose result may be outdated.
+ */
+final class SingleFlight {
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Generation of each group, incremented when the group is invalidated
+     */
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    /**
+     * Executes a call of a group, or waits for the identical call of the same group started since its last invalidation
+     * @param group the group of the call
+     * @param key the key identifying identical calls within the group
+     * @param call the call
+     * @param <V> the type of the result
+     * @return the result of the call
+     */
+    <V> V execute(String group, String key, Supplier<V> call) {
+        return execute(group + '/' + generations.computeIfAbsent(group, k -> new AtomicLong()).get() + '/' + key, call);
+    }
+
+    /**
+     * Invalidates a group : the calls in flight are no longer joined
+     * @param group the group
+     */
+    void invalidate(String group) {
+        generations.computeIfAbsent(group, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Executes a call, or waits for the identical call in flight
+     * @param key the key identifying identical calls
+     * @param call the call
+     * @param <V> the type of the result
+     * @return the result of the call
+     */
+    @SuppressWarnings("unchecked")
+    <V> V execute(String key, Supplier<V> call) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> current = inFlight.putIfAbsent(key, future);
+        if (current != null) {
+            try {
+                return (V) current.join();
+            } catch (CompletionException ex) {
+                throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+            }
+        }
+
+        try {
+            V result = call.get();
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * @return the number of calls in flight
+     */
+    int size() {
+        return inFlight.size();
+    }
+}
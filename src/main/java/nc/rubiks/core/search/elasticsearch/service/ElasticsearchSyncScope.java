@@ -0,0 +1,121 @@
+package nc.rubiks.core.search.elasticsearch.service;
+
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Scope during which no ElasticsearchSyncAction is stored for the given types, for the changes made by the thread that opened it.
+ * Changes made to these types are only recorded (ID ranges and deleted IDs) and
+ * reindexed in bulk when the scope is closed.
+ *
+ * It is meant to be used around bulk database imports, and closed once the import transaction is committed :
+ * <code>
+ *  try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(Client.class, Contract.class)) {
+ *      importService.importClients(file); // @Transactional
+ *  }
+ * </code>
+ */
+public class ElasticsearchSyncScope implements AutoCloseable {
+
+    private final Set<Class> types;
+
+    private final Map<Class, SuspendedChanges> changes = new ConcurrentHashMap<>();
+
+    private final Consumer<ElasticsearchSyncScope> onClose;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    public ElasticsearchSyncScope(Class[] types, Consumer<ElasticsearchSyncScope> onClose) {
+        this.types = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(types)));
+        this.onClose = onClose;
+    }
+
+    /**
+     * @param clazz The entity class
+     * @return true if the synchronisation of this type is suspended by this scope
+     */
+    public boolean covers(Class clazz) {
+        return !closed.get() && types.contains(clazz);
+    }
+
+    /**
+     * Records a change instead of storing an ElasticsearchSyncAction
+     * @param clazz The entity class of the modified object
+     * @param id The entity's Id
+     * @param action The action that would have been stored
+     */
+    public void record(Class clazz, Serializable id, ElasticsearchSyncActionEnum action) {
+        changes.computeIfAbsent(clazz, c -> new SuspendedChanges()).record(id, action);
+    }
+
+    public Set<Class> getTypes() {
+        return types;
+    }
+
+    /**
+     * @return The changes recorded during the scope, by entity class
+     */
+    public Map<Class, SuspendedChanges> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Resumes the synchronisation and reindexes the recorded changes
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.accept(this);
+        }
+    }
+
+    /**
+     * Changes recorded for a given type.
+     * Numeric IDs are only tracked as a range, other IDs are kept one by one.
+     */
+    public static class SuspendedChanges {
+
+        private Long minId;
+        private Long maxId;
+        private final Set<String> ids = new LinkedHashSet<>();
+        private final Set<String> deletedIds = new LinkedHashSet<>();
+
+        synchronized void record(Serializable id, ElasticsearchSyncActionEnum action) {
+            if (action == ElasticsearchSyncActionEnum.DELETE) {
+                deletedIds.add(id.toString());
+            } else if (id instanceof Long || id instanceof Integer || id instanceof Short) {
+                long value = ((Number) id).longValue();
+                minId = minId == null ? value : Math.min(minId, value);
+                maxId = maxId == null ? value : Math.max(maxId, value);
+            } else {
+                ids.add(id.toString());
+            }
+        }
+
+        public synchronized Long getMinId() {
+            return minId;
+        }
+
+        public synchronized Long getMaxId() {
+            return maxId;
+        }
+
+        public synchronized Set<String> getIds() {
+            return new LinkedHashSet<>(ids);
+        }
+
+        public synchronized Set<String> getDeletedIds() {
+            return new LinkedHashSet<>(deletedIds);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package nc.rubiks.core.search.elasticsearch.service;
 
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
 
 import java.io.Serializable;
@@ -22,6 +23,27 @@ public interface ElasticsearchSyncService {
      */
     void addAction(Class clazz, Serializable id, ElasticsearchSyncActionEnum action);
 
+    /**
+     * Adds a new sync action to the database which document will be attached when the transaction completes (snapshot mode),
+     * or which will be handed over to the ElasticsearchDirectIndexer once committed (direct mode).
+     * The action is stored while the entity is flushed, so that it is committed (or rolled back) with the modification.
+     * @param clazz The entity class of the object to sync
+     * @param id The entity's Id of the object to sync
+     * @param action The action to perform (CREATE/UPDATE, or DELETE in direct mode)
+     * @return The stored action, or null if the synchronisation of this type is suspended
+     */
+    ElasticsearchSyncAction addSnapshotAction(Class clazz, Serializable id, ElasticsearchSyncActionEnum action);
+
+    /**
+     * Attaches the document to index to an action stored by addSnapshotAction.
+     * The document is stored compressed and indexed as is by the sync, without reloading the entity.
+     * The action is flushed right away as this method is called while the transaction is completing :
+     * if it fails, the action is left without document and the sync reloads the entity.
+     * @param elasticsearchSyncAction The action stored by addSnapshotAction
+     * @param document The JSON document to index
+     */
+    void attachPayload(ElasticsearchSyncAction elasticsearchSyncAction, String document);
+
     /**
      * Entry point called by the EsSyncJob to process all database's stored ElasticsearchSyncAction
      */
@@ -32,4 +54,14 @@ public interface ElasticsearchSyncService {
      * of tryouts to 0 so that the next Synchronisation job will try them again.
      */
     void reset();
+
+    /**
+     * Suspends the creation of ElasticsearchSyncAction for the given types, for the modifications made by
+     * the current thread only, until the returned scope is closed. Closing the scope reindexes the modified documents in bulk,
+     * the documents that can't be reindexed being stored as ElasticsearchSyncAction.
+     * Modifications made by other threads are synchronized as usual : their changes could only be recorded before being committed.
+     * @param types The entity classes to suspend
+     * @return The scope to close once the modifications are committed
+     */
+    ElasticsearchSyncScope suspendForCurrentThread(Class... types);
 }
@@ -0,0 +1,247 @@
+package nc.rubiks.core.search.elasticsearch.service.impl;
+
+import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
+import nc.rubiks.core.search.elasticsearch.repository.impl.ElasticsearchBulkRepository;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexes the changes of synced entities right after their transaction commits (direct mode).
+ *
+ * The ElasticsearchSyncAction of the changes are stored within their transaction, as in the default mode.
+ * Once committed, the changes are put in a bounded queue, consumed by a single background worker that reloads the documents,
+ * indexes them using bulk requests and then deletes their ElasticsearchSyncAction. Whenever a change can't be indexed directly
+ * (queue full, Elasticsearch error, application shutdown or crash), its ElasticsearchSyncAction is left for the sync job.
+ */
+public class ElasticsearchDirectIndexer implements InitializingBean, DisposableBean {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchDirectIndexer.class);
+
+    private final ElasticsearchSyncServiceImpl elasticsearchSyncService;
+
+    private final RestHighLevelClient highLevelClient;
+
+    private final DocumentMapper documentMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+
+    private final BlockingQueue<Change> queue;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("es-direct-indexer-"));
+
+    /**
+     * @param elasticsearchSyncService the sync service, used to load the documents and to delete the ElasticsearchSyncAction of the indexed ones
+     * @param highLevelClient the ES client
+     * @param documentMapper the mapper used to serialize documents
+     * @param transactionManager the transaction manager used to delete the ElasticsearchSyncAction of the indexed documents
+     * @param properties the direct mode settings
+     */
+    public ElasticsearchDirectIndexer(ElasticsearchSyncServiceImpl elasticsearchSyncService,
+                                      RestHighLevelClient highLevelClient,
+                                      DocumentMapper documentMapper,
+                                      PlatformTransactionManager transactionManager,
+                                      RubiksElasticsearchSyncProperties.Direct properties) {
+        this.elasticsearchSyncService = elasticsearchSyncService;
+        this.highLevelClient = highLevelClient;
+        this.documentMapper = documentMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = properties.getBatchSize();
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        log.info("Starting ElasticsearchDirectIndexer...");
+        executor.execute(this::run);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        log.info("Stopping ElasticsearchDirectIndexer...");
+        executor.shutdownNow();
+        executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // Remaining changes are left to the sync job
+        if (!queue.isEmpty()) {
+            log.info("{} changes not indexed directly will be synchronized by the sync job", queue.size());
+            queue.clear();
+        }
+    }
+
+    /**
+     * Hands over a committed change to be indexed.
+     * If the queue is full, the change is left to the sync job.
+     * @param clazz The entity class of the modified object
+     * @param id The entity's Id
+     * @param action The action to perform (CREATE/UPDATE/DELETE)
+     * @param actionId The id of the ElasticsearchSyncAction stored with the change, deleted once it is indexed
+     */
+    public void offer(Class clazz, Serializable id, ElasticsearchSyncActionEnum action, UUID actionId) {
+        Change change = new Change(clazz, id, action, actionId);
+        if (!queue.offer(change)) {
+            log.warn("ElasticsearchDirectIndexer queue is full, {} will be synchronized by the sync job", change);
+        }
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Change> batch = new ArrayList<>();
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                index(batch);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Indexes a batch of changes using a single bulk request, the last change of a document superseding the previous ones,
+     * then deletes the ElasticsearchSyncAction of the indexed documents
+     * @param changes The changes to index
+     */
+    void index(List<Change> changes) {
+
+        Map<String, Change> coalesced = new LinkedHashMap<>();
+        Map<String, List<UUID>> actionIds = new HashMap<>();
+        changes.forEach(change -> {
+            String key = change.clazz.getName() + '#' + change.id;
+            coalesced.put(key, change);
+            actionIds.computeIfAbsent(key, k -> new ArrayList<>()).add(change.actionId);
+        });
+
+        BulkRequest bulkRequest = new BulkRequest();
+        List<Change> sent = new ArrayList<>();
+        List<ElasticsearchBulkRepository> sentRepositories = new ArrayList<>();
+        List<UUID> indexed = new ArrayList<>();
+        for (Map.Entry<String, Change> entry : coalesced.entrySet()) {
+            Change change = entry.getValue();
+            try {
+                ElasticsearchDocument annotation = (ElasticsearchDocument) change.clazz.getAnnotation(ElasticsearchDocument.class);
+                Class targetType = annotation.documentType() != void.class ? annotation.documentType() : change.clazz;
+                ElasticsearchBulkRepository esr = elasticsearchSyncService.getBulkRepository(targetType, change);
+
+                if (change.action == ElasticsearchSyncActionEnum.DELETE) {
+                    bulkRequest.add(esr.buildDeleteRequest(change.id.toString()));
+                } else {
+                    Object document = elasticsearchSyncService.fetchObjectToSync(change.clazz, change.id.toString(), annotation.namedQuery(), targetType);
+                    if (document == null) {
+                        // Deleted since then, its deletion follows with its own ElasticsearchSyncAction
+                        indexed.addAll(actionIds.get(entry.getKey()));
+                        continue;
+                    }
+                    bulkRequest.add(esr.buildIndexRequest(change.id.toString(), documentMapper.mapToString(document).getBytes(StandardCharsets.UTF_8), document));
+                }
+                sent.add(change);
+                sentRepositories.add(esr);
+            } catch (Exception ex) {
+                log.error("Unable to index {} directly, it will be synchronized by the sync job : {}", change, ex);
+            }
+        }
+
+        if (!sent.isEmpty()) {
+            try {
+                Set<Integer> failed = new HashSet<>();
+                ElasticsearchSyncServiceImpl.forEachFailure(highLevelClient.bulk(bulkRequest), (i, failure) -> {
+                    log.error("Unable to index {} directly, it will be synchronized by the sync job : {}", sent.get(i), failure);
+                    failed.add(i);
+                });
+                for (int i = 0; i < sent.size(); i++) {
+                    if (!failed.contains(i)) {
+                        indexed.addAll(actionIds.get(sent.get(i).clazz.getName() + '#' + sent.get(i).id));
+                    }
+                }
+            } catch (Exception ex) {
+                log.error("Unable to index {} documents directly, they will be synchronized by the sync job : {}", sent.size(), ex);
+            } finally {
+                for (int i = 0; i < sent.size(); i++) {
+                    sentRepositories.get(i).evictDocumentCache(sent.get(i).id.toString());
+                }
+                sentRepositories.stream().distinct().forEach(ElasticsearchBulkRepository::evictSearchCache);
+            }
+        }
+
+        deleteActions(indexed);
+    }
+
+    /**
+     * Deletes the ElasticsearchSyncAction of the indexed documents, in a new transaction
+     * (if it fails, the sync job indexes them again)
+     */
+    private void deleteActions(List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                elasticsearchSyncService.deleteActions(ids);
+                return null;
+            });
+        } catch (Exception ex) {
+            log.error("Unable to delete the {} ElasticsearchSyncAction of the documents indexed directly : {}", ids.size(), ex);
+        }
+    }
+
+    /**
+     * @return The number of changes waiting to be indexed
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    static final class Change {
+
+        private final Class clazz;
+        private final Serializable id;
+        private final ElasticsearchSyncActionEnum action;
+        private final UUID actionId;
+
+        Change(Class clazz, Serializable id, ElasticsearchSyncActionEnum action, UUID actionId) {
+            this.clazz = clazz;
+            this.id = id;
+            this.action = action;
+            this.actionId = actionId;
+        }
+
+        @Override
+        public String toString() {
+            return "Change{" +
+                "clazz=" + clazz +
+                ", id=" + id +
+                ", action=" + action +
+                ", actionId=" + actionId +
+                '}';
+        }
+    }
+}
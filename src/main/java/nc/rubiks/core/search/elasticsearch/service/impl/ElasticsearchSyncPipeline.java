@@ -0,0 +1,435 @@
+package nc.rubiks.core.search.elasticsearch.service.impl;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
+import nc.rubiks.core.search.elasticsearch.repository.impl.ElasticsearchBulkRepository;
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.apache.commons.lang3.Validate;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipelined execution of the synchronization of ElasticsearchSyncAction items.
+ *
+ * Actions are claimed by batches and each batch goes through the following stages :
+ * - load : fetches the entities from the database (unless the action carries a payload)
+ * - convert : converts the entities having a documentType using their EntityToElasticsearchDocumentConverter
+ * - serialize : serializes the documents to JSON bytes (this is where the ElasticsearchSyncThrottle applies)
+ * - send : sends the batch as a single Bulk request to Elasticsearch
+ * - acknowledge : deletes the processed actions and increments the tryouts of the failed ones
+ *
+ * Stages run concurrently in their own threads and are connected by bounded queues : while a batch is being sent,
+ * the next ones are already being loaded and serialized, and a slow stage blocks the previous ones (backpressure).
+ *
+ * The send stage always runs in a single thread and sends batches in the order they were claimed, so that the
+ * last version of a document sent to Elasticsearch is always the one loaded for its most recent action.
+ * Within a batch, actions on the same document are coalesced into a single request.
+ *
+ * The workers of all the stages run in a thread pool created once and reused by each run.
+ */
+class ElasticsearchSyncPipeline {
+
+    private static final SyncBatch END = new SyncBatch(-1, Collections.emptyList());
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSyncPipeline.class);
+
+    private final ElasticsearchSyncServiceImpl elasticsearchSyncService;
+
+    private final ElasticsearchSyncActionRepository elasticsearchSyncActionRepository;
+
+    private final RestHighLevelClient highLevelClient;
+
+    private final DocumentMapper documentMapper;
+
+    private final ElasticsearchSyncThrottle throttle;
+
+    private final RubiksElasticsearchSyncProperties.Pipeline properties;
+
+    private final int workers;
+
+    private final ExecutorService executor;
+
+    ElasticsearchSyncPipeline(ElasticsearchSyncServiceImpl elasticsearchSyncService,
+                              ElasticsearchSyncActionRepository elasticsearchSyncActionRepository,
+                              RestHighLevelClient highLevelClient,
+                              DocumentMapper documentMapper,
+                              ElasticsearchSyncThrottle throttle,
+                              RubiksElasticsearchSyncProperties.Pipeline properties) {
+        this.elasticsearchSyncService = elasticsearchSyncService;
+        this.elasticsearchSyncActionRepository = elasticsearchSyncActionRepository;
+        this.highLevelClient = highLevelClient;
+        this.documentMapper = documentMapper;
+        this.throttle = throttle;
+        this.properties = properties;
+
+        // A batch size or a parallelism of 0 would make the job loop or wait forever while holding its lock
+        Validate.isTrue(properties.getBatchSize() > 0, "The pipeline batchSize must be positive");
+        Validate.isTrue(properties.getQueueCapacity() > 0, "The pipeline queueCapacity must be positive");
+        Validate.isTrue(properties.getLoadParallelism() > 0, "The pipeline loadParallelism must be positive");
+        Validate.isTrue(properties.getConvertParallelism() > 0, "The pipeline convertParallelism must be positive");
+        Validate.isTrue(properties.getSerializeParallelism() > 0, "The pipeline serializeParallelism must be positive");
+        Validate.isTrue(properties.getAcknowledgeParallelism() > 0, "The pipeline acknowledgeParallelism must be positive");
+
+        this.workers = properties.getLoadParallelism() + properties.getConvertParallelism() + properties.getSerializeParallelism()
+            + 1 + properties.getAcknowledgeParallelism();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("es-sync-pipeline-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newFixedThreadPool(workers, threadFactory);
+    }
+
+    /**
+     * Stops the workers of the pipeline, a running sync being interrupted
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs all the given actions through the pipeline and waits for them to be processed
+     * @param actions The actions to synchronize, in the order they must be applied
+     * @return false if the pipeline was interrupted, the remaining actions being then kept for the next run
+     */
+    synchronized boolean run(List<ElasticsearchSyncAction> actions) {
+
+        if (actions.isEmpty()) {
+            return true;
+        }
+
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        BlockingQueue<SyncBatch> toLoad = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        BlockingQueue<SyncBatch> toConvert = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        BlockingQueue<SyncBatch> toSerialize = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        BlockingQueue<SyncBatch> toSend = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        BlockingQueue<SyncBatch> toAcknowledge = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        List<Future<?>> running = new ArrayList<>();
+        CountDownLatch stopped = new CountDownLatch(workers);
+        try {
+            startStage(running, stopped, properties.getLoadParallelism(), toLoad, toConvert, (batch, next) -> {
+                load(batch);
+                next.put(batch);
+            });
+            startStage(running, stopped, properties.getConvertParallelism(), toConvert, toSerialize, (batch, next) -> {
+                convert(batch);
+                next.put(batch);
+            });
+            startStage(running, stopped, properties.getSerializeParallelism(), toSerialize, toSend, (batch, next) -> {
+                serialize(batch, interrupted);
+                next.put(batch);
+            });
+            startStage(running, stopped, 1, toSend, toAcknowledge, new OrderedSendStage());
+            startStage(running, stopped, properties.getAcknowledgeParallelism(), toAcknowledge, null, (batch, next) -> acknowledge(batch));
+
+            claim(actions, toLoad, interrupted);
+            toLoad.put(END);
+
+            stopped.await();
+
+            // Workers stopped by shutdown() leave the remaining actions to the next run as well
+            if (executor.isShutdown()) {
+                interrupted.set(true);
+            }
+        } catch (InterruptedException ex) {
+            interrupted.set(true);
+            running.forEach(worker -> worker.cancel(true));
+        }
+
+        return !interrupted.get();
+    }
+
+    /**
+     * Claim stage (runs in the calling thread) : splits the actions into batches, coalescing the actions made on the same document
+     */
+    private void claim(List<ElasticsearchSyncAction> actions, BlockingQueue<SyncBatch> next, AtomicBoolean interrupted) throws InterruptedException {
+        int sequence = 0;
+        for (int from = 0; from < actions.size() && !interrupted.get(); from += properties.getBatchSize()) {
+            Map<String, SyncItem> items = new LinkedHashMap<>();
+            for (ElasticsearchSyncAction esa : actions.subList(from, Math.min(from + properties.getBatchSize(), actions.size()))) {
+                String key = esa.getObjType() + '#' + esa.getObjId();
+                SyncItem previous = items.remove(key);
+                SyncItem item = new SyncItem(esa);
+                if (previous != null) {
+                    item.superseded.addAll(previous.superseded);
+                    item.superseded.add(previous.action);
+                }
+                resolve(item);
+                items.put(key, item);
+            }
+            log.debug("Claimed batch {} of {} documents", sequence, items.size());
+            next.put(new SyncBatch(sequence++, new ArrayList<>(items.values())));
+        }
+    }
+
+    private void resolve(SyncItem item) {
+        try {
+            item.clazz = Class.forName(item.action.getObjType());
+            ElasticsearchDocument elasticsearchDocumentAnnotation = (ElasticsearchDocument) item.clazz.getAnnotation(ElasticsearchDocument.class);
+            item.namedQuery = elasticsearchDocumentAnnotation.namedQuery();
+            item.targetType = elasticsearchDocumentAnnotation.documentType() != void.class ? elasticsearchDocumentAnnotation.documentType() : item.clazz;
+            item.repository = elasticsearchSyncService.getBulkRepository(item.targetType, item.action);
+        } catch (Exception ex) {
+            item.error = ex;
+        }
+    }
+
+    /**
+     * Load stage : fetches the entities indexed as is
+     */
+    private void load(SyncBatch batch) {
+        for (SyncItem item : batch.items) {
+            if (item.isPending() && item.needsFetch() && item.targetType.equals(item.clazz)) {
+                fetch(item);
+            }
+        }
+    }
+
+    /**
+     * Convert stage : builds the documents of entities having a documentType
+     */
+    private void convert(SyncBatch batch) {
+        for (SyncItem item : batch.items) {
+            if (item.isPending() && item.needsFetch() && !item.targetType.equals(item.clazz)) {
+                fetch(item);
+            }
+        }
+    }
+
+    private void fetch(SyncItem item) {
+        try {
+            item.document = elasticsearchSyncService.fetchObjectToSync(item.clazz, item.action.getObjId(), item.namedQuery, item.targetType);
+            if (item.document == null) {
+                throw new RubiksElasticsearchException(String.format("Unable to find the object to synchronize [%s]", item.action));
+            }
+        } catch (Exception ex) {
+            item.error = ex;
+        }
+    }
+
+    /**
+     * Serialize stage : serializes the documents and waits for the throttle to let them through
+     */
+    private void serialize(SyncBatch batch, AtomicBoolean interrupted) {
+        for (SyncItem item : batch.items) {
+            if (!item.isPending()) {
+                continue;
+            }
+            if (interrupted.get()) {
+                item.skipped = true;
+                continue;
+            }
+            try {
+                if (item.action.getAction() != ElasticsearchSyncActionEnum.DELETE) {
+                    // Documents snapshotted at commit time are sent as is
+                    item.source = item.action.getPayload() != null ?
+                        ElasticsearchSyncServiceImpl.decompress(item.action.getPayload()) :
+                        documentMapper.mapToString(item.document).getBytes(StandardCharsets.UTF_8);
+                }
+                throttle.acquire(item.action.getObjType(), 1, item.source == null ? 0 : item.source.length);
+            } catch (InterruptedException ex) {
+                log.warn("Sync interrupted while throttled, remaining actions will be processed by the next run");
+                interrupted.set(true);
+                item.skipped = true;
+            } catch (Exception ex) {
+                item.error = ex;
+            }
+        }
+    }
+
+    /**
+     * Send stage : sends a batch as a single Bulk request
+     */
+    private void send(SyncBatch batch) {
+        List<SyncItem> sentItems = new ArrayList<>();
+        BulkRequest bulkRequest = new BulkRequest();
+        for (SyncItem item : batch.items) {
+            if (!item.isPending()) {
+                continue;
+            }
+            try {
+                if (item.action.getAction() == ElasticsearchSyncActionEnum.DELETE) {
+                    bulkRequest.add(item.repository.buildDeleteRequest(item.action.getObjId()));
+                } else {
+                    bulkRequest.add(item.repository.buildIndexRequest(item.action.getObjId(), item.source, item.document));
+                }
+                sentItems.add(item);
+            } catch (Exception ex) {
+                item.error = ex;
+            }
+        }
+
+        if (sentItems.isEmpty()) {
+            return;
+        }
+
+        try {
+            log.debug("Sending batch {} of {} documents to ES...", batch.sequence, sentItems.size());
+            ElasticsearchSyncServiceImpl.forEachFailure(highLevelClient.bulk(bulkRequest),
+                (i, failure) -> sentItems.get(i).error = new RubiksElasticsearchException(failure));
+        } catch (Exception ex) {
+            sentItems.forEach(item -> item.error = ex);
+        } finally {
+            sentItems.forEach(item -> item.repository.evictDocumentCache(item.action.getObjId()));
+            sentItems.stream().map(item -> item.repository).distinct().forEach(ElasticsearchBulkRepository::evictSearchCache);
+        }
+    }
+
+    /**
+     * Acknowledge stage : deletes the synchronized actions and increments the tryouts of the failed ones
+     */
+    private void acknowledge(SyncBatch batch) {
+        for (SyncItem item : batch.items) {
+            if (item.skipped) {
+                continue;
+            }
+            List<ElasticsearchSyncAction> actions = new ArrayList<>(item.superseded);
+            actions.add(item.action);
+            try {
+                if (item.error == null) {
+                    actions.forEach(elasticsearchSyncActionRepository::delete);
+                } else {
+                    log.error("Unable to sync object [{}] : {}", item.action, item.error);
+                    for (ElasticsearchSyncAction esa : actions) {
+                        esa.setNbTryouts(esa.getNbTryouts() + 1);
+                        elasticsearchSyncActionRepository.save(esa);
+                    }
+                }
+            } catch (Exception ex) {
+                log.error("Unable to acknowledge the synchronisation of object [{}] : {}", item.action, ex);
+            }
+        }
+    }
+
+    /**
+     * Starts the workers of a stage. Each worker takes batches from the input queue until the END marker is reached,
+     * the last worker to stop forwarding the END marker to the next stage.
+     * @param workers The running workers, to which the workers of this stage are added
+     * @param stopped Counted down by each worker when it stops
+     */
+    private void startStage(List<Future<?>> workers, CountDownLatch stopped, int parallelism,
+                            BlockingQueue<SyncBatch> input, BlockingQueue<SyncBatch> output, Stage stage) {
+        AtomicInteger running = new AtomicInteger(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers.add(executor.submit(() -> {
+                try {
+                    SyncBatch batch;
+                    while ((batch = input.take()) != END) {
+                        try {
+                            stage.process(batch, output);
+                        } catch (RuntimeException ex) {
+                            log.error("Unexpected error in ES sync pipeline : {}", ex);
+                            for (SyncItem item : batch.items) {
+                                if (item.isPending()) item.error = ex;
+                            }
+                            if (output != null) output.put(batch);
+                        }
+                    }
+                    // Let the other workers of this stage stop as well
+                    input.put(END);
+                    if (running.decrementAndGet() == 0 && output != null) {
+                        output.put(END);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    stopped.countDown();
+                }
+            }));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void process(SyncBatch batch, BlockingQueue<SyncBatch> next) throws InterruptedException;
+    }
+
+    /**
+     * Send stage keeping the batches in the order they were claimed, even if they are loaded and serialized concurrently
+     */
+    private class OrderedSendStage implements Stage {
+
+        private final PriorityQueue<SyncBatch> waiting = new PriorityQueue<>(Comparator.comparingInt(b -> b.sequence));
+
+        private int nextSequence = 0;
+
+        @Override
+        public void process(SyncBatch batch, BlockingQueue<SyncBatch> next) throws InterruptedException {
+            waiting.add(batch);
+            while (!waiting.isEmpty() && waiting.peek().sequence == nextSequence) {
+                SyncBatch ready = waiting.poll();
+                try {
+                    send(ready);
+                } catch (RuntimeException ex) {
+                    // The batch fails on its own, the following ones must still be sent
+                    log.error("Unexpected error while sending batch {} to ES : {}", ready.sequence, ex);
+                    for (SyncItem item : ready.items) {
+                        if (item.isPending()) item.error = ex;
+                    }
+                }
+                nextSequence++;
+                next.put(ready);
+            }
+        }
+    }
+
+    private static class SyncBatch {
+
+        private final int sequence;
+        private final List<SyncItem> items;
+
+        private SyncBatch(int sequence, List<SyncItem> items) {
+            this.sequence = sequence;
+            this.items = items;
+        }
+    }
+
+    private static class SyncItem {
+
+        private final ElasticsearchSyncAction action;
+        private final List<ElasticsearchSyncAction> superseded = new ArrayList<>();
+        private Class clazz;
+        private Class targetType;
+        private String namedQuery;
+        private ElasticsearchBulkRepository repository;
+        private Object document;
+        private byte[] source;
+        private Exception error;
+        private boolean skipped;
+
+        private SyncItem(ElasticsearchSyncAction action) {
+            this.action = action;
+        }
+
+        private boolean isPending() {
+            return error == null && !skipped;
+        }
+
+        private boolean needsFetch() {
+            return action.getAction() != ElasticsearchSyncActionEnum.DELETE && action.getPayload() == null;
+        }
+    }
+}
@@ -2,37 +2,78 @@ package nc.rubiks.core.search.elasticsearch.service.impl;
 
 import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
 import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.ElasticsearchBulkRepository;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
+import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncScope;
 import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncService;
 import nc.rubiks.core.search.elasticsearch.service.EntityToElasticsearchDocumentConverter;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncDebouncer;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import nc.rubiks.core.search.elasticsearch.util.DocumentIdAccessor;
 import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.util.StreamUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.NoResultException;
+import javax.persistence.metamodel.EntityType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Service responsible for :
  * - Adding ESSyncAction items to the database (addAction)
  *   Whenever an object that is annotated @ElasticsearchDocument is modified in an Hibernate session,
  *   a new ElasticsearchSyncAction record is created to reflect this change in the linked Elasticsearch document.
+ *   In snapshot mode (addSnapshotAction/attachPayload), the serialized document is attached gzipped to the action
+ *   when the transaction completes and sent as is by the sync, without reloading the entity.
  *
  * - Processing the ESSyncAction items previously stored (sync)
  *   On a regular basis, the sync job is ran through the EsSyncJob class. This job takes all the records
  *   stored in DB ordered by CreatedDate ascending (older first) and execute the related Action (CREATE/UPDATE/DELETE)
  *   in the Elasticsearch index.
+ *   Each action goes through the ElasticsearchSyncThrottle before being sent to Elasticsearch.
+ *   Actions of debounced types are first filtered by the ElasticsearchSyncDebouncer.
+ *
+ *   When the pipeline is enabled, the actions are processed by batches going through the ElasticsearchSyncPipeline instead.
+ *
+ * - Suspending the creation of ESSyncAction items for some types, for the current thread (suspendForCurrentThread)
+ *   Modifications are then only recorded in the returned ElasticsearchSyncScope and the modified documents
+ *   are reindexed in bulk when the scope is closed (the ones that can't be reindexed being stored as ESSyncAction items).
  *
  * @author nicoraynaud
  */
 public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
 
+    private static final int REINDEX_BATCH_SIZE = 500;
+
     private final Logger log = LoggerFactory.getLogger(ElasticsearchSyncServiceImpl.class);
 
     private final ElasticsearchSyncActionRepository elasticsearchSyncActionRepository;
@@ -45,11 +86,56 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
 
     private final int nbTryouts;
 
+    private final ElasticsearchSyncThrottle throttle;
+
+    private final DocumentMapper documentMapper;
+
+    private final ElasticsearchSyncPipeline pipeline;
+
+    private final ElasticsearchSyncDebouncer debouncer;
+
+    private final RestHighLevelClient highLevelClient;
+
+    private final ThreadLocal<Deque<ElasticsearchSyncScope>> threadScopes = ThreadLocal.withInitial(ArrayDeque::new);
+
     public ElasticsearchSyncServiceImpl(ElasticsearchSyncActionRepository elasticsearchSyncActionRepository,
                                         List<ElasticsearchRepository> elasticsearchRepositories,
                                         List<EntityToElasticsearchDocumentConverter> elasticsearchConverters,
                                         EntityManager entityManager,
                                         int nbTryouts) {
+        this(elasticsearchSyncActionRepository, elasticsearchRepositories, elasticsearchConverters, entityManager, nbTryouts,
+            new ElasticsearchSyncThrottle(), null);
+    }
+
+    /**
+     * @param throttle the throttle limiting the sync throughput
+     * @param documentMapper the mapper used to measure the size of documents when a bytes per second limit is set
+     *                       (can be null, bytes limits are then ignored)
+     */
+    public ElasticsearchSyncServiceImpl(ElasticsearchSyncActionRepository elasticsearchSyncActionRepository,
+                                        List<ElasticsearchRepository> elasticsearchRepositories,
+                                        List<EntityToElasticsearchDocumentConverter> elasticsearchConverters,
+                                        EntityManager entityManager,
+                                        int nbTryouts,
+                                        ElasticsearchSyncThrottle throttle,
+                                        DocumentMapper documentMapper) {
+        this(elasticsearchSyncActionRepository, elasticsearchRepositories, elasticsearchConverters, entityManager, nbTryouts,
+            throttle, documentMapper, null, new RubiksElasticsearchSyncProperties());
+    }
+
+    /**
+     * @param highLevelClient the ES client used to send bulk requests when the pipeline is enabled (can be null)
+     * @param syncProperties the advanced sync settings : pipeline (requires a highLevelClient and a documentMapper) and debounce
+     */
+    public ElasticsearchSyncServiceImpl(ElasticsearchSyncActionRepository elasticsearchSyncActionRepository,
+                                        List<ElasticsearchRepository> elasticsearchRepositories,
+                                        List<EntityToElasticsearchDocumentConverter> elasticsearchConverters,
+                                        EntityManager entityManager,
+                                        int nbTryouts,
+                                        ElasticsearchSyncThrottle throttle,
+                                        DocumentMapper documentMapper,
+                                        RestHighLevelClient highLevelClient,
+                                        RubiksElasticsearchSyncProperties syncProperties) {
         log.debug("Initializing ElasticsearchSyncService...");
         this.elasticsearchSyncActionRepository = elasticsearchSyncActionRepository;
         elasticsearchRepositoriesMap = new HashMap<>();
@@ -58,6 +144,28 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
         elasticsearchConverters.forEach(ec -> elasticsearchDtoConvertersMap.put(ec.getEntityType(), ec));
         this.entityManager = entityManager;
         this.nbTryouts = nbTryouts;
+        this.throttle = throttle;
+        this.documentMapper = documentMapper;
+        this.highLevelClient = highLevelClient;
+
+        this.debouncer = new ElasticsearchSyncDebouncer(syncProperties);
+
+        RubiksElasticsearchSyncProperties.Pipeline pipelineProperties = syncProperties.getPipeline();
+        if (pipelineProperties.isEnabled() && (highLevelClient == null || documentMapper == null)) {
+            log.warn("The ES sync pipeline requires a RestHighLevelClient and a DocumentMapper, falling back to the sequential sync");
+        }
+        this.pipeline = pipelineProperties.isEnabled() && highLevelClient != null && documentMapper != null ?
+            new ElasticsearchSyncPipeline(this, elasticsearchSyncActionRepository, highLevelClient, documentMapper, throttle, pipelineProperties) : null;
+    }
+
+    /**
+     * Stops the threads of the sync pipeline, if enabled.
+     * Called by Spring when the context is closed (inferred destroy method).
+     */
+    public void shutdown() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
     }
 
     @Override
@@ -66,21 +174,84 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
             log.debug("Adding action to Sync ES for class [{}], id [{}] and action [{}]", clazz, id, action);
         }
 
+        ElasticsearchSyncScope scope = findSuspendingScope(clazz);
+        if (scope != null) {
+            log.debug("Synchronisation of class [{}] is suspended, recording id [{}] for later reindexation", clazz, id);
+            scope.record(clazz, id, action);
+            return;
+        }
+
+        elasticsearchSyncActionRepository.save(buildAction(clazz, id, action));
+    }
+
+    @Override
+    public ElasticsearchSyncAction addSnapshotAction(Class clazz, Serializable id, ElasticsearchSyncActionEnum action) {
+        if (log.isDebugEnabled()) {
+            log.debug("Adding snapshot action to Sync ES for class [{}], id [{}] and action [{}]", clazz, id, action);
+        }
+
+        ElasticsearchSyncScope scope = findSuspendingScope(clazz);
+        if (scope != null) {
+            log.debug("Synchronisation of class [{}] is suspended, recording id [{}] for later reindexation", clazz, id);
+            scope.record(clazz, id, action);
+            return null;
+        }
+
+        return elasticsearchSyncActionRepository.save(buildAction(clazz, id, action));
+    }
+
+    @Override
+    public void attachPayload(ElasticsearchSyncAction elasticsearchSyncAction, String document) {
+        try {
+            elasticsearchSyncAction.setPayload(compress(document));
+        } catch (IOException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to compress the payload of object [%s]", elasticsearchSyncAction), ex);
+        }
+
+        // This method is called while the transaction is completing : the payload has to be flushed right away
+        elasticsearchSyncActionRepository.saveAndFlush(elasticsearchSyncAction);
+    }
+
+    private static ElasticsearchSyncAction buildAction(Class clazz, Serializable id, ElasticsearchSyncActionEnum action) {
         ElasticsearchSyncAction elasticsearchSyncAction = new ElasticsearchSyncAction();
         elasticsearchSyncAction.setObjType(clazz.getCanonicalName());
         elasticsearchSyncAction.setObjId(id.toString());
         elasticsearchSyncAction.setAction(action);
-
-        elasticsearchSyncActionRepository.save(elasticsearchSyncAction);
+        return elasticsearchSyncAction;
     }
 
     @Override
     public void sync() {
         log.debug("Syncing ES and database...");
 
-        for (ElasticsearchSyncAction esa : elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(this.nbTryouts)) {
+        // Debounced documents modified too recently are kept for a later run
+        List<ElasticsearchSyncAction> actions = debouncer.filter(
+            elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(this.nbTryouts),
+            elasticsearchSyncActionRepository::delete);
+
+        if (pipeline != null) {
+            if (!pipeline.run(actions)) {
+                log.warn("Sync pipeline interrupted, remaining actions will be processed by the next run");
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
+        // Only the newest payload of each document needs to be sent
+        Map<String, ElasticsearchSyncAction> newestPayloads = new HashMap<>();
+        actions.stream()
+            .filter(esa -> esa.getPayload() != null)
+            .forEach(esa -> newestPayloads.put(esa.getObjType() + '#' + esa.getObjId(), esa));
+
+        for (ElasticsearchSyncAction esa : actions) {
             try {
                 log.debug("Syncing : {}", esa);
+                if (esa.getPayload() != null && newestPayloads.get(esa.getObjType() + '#' + esa.getObjId()) != esa) {
+                    log.debug("Skipping outdated payload : {}", esa);
+                    elasticsearchSyncActionRepository.delete(esa);
+                    continue;
+                }
+
                 Class clazz = Class.forName(esa.getObjType());
                 Class targetType = clazz;
 
@@ -91,25 +262,28 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
                     targetType = elasticsearchDocumentAnnotation.documentType();
                 }
 
-                // Case when we don't have the matching ElasticsearchRepository instance to synchronize the object : we skip it
-                if (!elasticsearchRepositoriesMap.containsKey(targetType)) {
-                    throw new RubiksElasticsearchException(
-                        String.format("Unable to find the ElasticsearchRepository<%s>, the object [%s] will not be synchronized.", targetType, esa));
-                }
-
-                ElasticsearchRepository esr = elasticsearchRepositoriesMap.get(targetType);
+                ElasticsearchRepository esr = getElasticsearchRepository(targetType, esa);
 
                 // Otherwise, based on the action, we call the right ElasticsearchRepository method
                 switch (esa.getAction()) {
                     case CREATE:
                     case UPDATE:
+                        if (esa.getPayload() != null && esr instanceof ElasticsearchBulkRepository) {
+                            byte[] source = decompress(esa.getPayload());
+                            throttle.acquire(esa.getObjType(), 1, source.length);
+                            log.debug("Indexing snapshot in ES...");
+                            ((ElasticsearchBulkRepository) esr).indexSource(esa.getObjId(), source);
+                            break;
+                        }
                         Object document = fetchObjectToSync(clazz, esa.getObjId(), elasticsearchDocumentAnnotation.namedQuery(), targetType);
+                        throttle.acquire(esa.getObjType(), 1, measure(esa.getObjType(), document));
                         log.debug("Saving object in ES...");
                         esr.save(document);
                         break;
                     case DELETE:
+                        throttle.acquire(esa.getObjType(), 1, 0);
                         log.debug("Deleting object from ES...");
-                        esr.delete(Long.parseLong(esa.getObjId()));
+                        esr.delete(DocumentIdAccessor.of(clazz).parseId(esa.getObjId()));
                         break;
                 }
 
@@ -117,6 +291,10 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
                 log.debug("Deleting ElasticsearchSyncAction...");
                 elasticsearchSyncActionRepository.delete(esa);
 
+            } catch (InterruptedException ex) {
+                log.warn("Sync interrupted while throttled, remaining actions will be processed by the next run");
+                Thread.currentThread().interrupt();
+                return;
             } catch (Exception ex) {
                 esa.setNbTryouts(esa.getNbTryouts() + 1);
                 elasticsearchSyncActionRepository.save(esa);
@@ -125,6 +303,100 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
         }
     }
 
+    /**
+     * Compresses the JSON document stored in an ElasticsearchSyncAction
+     * @param document The JSON document
+     * @return The gzipped document
+     * @throws IOException When the document cannot be compressed
+     */
+    static byte[] compress(String document) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(document.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param payload The gzipped document stored in an ElasticsearchSyncAction
+     * @return The JSON document bytes
+     * @throws IOException When the payload cannot be decompressed
+     */
+    static byte[] decompress(byte[] payload) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return StreamUtils.copyToByteArray(gzip);
+        }
+    }
+
+    /**
+     * Reports the failed items of a bulk response.
+     * Deleting a document that does not exist, or indexing an outdated version, is not an error.
+     * @param bulkResponse The response of a bulk request
+     * @param onFailure Called with the position of each failed item in the bulk request and its failure message
+     */
+    static void forEachFailure(BulkResponse bulkResponse, BiConsumer<Integer, String> onFailure) {
+        BulkItemResponse[] responses = bulkResponse.getItems();
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i].isFailed() && responses[i].getFailure().getStatus() != RestStatus.NOT_FOUND
+                && responses[i].getFailure().getStatus() != RestStatus.CONFLICT) {
+                onFailure.accept(i, responses[i].getFailureMessage());
+            }
+        }
+    }
+
+    /**
+     * @param targetType The type of document to synchronize
+     * @param change The change being synchronized (used in the error message)
+     * @return The matching ElasticsearchRepository
+     * @throws RubiksElasticsearchException when there is no ElasticsearchRepository for this type : the object can't be synchronized
+     */
+    ElasticsearchRepository getElasticsearchRepository(Class targetType, Object change) {
+        if (!elasticsearchRepositoriesMap.containsKey(targetType)) {
+            throw new RubiksElasticsearchException(
+                String.format("Unable to find the ElasticsearchRepository<%s>, the object [%s] will not be synchronized.", targetType, change));
+        }
+        return elasticsearchRepositoriesMap.get(targetType);
+    }
+
+    /**
+     * @param targetType The type of document to synchronize in bulk
+     * @param change The change being synchronized (used in the error message)
+     * @return The matching ElasticsearchRepository, able to build bulk requests
+     * @throws RubiksElasticsearchException when there is no such repository for this type : the object can't be synchronized in bulk
+     */
+    ElasticsearchBulkRepository getBulkRepository(Class targetType, Object change) {
+        ElasticsearchRepository esr = getElasticsearchRepository(targetType, change);
+        if (!(esr instanceof ElasticsearchBulkRepository)) {
+            throw new RubiksElasticsearchException(
+                String.format("The ElasticsearchRepository<%s> does not extend AbstractElasticsearchRepository, the object [%s] can't be synchronized in bulk.", targetType, change));
+        }
+        return (ElasticsearchBulkRepository) esr;
+    }
+
+    /**
+     * Deletes the ElasticsearchSyncAction processed outside of the sync job (direct mode),
+     * the ones already processed by the sync job being ignored
+     * @param ids The ids of the ElasticsearchSyncAction
+     */
+    void deleteActions(Collection<UUID> ids) {
+        elasticsearchSyncActionRepository.deleteByIds(ids);
+    }
+
+    /**
+     * Computes the size of a document as it will be sent to Elasticsearch,
+     * only when a bytes per second limit applies to its type.
+     * @param objType The synced type
+     * @param document The document about to be indexed
+     * @return The size in bytes, or 0 when not needed
+     * @throws IOException When the document cannot be serialized
+     */
+    private long measure(String objType, Object document) throws IOException {
+        if (documentMapper == null || !throttle.isBytesLimited(objType)) {
+            return 0;
+        }
+        return documentMapper.mapToString(document).getBytes(StandardCharsets.UTF_8).length;
+    }
+
     /**
      * Method that returns the object to synchronize in Elasticsearch based on the
      * properties saved in the ElasticsearchSyncAction object.
@@ -141,7 +413,7 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
      * @return The object to store in Elasticsearch
      */
     @SuppressWarnings("unchecked")
-    private Object fetchObjectToSync(Class clazz, String id, String namedQuery, Class documentType) {
+    Object fetchObjectToSync(Class clazz, String id, String namedQuery, Class documentType) {
         log.debug("Fetching object to synchronize from database with class [{}] and id [{}]...", clazz, id);
 
         // In case there is a target DTO type, fetch the corresponding converter and use it
@@ -153,17 +425,17 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
             return elasticsearchDtoConvertersMap.get(clazz).convert(id);
         } else {
             // Otherwise, simply fetch the record from the database using the entityManager
-            // Note that only Long ids are currently supported
             // If a namedQuery is provided, use it
+            Serializable typedId = DocumentIdAccessor.of(clazz).parseId(id);
             if (StringUtils.isNotEmpty(namedQuery)) {
                 return entityManager
                     .createNamedQuery(namedQuery, clazz)
-                    .setParameter("id", Long.parseLong(id))
+                    .setParameter("id", typedId)
                     .getSingleResult();
             } else {
                 // Otherwise, use the default entityManager method to fetch the entity
                 return entityManager
-                    .find(clazz, Long.parseLong(id));
+                    .find(clazz, typedId);
             }
         }
     }
@@ -172,4 +444,251 @@ public class ElasticsearchSyncServiceImpl implements ElasticsearchSyncService {
     public void reset() {
         entityManager.createNamedQuery("resetTryouts").executeUpdate();
     }
+
+    @Override
+    public ElasticsearchSyncScope suspendForCurrentThread(Class... types) {
+        log.info("Suspending synchronisation of types {} for thread [{}]", types, Thread.currentThread().getName());
+        Deque<ElasticsearchSyncScope> scopes = threadScopes.get();
+        ElasticsearchSyncScope scope = new ElasticsearchSyncScope(types, s -> {
+            scopes.remove(s);
+            resume(s);
+        });
+        scopes.push(scope);
+        return scope;
+    }
+
+    /**
+     * @param clazz The entity class being modified
+     * @return the innermost scope suspending the given class for the current thread, or null if none
+     */
+    private ElasticsearchSyncScope findSuspendingScope(Class clazz) {
+        for (ElasticsearchSyncScope scope : threadScopes.get()) {
+            if (scope.covers(clazz)) {
+                return scope;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reindexes all the changes recorded by a closed scope.
+     * Each type is reindexed independently, so that a failure on one type does not prevent the others from being reindexed.
+     * @param scope The closed scope
+     */
+    private void resume(ElasticsearchSyncScope scope) {
+        log.info("Resuming synchronisation of types {}, reindexing {} modified types...", scope.getTypes(), scope.getChanges().size());
+
+        List<Class> failedTypes = new ArrayList<>();
+        scope.getChanges().forEach((clazz, changes) -> {
+            try {
+                reindex(clazz, changes);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failedTypes.add(clazz);
+            } catch (Exception ex) {
+                log.error("Unable to reindex type [{}] after suspended synchronisation : {}", clazz, ex);
+                failedTypes.add(clazz);
+            }
+        });
+
+        if (!failedTypes.isEmpty()) {
+            throw new RubiksElasticsearchException(
+                String.format("Unable to reindex types %s after suspended synchronisation, they need to be reindexed manually.", failedTypes));
+        }
+    }
+
+    /**
+     * Reindexes the changes recorded for a given type :
+     * - deleted documents are removed, unless their entity still exists (rolled back deletion) in which case they are reindexed
+     * - documents of the recorded ID range are reindexed in bulk, page by page
+     * - documents with non numeric IDs are reindexed in bulk as well, the ones which rows are gone being removed
+     * The documents that can't be fetched are stored as ElasticsearchSyncAction, as is the rest of the ID range when it can't be read.
+     * @param clazz The entity class
+     * @param changes The changes recorded for this class
+     * @throws InterruptedException if interrupted while throttled
+     */
+    private void reindex(Class clazz, ElasticsearchSyncScope.SuspendedChanges changes) throws InterruptedException {
+
+        ElasticsearchDocument elasticsearchDocumentAnnotation = (ElasticsearchDocument) clazz.getAnnotation(ElasticsearchDocument.class);
+        Class targetType = elasticsearchDocumentAnnotation.documentType() != void.class ? elasticsearchDocumentAnnotation.documentType() : clazz;
+        if (!elasticsearchRepositoriesMap.containsKey(targetType)) {
+            throw new RubiksElasticsearchException(
+                String.format("Unable to find the ElasticsearchRepository<%s>, the type [%s] will not be reindexed.", targetType, clazz));
+        }
+        if (!targetType.equals(clazz) && !elasticsearchDtoConvertersMap.containsKey(clazz)) {
+            throw new RubiksElasticsearchException(
+                String.format("Unable to find the EntityToElasticsearchDocumentConverter<%s, %s>, the type will not be reindexed.", clazz.getSimpleName(), targetType.getSimpleName()));
+        }
+        ElasticsearchBulkRepository esr = getBulkRepository(targetType, clazz);
+
+        // The scope is closed as well when the import is rolled back : a document is only deleted if its row is gone
+        Map<String, Object> documents = new LinkedHashMap<>();
+        for (String id : changes.getDeletedIds()) {
+            fetchToReindex(clazz, id, elasticsearchDocumentAnnotation.namedQuery(), targetType, ElasticsearchSyncActionEnum.DELETE, documents);
+            if (documents.size() == REINDEX_BATCH_SIZE) {
+                sendBatch(clazz, esr, documents);
+            }
+        }
+        sendBatch(clazz, esr, documents);
+
+        if (changes.getMinId() != null) {
+            reindexRange(clazz, targetType, esr, changes.getMinId(), changes.getMaxId());
+        }
+
+        for (String id : changes.getIds()) {
+            fetchToReindex(clazz, id, elasticsearchDocumentAnnotation.namedQuery(), targetType, ElasticsearchSyncActionEnum.UPDATE, documents);
+            if (documents.size() == REINDEX_BATCH_SIZE) {
+                sendBatch(clazz, esr, documents);
+            }
+        }
+        sendBatch(clazz, esr, documents);
+    }
+
+    /**
+     * Fetches a recorded document into the batch to reindex, a missing row meaning that the document has to be deleted.
+     * If it can't be fetched, its recorded action is stored as an ElasticsearchSyncAction so that the sync job processes it.
+     */
+    private void fetchToReindex(Class clazz, String id, String namedQuery, Class targetType, ElasticsearchSyncActionEnum action,
+                                Map<String, Object> documents) {
+        try {
+            documents.put(id, fetchObjectToSync(clazz, id, namedQuery, targetType));
+        } catch (NoResultException | EntityNotFoundException ex) {
+            documents.put(id, null);
+        } catch (Exception ex) {
+            log.error("Unable to fetch object [{}] with id [{}] to reindex, storing it for the sync job : {}", clazz, id, ex);
+            addAction(clazz, id, action);
+        }
+    }
+
+    /**
+     * Reindexes all entities of a given type which IDs are in the given range, using a keyset pagination on the ID.
+     * If the range can't be read, an ElasticsearchSyncAction is stored for each ID left so that the sync job processes them.
+     * Note that the namedQuery of the annotation is not used here as it only fetches a single entity.
+     */
+    private void reindexRange(Class clazz, Class targetType, ElasticsearchBulkRepository esr, long minId, long maxId) throws InterruptedException {
+
+        long fromId = minId;
+        try {
+            EntityType entityType = entityManager.getMetamodel().entity(clazz);
+            Class idType = entityType.getIdType().getJavaType();
+            String idAttribute = entityType.getId(idType).getName();
+            boolean converted = !targetType.equals(clazz);
+
+            log.info("Reindexing {} with {} between [{}] and [{}]...", entityType.getName(), idAttribute, minId, maxId);
+
+            String jpql = "select e." + idAttribute + (converted ? "" : ", e") +
+                " from " + entityType.getName() + " e" +
+                " where e." + idAttribute + " between :fromId and :toId" +
+                " order by e." + idAttribute;
+
+            while (fromId <= maxId) {
+                List results = entityManager.createQuery(jpql)
+                    .setParameter("fromId", toIdType(fromId, idType))
+                    .setParameter("toId", toIdType(maxId, idType))
+                    .setMaxResults(REINDEX_BATCH_SIZE)
+                    .getResultList();
+
+                if (results.isEmpty()) {
+                    return;
+                }
+
+                Map<String, Object> documents = new LinkedHashMap<>();
+                Object lastId = null;
+                for (Object result : results) {
+                    if (converted) {
+                        lastId = result;
+                        fetchToReindex(clazz, result.toString(), null, targetType, ElasticsearchSyncActionEnum.UPDATE, documents);
+                    } else {
+                        lastId = ((Object[]) result)[0];
+                        documents.put(lastId.toString(), ((Object[]) result)[1]);
+                    }
+                }
+                sendBatch(clazz, esr, documents);
+                fromId = ((Number) lastId).longValue() + 1;
+            }
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.error("Unable to reindex [{}] between [{}] and [{}], storing them for the sync job : {}", clazz, fromId, maxId, ex);
+            for (long id = fromId; id <= maxId; id++) {
+                addAction(clazz, String.valueOf(id), ElasticsearchSyncActionEnum.UPDATE);
+            }
+        }
+    }
+
+    /**
+     * Sends a batch of reindexed documents as a single Bulk request.
+     * The documents that can't be indexed (or deleted) are stored as ElasticsearchSyncAction so that the sync job processes them,
+     * as are all the documents when no RestHighLevelClient or DocumentMapper is available.
+     * @param clazz The entity class
+     * @param esr The ElasticsearchRepository of the documents
+     * @param documents The documents by ID, a null document meaning that it has to be deleted (cleared once sent)
+     * @throws InterruptedException if interrupted while throttled
+     */
+    private void sendBatch(Class clazz, ElasticsearchBulkRepository esr, Map<String, Object> documents) throws InterruptedException {
+        if (documents.isEmpty()) {
+            return;
+        }
+
+        if (highLevelClient == null || documentMapper == null) {
+            log.warn("Bulk reindexation requires a RestHighLevelClient and a DocumentMapper, {} documents of [{}] will be synchronized by the sync job",
+                documents.size(), clazz);
+            documents.forEach((id, document) -> storeAction(clazz, id, document));
+            documents.clear();
+            return;
+        }
+
+        BulkRequest bulkRequest = new BulkRequest();
+        List<String> sentIds = new ArrayList<>();
+        long bytes = 0;
+        for (Map.Entry<String, Object> document : documents.entrySet()) {
+            try {
+                if (document.getValue() == null) {
+                    bulkRequest.add(esr.buildDeleteRequest(document.getKey()));
+                } else {
+                    byte[] source = documentMapper.mapToString(document.getValue()).getBytes(StandardCharsets.UTF_8);
+                    bytes += source.length;
+                    bulkRequest.add(esr.buildIndexRequest(document.getKey(), source, document.getValue()));
+                }
+                sentIds.add(document.getKey());
+            } catch (Exception ex) {
+                log.error("Unable to reindex object [{}] with id [{}], storing it for the sync job : {}", clazz, document.getKey(), ex);
+                storeAction(clazz, document.getKey(), document.getValue());
+            }
+        }
+
+        if (!sentIds.isEmpty()) {
+            throttle.acquire(clazz.getCanonicalName(), sentIds.size(), bytes);
+            try {
+                forEachFailure(highLevelClient.bulk(bulkRequest), (i, failure) -> {
+                    log.error("Unable to reindex object [{}] with id [{}], storing it for the sync job : {}", clazz, sentIds.get(i), failure);
+                    storeAction(clazz, sentIds.get(i), documents.get(sentIds.get(i)));
+                });
+            } catch (Exception ex) {
+                log.error("Unable to reindex {} objects of [{}], storing them for the sync job : {}", sentIds.size(), clazz, ex);
+                sentIds.forEach(id -> storeAction(clazz, id, documents.get(id)));
+            } finally {
+                sentIds.forEach(esr::evictDocumentCache);
+                esr.evictSearchCache();
+            }
+        }
+        documents.clear();
+    }
+
+    /**
+     * Stores the ElasticsearchSyncAction of a document that could not be reindexed
+     */
+    private void storeAction(Class clazz, String id, Object document) {
+        addAction(clazz, id, document == null ? ElasticsearchSyncActionEnum.DELETE : ElasticsearchSyncActionEnum.UPDATE);
+    }
+
+    private static Object toIdType(long id, Class idType) {
+        if (Integer.class.equals(idType) || int.class.equals(idType)) {
+            return (int) id;
+        }
+        if (Short.class.equals(idType) || short.class.equals(idType)) {
+            return (short) id;
+        }
+        return id;
+    }
 }
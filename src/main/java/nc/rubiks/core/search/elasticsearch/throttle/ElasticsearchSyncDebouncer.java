@@ -0,0 +1,115 @@
+package nc.rubiks.core.search.elasticsearch.throttle;
+
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Debounces the synchronization of frequently modified documents, per synced type.
+ *
+ * The actions of a document are only synced once the document has not been modified for the quiet period,
+ * or when its oldest pending action is older than the max delay. Until then, its actions are kept for a later run.
+ * When synced, only the most recent action of the document is kept, the older ones being superseded.
+ *
+ * Type settings are keyed either by the canonical class name or by the simple class name of the entity.
+ */
+public class ElasticsearchSyncDebouncer {
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSyncDebouncer.class);
+
+    private final Map<String, RubiksElasticsearchSyncProperties.Debounce> types = new HashMap<>();
+
+    private final Clock clock;
+
+    /**
+     * Builds a debouncer from the configuration
+     * @param properties the sync properties
+     */
+    public ElasticsearchSyncDebouncer(RubiksElasticsearchSyncProperties properties) {
+        this(properties, Clock.systemDefaultZone());
+    }
+
+    ElasticsearchSyncDebouncer(RubiksElasticsearchSyncProperties properties, Clock clock) {
+        this.clock = clock;
+        properties.getTypes().forEach((type, typeProperties) -> {
+            if (typeProperties.getDebounce().getQuietPeriodMilliseconds() > 0) {
+                types.put(type, typeProperties.getDebounce());
+            }
+        });
+    }
+
+    /**
+     * Filters the actions to synchronize now
+     * @param actions the pending actions, ordered by creation date
+     * @param superseded called for each action made useless by a more recent action of the same document
+     * @return the actions to synchronize now, in the same order
+     */
+    public List<ElasticsearchSyncAction> filter(List<ElasticsearchSyncAction> actions, Consumer<ElasticsearchSyncAction> superseded) {
+
+        if (types.isEmpty()) {
+            return actions;
+        }
+
+        // Group the actions of debounced types by document
+        Map<String, List<ElasticsearchSyncAction>> documents = new LinkedHashMap<>();
+        for (ElasticsearchSyncAction esa : actions) {
+            if (findDebounce(esa.getObjType()) != null) {
+                documents.computeIfAbsent(esa.getObjType() + '#' + esa.getObjId(), k -> new ArrayList<>()).add(esa);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        Set<ElasticsearchSyncAction> excluded = Collections.newSetFromMap(new IdentityHashMap<>());
+        documents.forEach((document, documentActions) -> {
+            RubiksElasticsearchSyncProperties.Debounce debounce = findDebounce(documentActions.get(0).getObjType());
+            ElasticsearchSyncAction oldest = documentActions.get(0);
+            ElasticsearchSyncAction newest = documentActions.get(documentActions.size() - 1);
+
+            boolean quiet = !newest.getCreatedDate().plus(debounce.getQuietPeriodMilliseconds(), ChronoUnit.MILLIS).isAfter(now);
+            boolean overdue = debounce.getMaxDelayMilliseconds() > 0 &&
+                !oldest.getCreatedDate().plus(debounce.getMaxDelayMilliseconds(), ChronoUnit.MILLIS).isAfter(now);
+
+            if (!quiet && !overdue) {
+                log.debug("Deferring the sync of [{}], modified {} times", document, documentActions.size());
+                excluded.addAll(documentActions);
+                return;
+            }
+
+            for (ElasticsearchSyncAction esa : documentActions.subList(0, documentActions.size() - 1)) {
+                excluded.add(esa);
+                superseded.accept(esa);
+            }
+        });
+
+        List<ElasticsearchSyncAction> result = new ArrayList<>();
+        for (ElasticsearchSyncAction esa : actions) {
+            if (!excluded.contains(esa)) {
+                result.add(esa);
+            }
+        }
+        return result;
+    }
+
+    private RubiksElasticsearchSyncProperties.Debounce findDebounce(String objType) {
+        if (objType == null) {
+            return null;
+        }
+        RubiksElasticsearchSyncProperties.Debounce debounce = types.get(objType);
+        return debounce != null ? debounce : types.get(StringUtils.substringAfterLast(objType, "."));
+    }
+}
@@ -0,0 +1,128 @@
+package nc.rubiks.core.search.elasticsearch.throttle;
+
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the throughput of the synchronization job, in documents and bytes per second,
+ * both globally and per synced type (objType of the ElasticsearchSyncAction).
+ *
+ * Type limits are keyed either by the canonical class name or by the simple class name of the entity.
+ * All limits can be changed at runtime (see ElasticsearchSyncThrottleEndpoint).
+ */
+public class ElasticsearchSyncThrottle {
+
+    private final Logger log = LoggerFactory.getLogger(ElasticsearchSyncThrottle.class);
+
+    private final Limit global;
+
+    private final Map<String, Limit> types = new ConcurrentHashMap<>();
+
+    /**
+     * Builds an unlimited throttle
+     */
+    public ElasticsearchSyncThrottle() {
+        this.global = new Limit(0, 0);
+    }
+
+    /**
+     * Builds a throttle from the configuration
+     * @param properties the sync properties
+     */
+    public ElasticsearchSyncThrottle(RubiksElasticsearchSyncProperties properties) {
+        this.global = new Limit(properties.getThrottle().getDocumentsPerSecond(), properties.getThrottle().getBytesPerSecond());
+        properties.getTypes().forEach((type, typeProperties) ->
+            setTypeLimits(type, typeProperties.getThrottle().getDocumentsPerSecond(), typeProperties.getThrottle().getBytesPerSecond()));
+    }
+
+    /**
+     * Waits until the given amount of documents and bytes can be sent for the given type
+     * @param objType the canonical class name of the synced entity
+     * @param documents the number of documents about to be sent
+     * @param bytes the size of the documents about to be sent (0 if unknown)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(String objType, long documents, long bytes) throws InterruptedException {
+        Limit typeLimit = findTypeLimit(objType);
+        if (typeLimit != null) {
+            typeLimit.acquire(documents, bytes);
+        }
+        global.acquire(documents, bytes);
+    }
+
+    /**
+     * Whether a bytes per second limit applies to the given type
+     * Callers use it to avoid computing the size of documents when not needed.
+     * @param objType the canonical class name of the synced entity
+     * @return true if bytes are limited
+     */
+    public boolean isBytesLimited(String objType) {
+        Limit typeLimit = findTypeLimit(objType);
+        return global.bytes.getRatePerSecond() > 0 || (typeLimit != null && typeLimit.bytes.getRatePerSecond() > 0);
+    }
+
+    public void setGlobalLimits(long documentsPerSecond, long bytesPerSecond) {
+        log.info("Setting global sync throttle to [{}] documents/s and [{}] bytes/s", documentsPerSecond, bytesPerSecond);
+        global.documents.setRatePerSecond(documentsPerSecond);
+        global.bytes.setRatePerSecond(bytesPerSecond);
+    }
+
+    public void setTypeLimits(String type, long documentsPerSecond, long bytesPerSecond) {
+        log.info("Setting sync throttle of type [{}] to [{}] documents/s and [{}] bytes/s", type, documentsPerSecond, bytesPerSecond);
+        Limit limit = types.computeIfAbsent(type, t -> new Limit(documentsPerSecond, bytesPerSecond));
+        limit.documents.setRatePerSecond(documentsPerSecond);
+        limit.bytes.setRatePerSecond(bytesPerSecond);
+    }
+
+    public void removeTypeLimits(String type) {
+        log.info("Removing sync throttle of type [{}]", type);
+        types.remove(type);
+    }
+
+    /**
+     * @return The current limits, the global one being stored under the "global" key
+     */
+    public Map<String, Map<String, Long>> getLimits() {
+        Map<String, Map<String, Long>> limits = new LinkedHashMap<>();
+        limits.put("global", global.toMap());
+        types.forEach((type, limit) -> limits.put(type, limit.toMap()));
+        return limits;
+    }
+
+    private Limit findTypeLimit(String objType) {
+        if (types.isEmpty() || objType == null) {
+            return null;
+        }
+        Limit limit = types.get(objType);
+        return limit != null ? limit : types.get(StringUtils.substringAfterLast(objType, "."));
+    }
+
+    private static class Limit {
+
+        private final TokenBucket documents;
+        private final TokenBucket bytes;
+
+        private Limit(long documentsPerSecond, long bytesPerSecond) {
+            this.documents = new TokenBucket(documentsPerSecond);
+            this.bytes = new TokenBucket(bytesPerSecond);
+        }
+
+        private void acquire(long nbDocuments, long nbBytes) throws InterruptedException {
+            documents.acquire(nbDocuments);
+            bytes.acquire(nbBytes);
+        }
+
+        private Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("documentsPerSecond", documents.getRatePerSecond());
+            map.put("bytesPerSecond", bytes.getRatePerSecond());
+            return map;
+        }
+    }
+}
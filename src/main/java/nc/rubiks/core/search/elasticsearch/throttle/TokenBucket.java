@@ -0,0 +1,81 @@
+package nc.rubiks.core.search.elasticsearch.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Simple token bucket refilled at a fixed rate per second, with a burst capacity of one second.
+ *
+ * Permits are paid after the fact : a caller only waits for the debt left by previous callers,
+ * then takes what it needs (possibly putting the bucket into debt). This allows acquiring more permits
+ * than the bucket capacity (e.g. one big document against a bytes-per-second limit) while keeping
+ * the average rate.
+ *
+ * A rate of 0 (or less) means unlimited. The rate can be changed at any time.
+ */
+public class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier nanoClock;
+
+    private long ratePerSecond;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(long ratePerSecond) {
+        this(ratePerSecond, System::nanoTime);
+    }
+
+    TokenBucket(long ratePerSecond, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes the given number of permits, waiting for the bucket to be out of debt if needed
+     * @param permits the number of permits to take
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire(long permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes the given number of permits without waiting
+     * @param permits the number of permits to take
+     * @return the time (in nanoseconds) the caller must wait before using the permits
+     */
+    synchronized long reserve(long permits) {
+        if (ratePerSecond <= 0 || permits <= 0) {
+            return 0;
+        }
+        refill();
+        long waitNanos = tokens >= 0 ? 0 : (long) (-tokens / ratePerSecond * NANOS_PER_SECOND);
+        tokens -= permits;
+        return waitNanos;
+    }
+
+    public synchronized long getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public synchronized void setRatePerSecond(long ratePerSecond) {
+        refill();
+        this.ratePerSecond = ratePerSecond;
+        this.tokens = ratePerSecond <= 0 ? 0 : Math.min(tokens, ratePerSecond);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        if (ratePerSecond > 0) {
+            tokens = Math.min(ratePerSecond, tokens + (now - lastRefill) / NANOS_PER_SECOND * ratePerSecond);
+        }
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,208 @@
+package nc.rubiks.core.search.elasticsearch.util;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.proxy.HibernateProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.Id;
+import java.io.Serializable;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Reads the ID of documents and entities without reflection.
+ *
+ * The accessor of a class is resolved once, looking up (in the class hierarchy) :
+ * - a method annotated with @Id
+ * - the getter of a field annotated with @Id, or the field itself when there is no getter
+ * - a getId() method
+ * Getters are compiled into a Function using the LambdaMetafactory, fields are read through a MethodHandle.
+ * Hibernate proxies are resolved to their entity class, their ID being read from the proxy without initializing it.
+ */
+public final class DocumentIdAccessor {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentIdAccessor.class);
+
+    private static final Map<Class, DocumentIdAccessor> ACCESSORS = new ConcurrentHashMap<>();
+
+    private final Class<?> idType;
+    private final Function<Object, Object> getter;
+    private final Function<String, Serializable> parser;
+
+    private DocumentIdAccessor(Class<?> idType, Function<Object, Object> getter) {
+        this.idType = ClassUtils.primitiveToWrapper(idType);
+        this.getter = getter;
+        this.parser = buildParser(this.idType);
+    }
+
+    /**
+     * @param clazz The class of the document or entity
+     * @return The ID accessor of this class
+     * @throws RubiksElasticsearchException if the class has no ID
+     */
+    public static DocumentIdAccessor of(Class clazz) {
+        // The fields of a proxy are never set : use the accessor of the proxied entity
+        if (HibernateProxy.class.isAssignableFrom(clazz)) {
+            return of(clazz.getSuperclass());
+        }
+        return ACCESSORS.computeIfAbsent(clazz, DocumentIdAccessor::resolve);
+    }
+
+    /**
+     * @param document The document or entity (possibly an Hibernate proxy)
+     * @return Its ID (may be null)
+     */
+    public Object getId(Object document) {
+        if (document instanceof HibernateProxy) {
+            return ((HibernateProxy) document).getHibernateLazyInitializer().getIdentifier();
+        }
+        return getter.apply(document);
+    }
+
+    /**
+     * @return The type of the ID (primitive types being wrapped)
+     */
+    public Class<?> getIdType() {
+        return idType;
+    }
+
+    /**
+     * Converts an ID stored as a String (ElasticsearchSyncAction, ES document ID) to the ID type
+     * @param id The ID as a String
+     * @return The typed ID
+     */
+    public Serializable parseId(String id) {
+        return id == null ? null : parser.apply(id);
+    }
+
+    private static DocumentIdAccessor resolve(Class clazz) {
+
+        for (Class current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Id.class) && method.getParameterCount() == 0) {
+                    return new DocumentIdAccessor(method.getReturnType(), compile(method));
+                }
+            }
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Id.class)) {
+                    Method getter = findGetter(current, field);
+                    return new DocumentIdAccessor(field.getType(), getter != null ? compile(getter) : compile(field));
+                }
+            }
+        }
+
+        try {
+            Method getId = clazz.getMethod("getId");
+            return new DocumentIdAccessor(getId.getReturnType(), compile(getId));
+        } catch (NoSuchMethodException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to find the ID of class %s : no @Id nor getId()", clazz), ex);
+        }
+    }
+
+    private static Method findGetter(Class clazz, Field field) {
+        String suffix = StringUtils.capitalize(field.getName());
+        for (String name : new String[]{"get" + suffix, "is" + suffix}) {
+            try {
+                Method method = clazz.getDeclaredMethod(name);
+                if (method.getReturnType().equals(field.getType())) {
+                    return method;
+                }
+            } catch (NoSuchMethodException ex) {
+                // Try the next name
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compile(Method method) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                MethodHandle handle = lookup.unreflect(method);
+                CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "apply",
+                    MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class),
+                    handle,
+                    handle.type().wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            }
+        } catch (Throwable ex) {
+            // The class is not visible from this class loader : use a MethodHandle instead
+            log.debug("Unable to compile the ID getter {}, using a MethodHandle : {}", method, ex.getMessage());
+        }
+
+        try {
+            method.setAccessible(true);
+            return invoker(lookup.unreflect(method));
+        } catch (IllegalAccessException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to access the ID getter %s", method), ex);
+        }
+    }
+
+    private static Function<Object, Object> compile(Field field) {
+        try {
+            field.setAccessible(true);
+            return invoker(MethodHandles.lookup().unreflectGetter(field));
+        } catch (IllegalAccessException ex) {
+            throw new RubiksElasticsearchException(String.format("Unable to access the ID field %s", field), ex);
+        }
+    }
+
+    private static Function<Object, Object> invoker(MethodHandle handle) {
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return document -> {
+            try {
+                return generic.invokeExact(document);
+            } catch (RuntimeException ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new RubiksElasticsearchException(String.format("Unable to read the ID of %s", document), ex);
+            }
+        };
+    }
+
+    private static Function<String, Serializable> buildParser(Class<?> idType) {
+        if (String.class.equals(idType)) {
+            return id -> id;
+        }
+        if (Long.class.equals(idType)) {
+            return Long::valueOf;
+        }
+        if (Integer.class.equals(idType)) {
+            return Integer::valueOf;
+        }
+        if (Short.class.equals(idType)) {
+            return Short::valueOf;
+        }
+        if (UUID.class.equals(idType)) {
+            return UUID::fromString;
+        }
+        if (BigInteger.class.equals(idType)) {
+            return BigInteger::new;
+        }
+        if (BigDecimal.class.equals(idType)) {
+            return BigDecimal::new;
+        }
+        return id -> {
+            throw new RubiksElasticsearchException(String.format("Unsupported ID type %s, unable to parse [%s]", idType, id));
+        };
+    }
+}
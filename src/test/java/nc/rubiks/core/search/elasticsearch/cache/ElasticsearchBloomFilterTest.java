@@ -0,0 +1,64 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchBloomFilterTest {
+
+    @Test
+    public void test_mightContain_putIds_noFalseNegative() {
+
+        // Given
+        ElasticsearchBloomFilter filter = new ElasticsearchBloomFilter(10000, 0.01);
+
+        // When
+        for (int i = 0; i < 10000; i++) {
+            filter.put(String.valueOf(i));
+        }
+
+        // Then
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain(String.valueOf(i))).isTrue();
+        }
+    }
+
+    @Test
+    public void test_mightContain_missingIds_falsePositiveProbabilityRespected() {
+
+        // Given
+        ElasticsearchBloomFilter filter = new ElasticsearchBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(String.valueOf(i));
+        }
+
+        // When
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(String.valueOf(i))) {
+                falsePositives++;
+            }
+        }
+
+        // Then
+        assertThat(falsePositives).isLessThan(2000);
+        assertThat(filter.getNbHashFunctions()).isEqualTo(7);
+        assertThat(filter.getNbBits()).isGreaterThanOrEqualTo(95851);
+    }
+
+    @Test
+    public void test_mightContain_emptyFilter_false() {
+
+        // Given
+        ElasticsearchBloomFilter filter = new ElasticsearchBloomFilter(100, 0.01);
+
+        // When
+        boolean result = filter.mightContain("1");
+
+        // Then
+        assertThat(result).isFalse();
+    }
+}
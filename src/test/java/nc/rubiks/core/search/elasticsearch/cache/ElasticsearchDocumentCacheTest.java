@@ -0,0 +1,104 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchDocumentCacheTest {
+
+    @Test
+    public void test_get_sameId_readOnce() {
+
+        // Given
+        ElasticsearchDocumentCache cache = new ElasticsearchDocumentCache(10, 0, 60000);
+        AtomicInteger reads = new AtomicInteger();
+
+        // When
+        byte[] first = cache.get("1", id -> new byte[]{(byte) reads.incrementAndGet()});
+        byte[] second = cache.get("1", id -> new byte[]{(byte) reads.incrementAndGet()});
+        byte[] missing = cache.get("2", id -> null);
+
+        // Then
+        assertThat(first).containsExactly(1);
+        assertThat(second).containsExactly(1);
+        assertThat(missing).isNull();
+        assertThat(cache.getStatistics())
+            .containsEntry("hits", 1L)
+            .containsEntry("misses", 2L)
+            .containsEntry("size", 1)
+            .containsEntry("bytes", 1L);
+    }
+
+    @Test
+    public void test_put_maxBytes_evictLeastRecentlyUsed() {
+
+        // Given
+        ElasticsearchDocumentCache cache = new ElasticsearchDocumentCache(10, 10, 60000);
+        cache.put("1", new byte[4]);
+        cache.put("2", new byte[4]);
+        cache.get("1", id -> null);
+
+        // When
+        cache.put("3", new byte[4]);
+        cache.put("4", new byte[20]);
+
+        // Then
+        assertThat(cache.get("1", id -> new byte[1])).hasSize(4);
+        assertThat(cache.get("2", id -> new byte[1])).hasSize(1);
+        assertThat(cache.get("4", id -> null)).isNull();
+        assertThat(cache.getStatistics()).containsEntry("evictions", 1L);
+    }
+
+    @Test
+    public void test_put_maxEntries_evictLeastRecentlyUsed() {
+
+        // Given
+        ElasticsearchDocumentCache cache = new ElasticsearchDocumentCache(2, 0, 60000);
+        cache.put("1", new byte[1]);
+        cache.put("2", new byte[1]);
+
+        // When
+        cache.put("3", new byte[1]);
+
+        // Then
+        assertThat(cache.getStatistics()).containsEntry("size", 2).containsEntry("evictions", 1L);
+        assertThat(cache.get("1", id -> null)).isNull();
+    }
+
+    @Test
+    public void test_get_expired_readAgain() throws InterruptedException {
+
+        // Given
+        ElasticsearchDocumentCache cache = new ElasticsearchDocumentCache(10, 0, 50);
+        cache.put("1", new byte[]{1});
+
+        // When
+        Thread.sleep(100);
+        byte[] result = cache.get("1", id -> new byte[]{2});
+
+        // Then
+        assertThat(result).containsExactly(2);
+    }
+
+    @Test
+    public void test_get_writtenDuringRead_readNotCached() {
+
+        // Given
+        ElasticsearchDocumentCache cache = new ElasticsearchDocumentCache(10, 0, 60000);
+
+        // When
+        byte[] stale = cache.get("1", id -> {
+            cache.invalidate("1");
+            return new byte[]{1};
+        });
+
+        // Then
+        assertThat(stale).containsExactly(1);
+        assertThat(cache.get("1", id -> new byte[]{2})).containsExactly(2);
+    }
+}
@@ -0,0 +1,129 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSearchCacheTest {
+
+    @Test
+    public void test_get_sameRequest_searchOnce() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000);
+        AtomicInteger searches = new AtomicInteger();
+
+        // When
+        String first = cache.get("index", "query", () -> "result" + searches.incrementAndGet());
+        String second = cache.get("index", "query", () -> "result" + searches.incrementAndGet());
+        String other = cache.get("other", "query", () -> "result" + searches.incrementAndGet());
+
+        // Then
+        assertThat(first).isEqualTo("result1");
+        assertThat(second).isEqualTo("result1");
+        assertThat(other).isEqualTo("result2");
+        assertThat(cache.getStatistics())
+            .containsEntry("hits", 1L)
+            .containsEntry("misses", 2L)
+            .containsEntry("size", 2)
+            .containsEntry("maxSize", 10)
+            .containsEntry("ttlMilliseconds", 60000L);
+    }
+
+    @Test
+    public void test_get_full_evictLeastRecentlyUsed() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(2, 60000);
+        cache.get("index", "a", () -> "a");
+        cache.get("index", "b", () -> "b");
+        cache.get("index", "a", () -> "a2");
+
+        // When
+        cache.get("index", "c", () -> "c");
+
+        // Then
+        assertThat(cache.get("index", "a", () -> "a3")).isEqualTo("a");
+        assertThat(cache.get("index", "b", () -> "b2")).isEqualTo("b2");
+        assertThat(cache.getStatistics()).containsEntry("evictions", 2L).containsEntry("size", 2);
+    }
+
+    @Test
+    public void test_get_expired_searchAgain() throws InterruptedException {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 50);
+        cache.get("index", "query", () -> "result1");
+
+        // When
+        Thread.sleep(100);
+        String result = cache.get("index", "query", () -> "result2");
+
+        // Then
+        assertThat(result).isEqualTo("result2");
+    }
+
+    @Test
+    public void test_invalidate_evictIndexResultsOnly() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000);
+        cache.get("index", "query", () -> "index1");
+        cache.get("other", "query", () -> "other1");
+
+        // When
+        cache.invalidate("index");
+
+        // Then
+        assertThat(cache.get("index", "query", () -> "index2")).isEqualTo("index2");
+        assertThat(cache.get("other", "query", () -> "other2")).isEqualTo("other1");
+        assertThat(cache.getStatistics()).containsEntry("invalidations", 1L);
+    }
+
+    @Test
+    public void test_get_invalidatedDuringSearch_resultNotCached() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000);
+
+        // When
+        String stale = cache.get("index", "query", () -> {
+            cache.invalidate("index");
+            return "stale";
+        });
+
+        // Then
+        assertThat(stale).isEqualTo("stale");
+        assertThat(cache.get("index", "query", () -> "fresh")).isEqualTo("fresh");
+    }
+
+    @Test
+    public void test_get_invalidatedUnrefreshed_notCachedDuringRefreshInterval() throws InterruptedException {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000, 200);
+        cache.get("index", "query", () -> "before");
+        cache.get("other", "query", () -> "other1");
+
+        // When : the write is not visible yet, results read during the refresh interval may miss it
+        cache.invalidate("index", false);
+        String unrefreshed = cache.get("index", "query", () -> "unrefreshed");
+        String refreshed = cache.get("index", "query", () -> "refreshed");
+        Thread.sleep(300);
+        String afterRefresh = cache.get("index", "query", () -> "afterRefresh");
+        String cached = cache.get("index", "query", () -> "cached");
+
+        // Then
+        assertThat(unrefreshed).isEqualTo("unrefreshed");
+        assertThat(refreshed).isEqualTo("refreshed");
+        assertThat(afterRefresh).isEqualTo("afterRefresh");
+        assertThat(cached).isEqualTo("afterRefresh");
+        assertThat(cache.get("other", "query", () -> "other2")).isEqualTo("other1");
+        assertThat(cache.getStatistics()).containsEntry("refreshIntervalMilliseconds", 200L);
+    }
+}
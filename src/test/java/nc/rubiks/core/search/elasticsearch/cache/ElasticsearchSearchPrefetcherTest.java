@@ -0,0 +1,74 @@
+package nc.rubiks.core.search.elasticsearch.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSearchPrefetcherTest {
+
+    @Test
+    public void test_isSequential_followingPages_true() {
+
+        // Given
+        ElasticsearchSearchPrefetcher prefetcher = new ElasticsearchSearchPrefetcher(1, 10);
+
+        try {
+            // When
+            boolean first = prefetcher.isSequential("query", 0);
+            boolean second = prefetcher.isSequential("query", 1);
+            boolean jump = prefetcher.isSequential("query", 5);
+            boolean other = prefetcher.isSequential("other", 6);
+
+            // Then
+            assertThat(first).isFalse();
+            assertThat(second).isTrue();
+            assertThat(jump).isFalse();
+            assertThat(other).isFalse();
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    @Test
+    public void test_prefetch_concurrencyReached_skipped() throws InterruptedException {
+
+        // Given
+        ElasticsearchSearchPrefetcher prefetcher = new ElasticsearchSearchPrefetcher(1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            // When
+            prefetcher.prefetch(10, () -> {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+            prefetcher.prefetch(10, () -> { });
+            prefetcher.prefetch(11, () -> { });
+            release.countDown();
+            done.await(5, TimeUnit.SECONDS);
+
+            // Then
+            long deadline = System.currentTimeMillis() + 5000;
+            while (prefetcher.getStatistics().get("prefetched") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(prefetcher.getStatistics())
+                .containsEntry("prefetched", 1L)
+                .containsEntry("skipped", 2L)
+                .containsEntry("failed", 0L);
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+}
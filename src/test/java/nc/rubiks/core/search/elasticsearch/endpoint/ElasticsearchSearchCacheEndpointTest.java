@@ -0,0 +1,47 @@
+package nc.rubiks.core.search.elasticsearch.endpoint;
+
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSearchCacheEndpointTest {
+
+    @Test
+    public void test_invoke_returnStatistics() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000);
+        cache.get("index", "query", () -> "result");
+        cache.get("index", "query", () -> "result");
+        ElasticsearchSearchCacheEndpoint endpoint = new ElasticsearchSearchCacheEndpoint(cache);
+
+        // When
+        Map<String, Object> result = endpoint.invoke();
+
+        // Then
+        assertThat(result).containsEntry("hits", 1L).containsEntry("misses", 1L).containsEntry("hitRatio", 0.5D);
+        assertThat(endpoint.getId()).isEqualTo("elasticsearch_search_cache");
+        assertThat(endpoint.isSensitive()).isTrue();
+    }
+
+    @Test
+    public void test_clear_emptyCache() {
+
+        // Given
+        ElasticsearchSearchCache cache = new ElasticsearchSearchCache(10, 60000);
+        cache.get("index", "query", () -> "result");
+        ElasticsearchSearchCacheEndpoint endpoint = new ElasticsearchSearchCacheEndpoint(cache);
+
+        // When
+        endpoint.clear();
+
+        // Then
+        assertThat(endpoint.invoke()).containsEntry("size", 0);
+    }
+}
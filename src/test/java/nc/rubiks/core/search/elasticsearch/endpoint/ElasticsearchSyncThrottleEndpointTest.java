@@ -0,0 +1,59 @@
+package nc.rubiks.core.search.elasticsearch.endpoint;
+
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSyncThrottleEndpointTest {
+
+    @Test
+    public void test_invoke_returnConfiguredLimits() {
+
+        // Given
+        RubiksElasticsearchSyncProperties properties = new RubiksElasticsearchSyncProperties();
+        properties.getThrottle().setDocumentsPerSecond(100);
+        RubiksElasticsearchSyncProperties.TypeProperties typeProperties = new RubiksElasticsearchSyncProperties.TypeProperties();
+        typeProperties.getThrottle().setBytesPerSecond(2048);
+        properties.getTypes().put("TheEntity", typeProperties);
+        ElasticsearchSyncThrottleEndpoint endpoint = new ElasticsearchSyncThrottleEndpoint(new ElasticsearchSyncThrottle(properties));
+
+        // When
+        Map<String, Map<String, Long>> result = endpoint.invoke();
+
+        // Then
+        assertThat(result.get("global")).containsEntry("documentsPerSecond", 100L).containsEntry("bytesPerSecond", 0L);
+        assertThat(result.get("TheEntity")).containsEntry("documentsPerSecond", 0L).containsEntry("bytesPerSecond", 2048L);
+        assertThat(endpoint.getId()).isEqualTo("elasticsearch_sync_throttle");
+        assertThat(endpoint.isSensitive()).isTrue();
+    }
+
+    @Test
+    public void test_setLimits_updateThrottle() {
+
+        // Given
+        ElasticsearchSyncThrottle throttle = new ElasticsearchSyncThrottle();
+        ElasticsearchSyncThrottleEndpoint endpoint = new ElasticsearchSyncThrottleEndpoint(throttle);
+
+        // When
+        endpoint.setGlobalLimits(50, 0);
+        endpoint.setTypeLimits("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity", 10, 1024);
+
+        // Then
+        assertThat(throttle.getLimits().get("global")).containsEntry("documentsPerSecond", 50L);
+        assertThat(throttle.isBytesLimited("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity")).isTrue();
+        assertThat(throttle.isBytesLimited("nc.rubiks.core.search.elasticsearch.service.impl.TheEntityWithDto")).isFalse();
+
+        // When
+        endpoint.removeTypeLimits("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+
+        // Then
+        assertThat(throttle.isBytesLimited("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity")).isFalse();
+    }
+}
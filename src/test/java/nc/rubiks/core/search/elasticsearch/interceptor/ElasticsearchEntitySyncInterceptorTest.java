@@ -1,12 +1,19 @@
 package nc.rubiks.core.search.elasticsearch.interceptor;
 
 import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.repository.impl.TestMapper;
 import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncService;
+import nc.rubiks.core.search.elasticsearch.service.impl.ElasticsearchDirectIndexer;
 import nc.rubiks.core.search.elasticsearch.service.impl.TheEntity;
 import nc.rubiks.core.search.elasticsearch.service.impl.TheEntityWithDto;
 import nc.rubiks.core.search.elasticsearch.service.impl.TheEntityWithNamedQuery;
 import org.apache.commons.lang3.reflect.FieldUtils;
+import org.hibernate.Transaction;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -14,6 +21,8 @@ import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
@@ -183,4 +192,180 @@ public class ElasticsearchEntitySyncInterceptorTest {
         verify(elasticsearchSyncService, times(1)).addAction(eq(TheChildEntity2.class), eq(548l), eq(ElasticsearchSyncActionEnum.UPDATE));
         verify(elasticsearchSyncService, times(1)).addAction(eq(TheChildEntity2.class), eq(549l), eq(ElasticsearchSyncActionEnum.UPDATE));
     }
+
+    @Test
+    public void test_onSave_withChildEntityProxyToTrigger_addActionForTheEntityClass() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties);
+
+        // A lazy association : an uninitialized proxy whose fields are not set
+        LazyInitializer lazyInitializer = mock(LazyInitializer.class);
+        when(lazyInitializer.getIdentifier()).thenReturn(547l);
+        when(lazyInitializer.getPersistentClass()).thenReturn(TheChildEntity.class);
+        TheChildEntity proxy = mock(TheChildEntity.class, withSettings().extraInterfaces(HibernateProxy.class));
+        when(((HibernateProxy) proxy).getHibernateLazyInitializer()).thenReturn(lazyInitializer);
+
+        TheEntityWithChildren theEntity = new TheEntityWithChildren();
+        theEntity.setId(546l);
+        theEntity.setTheChildEntity(proxy);
+
+        // When
+        interceptor.onSave(theEntity, 546l, null, null, null);
+
+        // Then
+        verify(elasticsearchSyncService, times(1)).addAction(eq(TheEntityWithChildren.class), eq(546l), eq(ElasticsearchSyncActionEnum.CREATE));
+        verify(elasticsearchSyncService, times(1)).addAction(eq(TheChildEntity.class), eq(547l), eq(ElasticsearchSyncActionEnum.UPDATE));
+        verify(lazyInitializer, never()).initialize();
+    }
+
+    @Test
+    public void test_snapshotEntity_storeActionOnFlushAndAttachDocumentBeforeCompletion() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        ElasticsearchSyncAction stored = new ElasticsearchSyncAction();
+        when(elasticsearchSyncService.addSnapshotAction(TheSnapshotEntity.class, 456l, ElasticsearchSyncActionEnum.CREATE)).thenReturn(stored);
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.of(new TestMapper()), Optional.empty());
+
+        TheSnapshotEntity theEntity = new TheSnapshotEntity();
+        theEntity.setId(456l);
+
+        // When
+        interceptor.afterTransactionBegin(null);
+        interceptor.onSave(theEntity, 456l, null, null, null);
+        theEntity.setProp("updated");
+        interceptor.onFlushDirty(theEntity, 456l, null, null, null, null);
+
+        // Then : a single action is stored with the modification, without document yet
+        verify(elasticsearchSyncService, times(1)).addSnapshotAction(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class));
+        verify(elasticsearchSyncService, never()).addAction(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class));
+        verify(elasticsearchSyncService, never()).attachPayload(any(ElasticsearchSyncAction.class), anyString());
+
+        // When
+        interceptor.beforeTransactionCompletion(null);
+        interceptor.afterTransactionCompletion(null);
+
+        // Then : the latest state is attached to the stored action
+        verify(elasticsearchSyncService, times(1)).attachPayload(stored, "{\"id\":456,\"prop\":\"updated\"}");
+    }
+
+    @Test
+    public void test_snapshotEntity_attachFailure_actionKept() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        ElasticsearchSyncAction stored = new ElasticsearchSyncAction();
+        when(elasticsearchSyncService.addSnapshotAction(TheSnapshotEntity.class, 456l, ElasticsearchSyncActionEnum.UPDATE)).thenReturn(stored);
+        doThrow(new IllegalStateException("DB error")).when(elasticsearchSyncService).attachPayload(any(ElasticsearchSyncAction.class), anyString());
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.of(new TestMapper()), Optional.empty());
+
+        TheSnapshotEntity theEntity = new TheSnapshotEntity();
+        theEntity.setId(456l);
+
+        // When
+        interceptor.afterTransactionBegin(null);
+        interceptor.onFlushDirty(theEntity, 456l, null, null, null, null);
+        interceptor.beforeTransactionCompletion(null);
+        interceptor.afterTransactionCompletion(null);
+
+        // Then : the action stored during the flush is committed, the sync reloads the entity
+        verify(elasticsearchSyncService, times(1)).addSnapshotAction(TheSnapshotEntity.class, 456l, ElasticsearchSyncActionEnum.UPDATE);
+        assertThat(stored.getPayload()).isNull();
+    }
+
+    @Test
+    public void test_snapshotEntity_rollback_attachNothing() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        when(elasticsearchSyncService.addSnapshotAction(TheSnapshotEntity.class, 456l, ElasticsearchSyncActionEnum.UPDATE)).thenReturn(new ElasticsearchSyncAction());
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.of(new TestMapper()), Optional.empty());
+
+        TheSnapshotEntity theEntity = new TheSnapshotEntity();
+        theEntity.setId(456l);
+
+        // When
+        interceptor.afterTransactionBegin(null);
+        interceptor.onFlushDirty(theEntity, 456l, null, null, null, null);
+        interceptor.afterTransactionCompletion(null);
+        interceptor.afterTransactionBegin(null);
+        interceptor.beforeTransactionCompletion(null);
+        interceptor.afterTransactionCompletion(null);
+
+        // Then
+        verify(elasticsearchSyncService, never()).attachPayload(any(ElasticsearchSyncAction.class), anyString());
+    }
+
+    @Test
+    public void test_directMode_offerChangesAfterCommit() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        ElasticsearchSyncAction created = new ElasticsearchSyncAction();
+        created.setId(UUID.randomUUID());
+        ElasticsearchSyncAction updated = new ElasticsearchSyncAction();
+        updated.setId(UUID.randomUUID());
+        when(elasticsearchSyncService.addSnapshotAction(TheEntity.class, 456l, ElasticsearchSyncActionEnum.CREATE)).thenReturn(created);
+        when(elasticsearchSyncService.addSnapshotAction(TheEntity.class, 456l, ElasticsearchSyncActionEnum.UPDATE)).thenReturn(updated);
+        ElasticsearchDirectIndexer elasticsearchDirectIndexer = mock(ElasticsearchDirectIndexer.class);
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.empty(), Optional.of(elasticsearchDirectIndexer));
+        Transaction tx = mock(Transaction.class);
+        when(tx.getStatus()).thenReturn(TransactionStatus.COMMITTED);
+
+        TheEntity theEntity = new TheEntity();
+        theEntity.setId(456l);
+
+        // When
+        interceptor.afterTransactionBegin(tx);
+        interceptor.onSave(theEntity, 456l, null, null, null);
+        interceptor.onFlushDirty(theEntity, 456l, null, null, null, null);
+        interceptor.beforeTransactionCompletion(tx);
+
+        // Then : the actions are stored with the modifications, nothing is handed over before the commit
+        verify(elasticsearchSyncService, times(2)).addSnapshotAction(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class));
+        verify(elasticsearchDirectIndexer, never()).offer(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class), any(UUID.class));
+
+        // When
+        interceptor.afterTransactionCompletion(tx);
+
+        // Then
+        verify(elasticsearchDirectIndexer, times(1)).offer(TheEntity.class, 456l, ElasticsearchSyncActionEnum.CREATE, created.getId());
+        verify(elasticsearchDirectIndexer, times(1)).offer(TheEntity.class, 456l, ElasticsearchSyncActionEnum.UPDATE, updated.getId());
+        verify(elasticsearchSyncService, never()).addAction(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class));
+        verify(elasticsearchSyncService, never()).attachPayload(any(ElasticsearchSyncAction.class), anyString());
+    }
+
+    @Test
+    public void test_directMode_rollback_offerNothing() {
+
+        // Given
+        ElasticsearchSyncService elasticsearchSyncService = mock(ElasticsearchSyncService.class);
+        ElasticsearchSyncAction deleted = new ElasticsearchSyncAction();
+        deleted.setId(UUID.randomUUID());
+        when(elasticsearchSyncService.addSnapshotAction(TheEntity.class, 456l, ElasticsearchSyncActionEnum.DELETE)).thenReturn(deleted);
+        ElasticsearchDirectIndexer elasticsearchDirectIndexer = mock(ElasticsearchDirectIndexer.class);
+        ElasticsearchEntitySyncInterceptor interceptor = new ElasticsearchEntitySyncInterceptor();
+        interceptor.init(elasticsearchSyncService, rubiksElasticsearchProperties, Optional.empty(), Optional.of(elasticsearchDirectIndexer));
+        Transaction tx = mock(Transaction.class);
+        when(tx.getStatus()).thenReturn(TransactionStatus.ROLLED_BACK);
+
+        TheEntity theEntity = new TheEntity();
+        theEntity.setId(456l);
+
+        // When
+        interceptor.afterTransactionBegin(tx);
+        interceptor.onDelete(theEntity, 456l, null, null, null);
+        interceptor.afterTransactionCompletion(tx);
+
+        // Then : the stored action is rolled back with the modification
+        verify(elasticsearchDirectIndexer, never()).offer(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class), any(UUID.class));
+        verify(elasticsearchSyncService, never()).addAction(any(Class.class), any(Long.class), any(ElasticsearchSyncActionEnum.class));
+    }
 }
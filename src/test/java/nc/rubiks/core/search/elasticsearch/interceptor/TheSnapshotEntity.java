@@ -0,0 +1,27 @@
+package nc.rubiks.core.search.elasticsearch.interceptor;
+
+import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+
+@ElasticsearchDocument(synced = true, snapshot = true)
+public class TheSnapshotEntity {
+
+    private Long id;
+
+    private String prop;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getProp() {
+        return prop;
+    }
+
+    public void setProp(String prop) {
+        this.prop = prop;
+    }
+}
@@ -1,5 +1,6 @@
 package nc.rubiks.core.search.elasticsearch.listener;
 
+import nc.rubiks.core.search.elasticsearch.model.CursorPage;
 import nc.rubiks.core.search.elasticsearch.model.Result;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
 import org.elasticsearch.action.search.SearchResponse;
@@ -7,9 +8,16 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
+import javax.persistence.EntityManager;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class ElasticsearchRepositoryGeneric implements ElasticsearchRepository {
 
@@ -29,6 +37,31 @@ public class ElasticsearchRepositoryGeneric implements ElasticsearchRepository {
         return null;
     }
 
+    @Override
+    public Page search(Pageable pageable, QueryBuilder query, Class projection) {
+        return null;
+    }
+
+    @Override
+    public Page search(Pageable pageable, QueryBuilder query, Class projection, String[] includes) {
+        return null;
+    }
+
+    @Override
+    public Page searchDocValues(Pageable pageable, QueryBuilder query, Class projection, String... fields) {
+        return null;
+    }
+
+    @Override
+    public Page searchHydrated(Pageable pageable, QueryBuilder query, Class entityClass, EntityManager entityManager) {
+        return null;
+    }
+
+    @Override
+    public Page searchHydrated(Pageable pageable, QueryBuilder query, Class entityClass, Function loader) {
+        return null;
+    }
+
     @Override
     public SearchResponse search(Pageable pageable, QueryBuilder query, AggregationBuilder aggregation) {
         return null;
@@ -49,6 +82,11 @@ public class ElasticsearchRepositoryGeneric implements ElasticsearchRepository {
         return null;
     }
 
+    @Override
+    public Object findOne(Serializable serializable, Class projection) {
+        return null;
+    }
+
     @Override
     public boolean exists(Serializable serializable) {
         return false;
@@ -93,4 +131,59 @@ public class ElasticsearchRepositoryGeneric implements ElasticsearchRepository {
     public Object save(Object entity) {
         return null;
     }
+
+    @Override
+    public CompletableFuture searchAsync(Pageable pageable, QueryBuilder query) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture findOneAsync(Serializable id) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture saveAsync(Object entity) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Serializable id) {
+        return null;
+    }
+
+    @Override
+    public CompletableFuture<Long> countAsync() {
+        return null;
+    }
+
+    @Override
+    public Stream stream(QueryBuilder query, int batchSize) {
+        return null;
+    }
+
+    @Override
+    public CursorPage searchAfter(QueryBuilder query, Sort sort, int size, String cursor) {
+        return null;
+    }
+
+    @Override
+    public long export(QueryBuilder query, int batchSize, Consumer consumer) {
+        return 0;
+    }
+
+    @Override
+    public long export(QueryBuilder query, int batchSize, int slices, Consumer consumer) {
+        return 0;
+    }
+
+    @Override
+    public List findAll(Iterable ids) {
+        return null;
+    }
+
+    @Override
+    public List findAll(Iterable ids, String[] includes, String[] excludes) {
+        return null;
+    }
 }
@@ -0,0 +1,71 @@
+package nc.rubiks.core.search.elasticsearch.mapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import nc.rubiks.core.search.elasticsearch.repository.impl.TheEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class JacksonDocumentMapperTest {
+
+    private static final String DOCUMENT = "{\"id\":12,\"prop\":\"é\",\"unknown\":true}";
+
+    @Test
+    public void test_mapToObject_fromStream_ignoreUnknownProperties() throws IOException {
+
+        // Given
+        JacksonDocumentMapper mapper = new JacksonDocumentMapper();
+        InputStream source = new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8));
+
+        // When
+        TheEntity entity = mapper.mapToObject(source, TheEntity.class);
+
+        // Then
+        assertThat(entity.getId()).isEqualTo(12L);
+        assertThat(entity.getProp()).isEqualTo("é");
+    }
+
+    @Test
+    public void test_mapToObject_fromStream_defaultImplementationReadsString() throws IOException {
+
+        // Given
+        JacksonDocumentMapper jacksonDocumentMapper = new JacksonDocumentMapper();
+        DocumentMapper mapper = new DocumentMapper() {
+            @Override
+            public String mapToString(Object object) throws IOException {
+                return jacksonDocumentMapper.mapToString(object);
+            }
+
+            @Override
+            public <T> T mapToObject(String source, Class<T> clazz) throws IOException {
+                return jacksonDocumentMapper.mapToObject(source, clazz);
+            }
+
+            @Override
+            public <T> T mapToObject(Map source, Class<T> clazz) throws IOException {
+                return jacksonDocumentMapper.mapToObject(source, clazz);
+            }
+
+            @Override
+            public JsonNode readTree(String inputSource) throws IOException {
+                return jacksonDocumentMapper.readTree(inputSource);
+            }
+        };
+
+        // When
+        TheEntity entity = mapper.mapToObject(new ByteArrayInputStream(DOCUMENT.getBytes(StandardCharsets.UTF_8)), TheEntity.class);
+
+        // Then
+        assertThat(entity.getId()).isEqualTo(12L);
+        assertThat(entity.getProp()).isEqualTo("é");
+    }
+}
@@ -1,13 +1,25 @@
 package nc.rubiks.core.search.elasticsearch.repository.impl;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchDocumentCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchPrefetcher;
 import nc.rubiks.core.search.elasticsearch.config.BaseESTestCase;
+import nc.rubiks.core.search.elasticsearch.model.CursorPage;
 import nc.rubiks.core.search.elasticsearch.model.Result;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,12 +27,40 @@ import org.junit.runners.JUnit4;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
 
 /**
  * Created by 2617ray on 03/05/2017.
@@ -99,6 +139,536 @@ public class AbstractElasticsearchRepositoryTest extends BaseESTestCase {
         assertThat(testElasticsearchRepository.findOne(6669l).getId()).isEqualTo(6669l);
     }
 
+    @Test
+    public void test_save_versioned_ignoreOutdatedVersions() {
+        // Given
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theversionedentity");
+        AbstractElasticsearchRepository<TheVersionedEntity, Long> repository =
+            new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+            };
+
+        // When
+        repository.save(new TheVersionedEntity().id(1L).prop("v2").version(2L));
+        repository.save(new TheVersionedEntity().id(1L).prop("v1").version(1L));
+        repository.save(Arrays.asList(
+            new TheVersionedEntity().id(1L).prop("v0").version(0L),
+            new TheVersionedEntity().id(2L).prop("v1").version(1L)));
+
+        // Then
+        assertThat(repository.findOne(1L).getProp()).isEqualTo("v2");
+        assertThat(repository.findOne(2L).getProp()).isEqualTo("v1");
+    }
+
+    @Test
+    public void test_indexSource_versioned_indexAsIsAndIgnoreOutdatedVersions() {
+        // Given
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theversionedentity");
+        AbstractElasticsearchRepository<TheVersionedEntity, Long> repository =
+            new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+            };
+
+        // When
+        repository.indexSource("1", "{\"id\":1,\"prop\":\"v2\",\"version\":2}".getBytes(StandardCharsets.UTF_8));
+        repository.indexSource("1", "{\"id\":1,\"prop\":\"v1\",\"version\":1}".getBytes(StandardCharsets.UTF_8));
+
+        // Then
+        assertThat(repository.findOne(1L).getProp()).isEqualTo("v2");
+    }
+
+    @Test
+    public void test_buildIndexRequest_versioned_readVersionFromDocument() {
+        // Given
+        AbstractElasticsearchRepository<TheVersionedEntity, Long> repository =
+            new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+            };
+
+        // When
+        IndexRequest indexRequest = repository.buildIndexRequest("1", "{\"id\":1}".getBytes(), new TheVersionedEntity().id(1L).version(9L));
+
+        // Then
+        assertThat(indexRequest.versionType()).isEqualTo(VersionType.EXTERNAL);
+        assertThat(indexRequest.version()).isEqualTo(9L);
+    }
+
+    @Test
+    public void test_buildIndexRequest_versionedWithoutDocument_readVersionFromSource() {
+        // Given
+        AbstractElasticsearchRepository<TheVersionedEntity, Long> repository =
+            new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+            };
+
+        // When
+        IndexRequest indexRequest = repository.buildIndexRequest("1", "{\"id\":1,\"version\":7}".getBytes(), null);
+
+        // Then
+        assertThat(indexRequest.versionType()).isEqualTo(VersionType.EXTERNAL);
+        assertThat(indexRequest.version()).isEqualTo(7L);
+    }
+
+    @Test
+    public void test_buildIndexRequest_versionedWithoutVersion_throwException() {
+        // Given
+        AbstractElasticsearchRepository<TheVersionedEntity, Long> repository =
+            new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+            };
+
+        // When
+        Throwable thrown = catchThrowable(() -> repository.buildIndexRequest("1", "{\"id\":1}".getBytes(), null));
+
+        // Then
+        assertThat(thrown).isInstanceOf(RubiksElasticsearchException.class).hasMessageContaining("has no version");
+    }
+
+    @Test
+    public void test_buildIndexRequest_notVersioned_internalVersion() {
+        // When
+        IndexRequest indexRequest = testElasticsearchRepository.buildIndexRequest("1", "{\"id\":1}".getBytes(), null);
+
+        // Then
+        assertThat(indexRequest.versionType()).isEqualTo(VersionType.INTERNAL);
+    }
+
+    @Test
+    public void test_search_indexDeletedBehindTheCache_returnEmpty() throws Exception {
+        // Given
+        testElasticsearchRepository.save(new TheEntity().id(1L).prop("one"));
+        assertThat(testElasticsearchRepository.count()).isEqualTo(1);
+        highLevelClient.getLowLevelClient().performRequest("DELETE", '/' + template.getRootIndexName("theentity"));
+
+        // When
+        Page<TheEntity> result = testElasticsearchRepository.search(new PageRequest(0, 10), QueryBuilders.matchAllQuery());
+        long count = testElasticsearchRepository.count();
+
+        // Then
+        assertThat(result.getContent()).isEmpty();
+        assertThat(count).isEqualTo(0);
+    }
+
+    @Test
+    public void test_searchAfter_iterateAllPagesWithCursor() {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 25; i++) {
+            entities.add(new TheEntity().id(i).prop(i % 2 == 0 ? "even" : "odd"));
+        }
+        testElasticsearchRepository.save(entities);
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        List<CursorPage<TheEntity>> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<TheEntity> page = testElasticsearchRepository.searchAfter(QueryBuilders.matchAllQuery(), new Sort(Sort.Direction.DESC, "id"), 10, cursor);
+            page.getContent().forEach(e -> ids.add(e.getId()));
+            pages.add(page);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        // Then
+        assertThat(pages).hasSize(3);
+        assertThat(pages.get(0).getTotal()).isEqualTo(25);
+        assertThat(pages.get(2).hasNext()).isFalse();
+        assertThat(ids).hasSize(25).doesNotHaveDuplicates();
+        assertThat(ids.get(0)).isEqualTo(25L);
+        assertThat(ids.get(24)).isEqualTo(1L);
+    }
+
+    @Test
+    public void test_search_beyondCursorOffsetThreshold_followingPagesReadWithSearchAfter() throws Exception {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 25; i++) {
+            entities.add(new TheEntity().id(i).prop("prop"));
+        }
+        testElasticsearchRepository.save(entities);
+        Sort sort = new Sort(Sort.Direction.ASC, "id");
+
+        // When
+        List<Long> ids = new ArrayList<>();
+        SearchSourceBuilder followingSource;
+        SearchSourceBuilder jumpSource;
+        Page<TheEntity> jump;
+        Page<TheEntity> last;
+        template.setCursorOffsetThreshold(10);
+        try {
+            for (int page = 0; page < 4; page++) {
+                ids.addAll(testElasticsearchRepository.search(new PageRequest(page, 5, sort), QueryBuilders.matchAllQuery())
+                    .getContent().stream().map(TheEntity::getId).collect(Collectors.toList()));
+            }
+            followingSource = testElasticsearchRepository.buildPageSource(new PageRequest(4, 5, sort), QueryBuilders.matchAllQuery());
+            jumpSource = testElasticsearchRepository.buildPageSource(new PageRequest(3, 5, new Sort(Sort.Direction.DESC, "id")), QueryBuilders.matchAllQuery());
+            jump = testElasticsearchRepository.search(new PageRequest(3, 5, new Sort(Sort.Direction.DESC, "id")), QueryBuilders.matchAllQuery());
+            last = testElasticsearchRepository.searchAsync(new PageRequest(4, 5, sort), QueryBuilders.matchAllQuery()).get();
+        } finally {
+            template.setCursorOffsetThreshold(0);
+        }
+
+        // Then
+        assertThat(ids).containsExactlyElementsOf(LongStream.rangeClosed(1, 20).boxed().collect(Collectors.toList()));
+        assertThat(followingSource.from()).isEqualTo(0);
+        assertThat(followingSource.searchAfter()).hasSize(1);
+        assertThat(((Number) followingSource.searchAfter()[0]).longValue()).isEqualTo(20L);
+        assertThat(jumpSource.from()).isEqualTo(15);
+        assertThat(jumpSource.searchAfter()).isNull();
+        assertThat(jump.getContent()).extracting(TheEntity::getId).containsExactly(10L, 9L, 8L, 7L, 6L);
+        assertThat(last.getContent()).extracting(TheEntity::getId).containsExactly(21L, 22L, 23L, 24L, 25L);
+        assertThat(last.getTotalElements()).isEqualTo(25);
+    }
+
+    @Test
+    public void test_search_searchCacheEnabled_cachedUntilWrite() throws Exception {
+        // Given
+        indexEntity(1L, "prop");
+        PageRequest pageRequest = new PageRequest(0, 10, new Sort(Sort.Direction.ASC, "id"));
+
+        // When
+        Page<TheEntity> first;
+        Page<TheEntity> cached;
+        Page<TheEntity> afterSave;
+        ElasticsearchSearchCache searchCache = new ElasticsearchSearchCache(10, 60000);
+        template.setSearchCache(searchCache);
+        try {
+            first = testElasticsearchRepository.search(pageRequest, QueryBuilders.matchAllQuery());
+            // Written without the repository : the cache is not invalidated
+            highLevelClient.index(testElasticsearchRepository.buildIndexRequest(new TheEntity().id(2L).prop("prop"))
+                .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+            cached = testElasticsearchRepository.search(pageRequest, QueryBuilders.matchAllQuery());
+            indexEntity(3L, "prop");
+            afterSave = testElasticsearchRepository.search(pageRequest, QueryBuilders.matchAllQuery());
+        } finally {
+            template.setSearchCache(null);
+        }
+
+        // Then
+        assertThat(first.getContent()).extracting(TheEntity::getId).containsExactly(1L);
+        assertThat(cached.getContent()).extracting(TheEntity::getId).containsExactly(1L);
+        assertThat(afterSave.getContent()).extracting(TheEntity::getId).containsExactly(1L, 2L, 3L);
+        assertThat(searchCache.getStatistics()).containsEntry("hits", 1L).containsEntry("misses", 2L);
+    }
+
+    @Test
+    public void test_search_sequentialPages_nextPagePrefetched() throws InterruptedException {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 10; i++) {
+            entities.add(new TheEntity().id(i).prop("prop"));
+        }
+        testElasticsearchRepository.save(entities);
+        ElasticsearchSearchCache searchCache = new ElasticsearchSearchCache(10, 60000);
+        ElasticsearchSearchPrefetcher prefetcher = new ElasticsearchSearchPrefetcher(1, 10);
+
+        // When
+        Page<TheEntity> third;
+        template.setSearchCache(searchCache);
+        template.setSearchPrefetcher(prefetcher);
+        try {
+            testElasticsearchRepository.search(new PageRequest(0, 3, new Sort(Sort.Direction.ASC, "id")), QueryBuilders.matchAllQuery());
+            testElasticsearchRepository.search(new PageRequest(1, 3, new Sort(Sort.Direction.ASC, "id")), QueryBuilders.matchAllQuery());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (prefetcher.getStatistics().get("prefetched") == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            third = testElasticsearchRepository.search(new PageRequest(2, 3, new Sort(Sort.Direction.ASC, "id")), QueryBuilders.matchAllQuery());
+        } finally {
+            template.setSearchCache(null);
+            template.setSearchPrefetcher(null);
+            prefetcher.shutdown();
+        }
+
+        // Then
+        assertThat(third.getContent()).extracting(TheEntity::getId).containsExactly(7L, 8L, 9L);
+        assertThat(searchCache.getStatistics()).containsEntry("hits", 1L);
+    }
+
+    @Test
+    public void test_search_searchSingleFlightEnabled_sameResults() {
+        // Given
+        indexEntity(1L, "prop");
+        indexEntity(2L, "prop");
+        PageRequest pageRequest = new PageRequest(0, 10, new Sort(Sort.Direction.ASC, "id"));
+
+        // When
+        Page<TheEntity> page;
+        template.setSearchSingleFlight(true);
+        try {
+            page = testElasticsearchRepository.search(pageRequest, QueryBuilders.matchAllQuery());
+        } finally {
+            template.setSearchSingleFlight(false);
+        }
+
+        // Then
+        assertThat(page.getContent()).extracting(TheEntity::getId).containsExactly(1L, 2L);
+        assertThat(template.getSingleFlight().size()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_searchAfter_invalidCursor_throwException() {
+        // When
+        testElasticsearchRepository.searchAfter(QueryBuilders.matchAllQuery(), null, 10, "not a cursor");
+    }
+
+    @Test
+    public void test_stream_fetchAllDocumentsByBatch() {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 25; i++) {
+            entities.add(new TheEntity().id(i).prop(i % 2 == 0 ? "even" : "odd"));
+        }
+        testElasticsearchRepository.save(entities);
+
+        // When
+        List<Long> all;
+        List<Long> even;
+        try (Stream<TheEntity> stream = testElasticsearchRepository.stream(QueryBuilders.matchAllQuery(), 10)) {
+            all = stream.map(TheEntity::getId).collect(Collectors.toList());
+        }
+        try (Stream<TheEntity> stream = testElasticsearchRepository.stream(QueryBuilders.termQuery("prop.keyword", "even"), 5)) {
+            even = stream.map(TheEntity::getId).collect(Collectors.toList());
+        }
+
+        // Then
+        assertThat(all).hasSize(25).doesNotHaveDuplicates();
+        assertThat(even).hasSize(12).allMatch(id -> id % 2 == 0);
+    }
+
+    @Test
+    public void test_stream_closedBeforeTheEnd_clearScroll() throws Exception {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 25; i++) {
+            entities.add(new TheEntity().id(i).prop("prop"));
+        }
+        testElasticsearchRepository.save(entities);
+
+        // When
+        List<TheEntity> firsts;
+        try (Stream<TheEntity> stream = testElasticsearchRepository.stream(QueryBuilders.matchAllQuery(), 10)) {
+            firsts = stream.limit(3).collect(Collectors.toList());
+        }
+
+        // Then
+        assertThat(firsts).hasSize(3);
+        Response stats = highLevelClient.getLowLevelClient().performRequest("GET", "/_nodes/stats/indices/search");
+        JsonNode nodes = new TestMapper().readTree(EntityUtils.toString(stats.getEntity())).get("nodes");
+        nodes.forEach(node -> assertThat(node.get("indices").get("search").get("open_contexts").asLong()).isEqualTo(0));
+    }
+
+    @Test
+    public void test_stream_noIndex_returnEmpty() {
+        // When
+        long count = testElasticsearchRepository.stream(QueryBuilders.matchAllQuery(), 10).count();
+
+        // Then
+        assertThat(count).isEqualTo(0);
+    }
+
+    @Test
+    public void test_export_slices_consumeAllDocumentsConcurrently() {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            entities.add(new TheEntity().id(i).prop("prop"));
+        }
+        testElasticsearchRepository.save(entities);
+        Queue<Long> ids = new ConcurrentLinkedQueue<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        // When
+        long exported = testElasticsearchRepository.export(QueryBuilders.matchAllQuery(), 7, 3, e -> {
+            ids.add(e.getId());
+            threads.add(Thread.currentThread().getName());
+        });
+        long exportedByShard = testElasticsearchRepository.export(QueryBuilders.termQuery("id", 7), 10, e -> {});
+
+        // Then
+        assertThat(exported).isEqualTo(50);
+        assertThat(ids).hasSize(50).doesNotHaveDuplicates();
+        assertThat(threads).isNotEmpty().allMatch(name -> name.startsWith("es-export-theentity-"));
+        assertThat(exportedByShard).isEqualTo(1);
+    }
+
+    @Test
+    public void test_export_consumerFailure_stopAndClearScrolls() throws Exception {
+        // Given
+        List<TheEntity> entities = new ArrayList<>();
+        for (long i = 1; i <= 50; i++) {
+            entities.add(new TheEntity().id(i).prop("prop"));
+        }
+        testElasticsearchRepository.save(entities);
+
+        // When
+        Throwable thrown = null;
+        try {
+            testElasticsearchRepository.export(QueryBuilders.matchAllQuery(), 5, 2, e -> {
+                if (e.getId() % 10 == 0) {
+                    throw new IllegalStateException("consumer failure");
+                }
+            });
+        } catch (IllegalStateException ex) {
+            thrown = ex;
+        }
+
+        // Then
+        assertThat(thrown).hasMessage("consumer failure");
+        Response stats = highLevelClient.getLowLevelClient().performRequest("GET", "/_nodes/stats/indices/search");
+        JsonNode nodes = new TestMapper().readTree(EntityUtils.toString(stats.getEntity())).get("nodes");
+        nodes.forEach(node -> assertThat(node.get("indices").get("search").get("open_contexts").asLong()).isEqualTo(0));
+    }
+
+    @Test
+    public void test_findAll_ids_returnDocumentsInOrder() {
+        // Given
+        indexEntity(1l, "one");
+        indexEntity(2l, "two");
+        indexEntity(3l, "three");
+
+        // When
+        List<TheEntity> results;
+        template.setMultiGetChunkSize(2);
+        try {
+            results = testElasticsearchRepository.findAll(Arrays.asList(3l, 4l, 1l, 3l, 2l));
+        } finally {
+            template.setMultiGetChunkSize(1000);
+        }
+
+        // Then
+        assertThat(results).hasSize(5);
+        assertThat(results.get(0).getProp()).isEqualTo("three");
+        assertThat(results.get(1)).isNull();
+        assertThat(results.get(2).getProp()).isEqualTo("one");
+        assertThat(results.get(3).getProp()).isEqualTo("three");
+        assertThat(results.get(4).getProp()).isEqualTo("two");
+    }
+
+    @Test
+    public void test_findAll_sourceFiltering_readOnlyIncludedFields() {
+        // Given
+        indexEntity(1l, "one");
+
+        // When
+        List<TheEntity> included = testElasticsearchRepository.findAll(Collections.singletonList(1l), new String[]{"id"}, null);
+        List<TheEntity> excluded = testElasticsearchRepository.findAll(Collections.singletonList(1l), null, new String[]{"id"});
+
+        // Then
+        assertThat(included.get(0).getId()).isEqualTo(1l);
+        assertThat(included.get(0).getProp()).isNull();
+        assertThat(excluded.get(0).getId()).isNull();
+        assertThat(excluded.get(0).getProp()).isEqualTo("one");
+    }
+
+    @Test
+    public void test_findAll_noIndex_returnNulls() {
+        // When
+        List<TheEntity> results = testElasticsearchRepository.findAll(Arrays.asList(1l, 2l));
+
+        // Then
+        assertThat(results).hasSize(2).containsOnly((TheEntity) null);
+    }
+
+    @Test
+    public void test_search_projection_readOnlyProjectedFields() {
+        // Given
+        indexEntity(1l, "one");
+        indexEntity(2l, "two");
+
+        // When
+        Page<TheEntityProjection> projections = testElasticsearchRepository.search(new PageRequest(0, 10, new Sort(Sort.Direction.ASC, "id")),
+            QueryBuilders.matchAllQuery(), TheEntityProjection.class);
+        Page<TheEntity> ids = testElasticsearchRepository.search(new PageRequest(0, 10, new Sort(Sort.Direction.ASC, "id")),
+            QueryBuilders.matchAllQuery(), TheEntity.class, new String[]{"id"});
+
+        // Then
+        assertThat(projections.getTotalElements()).isEqualTo(2);
+        assertThat(projections.getContent()).extracting(TheEntityProjection::getLabel).containsExactly("one", "two");
+        assertThat(ids.getContent()).extracting(TheEntity::getId).containsExactly(1l, 2l);
+        assertThat(ids.getContent()).extracting(TheEntity::getProp).containsOnly((String) null);
+    }
+
+    @Test
+    public void test_searchDocValues_bindDocValuesWithoutSource() {
+        // Given
+        indexEntity(1l, "one");
+        indexEntity(2l, "two");
+
+        // When
+        Page<TheEntity> results = testElasticsearchRepository.searchDocValues(new PageRequest(0, 10, new Sort(Sort.Direction.DESC, "id")),
+            QueryBuilders.matchAllQuery(), TheEntity.class, "id", "prop.keyword");
+
+        // Then
+        assertThat(results.getTotalElements()).isEqualTo(2);
+        assertThat(results.getContent()).extracting(TheEntity::getId).containsExactly(2l, 1l);
+        assertThat(results.getContent()).extracting(TheEntity::getProp).containsExactly("two", "one");
+    }
+
+    @Test
+    public void test_findOne_projection_readOnlyProjectedFields() {
+        // Given
+        indexEntity(1l, "one");
+
+        // When
+        TheEntityProjection projection = testElasticsearchRepository.findOne(1l, TheEntityProjection.class);
+        TheEntityProjection missing = testElasticsearchRepository.findOne(2l, TheEntityProjection.class);
+
+        // Then
+        assertThat(projection.getLabel()).isEqualTo("one");
+        assertThat(missing).isNull();
+    }
+
+    @Test
+    public void test_searchHydrated_loader_entitiesInHitOrder() {
+        // Given
+        indexEntity(1l, "es");
+        indexEntity(2l, "es");
+        indexEntity(3l, "es");
+        Map<Long, TheEntity> database = new HashMap<>();
+        database.put(1l, new TheEntity().id(1l).prop("db1"));
+        database.put(3l, new TheEntity().id(3l).prop("db3"));
+        List<List<Long>> loads = new ArrayList<>();
+
+        // When
+        Page<TheEntity> page = testElasticsearchRepository.searchHydrated(new PageRequest(0, 10, new Sort(Sort.Direction.DESC, "id")),
+            QueryBuilders.matchAllQuery(), TheEntity.class, (List<Long> ids) -> {
+                loads.add(ids);
+                return ids.stream().map(database::get).filter(Objects::nonNull).collect(Collectors.toList());
+            });
+
+        // Then
+        assertThat(loads).containsExactly(Arrays.asList(3l, 2l, 1l));
+        assertThat(page.getContent()).extracting(TheEntity::getProp).containsExactly("db3", "db1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_searchHydrated_entityManager_loadWithSingleQuery() {
+        // Given
+        indexEntity(1l, "es");
+        indexEntity(2l, "es");
+        EntityManager entityManager = mock(EntityManager.class);
+        Metamodel metamodel = mock(Metamodel.class);
+        EntityType<TheEntity> entityType = mock(EntityType.class);
+        Type idType = mock(Type.class);
+        SingularAttribute idAttribute = mock(SingularAttribute.class);
+        TypedQuery<TheEntity> typedQuery = mock(TypedQuery.class);
+        when(entityManager.getMetamodel()).thenReturn(metamodel);
+        when(metamodel.entity(TheEntity.class)).thenReturn(entityType);
+        when(entityType.getName()).thenReturn("TheEntity");
+        when(entityType.getIdType()).thenReturn(idType);
+        when(idType.getJavaType()).thenReturn(Long.class);
+        when(entityType.getId(Long.class)).thenReturn(idAttribute);
+        when(idAttribute.getName()).thenReturn("id");
+        when(entityManager.createQuery("select e from TheEntity e where e.id in :ids", TheEntity.class)).thenReturn(typedQuery);
+        when(typedQuery.setParameter(eq("ids"), any())).thenReturn(typedQuery);
+        when(typedQuery.getResultList()).thenReturn(Arrays.asList(new TheEntity().id(1l).prop("db1"), new TheEntity().id(2l).prop("db2")));
+
+        // When
+        Page<TheEntity> page = testElasticsearchRepository.searchHydrated(new PageRequest(0, 10, new Sort(Sort.Direction.DESC, "id")),
+            QueryBuilders.matchAllQuery(), TheEntity.class, entityManager);
+
+        // Then
+        verify(typedQuery, times(1)).setParameter("ids", Arrays.asList(2l, 1l));
+        assertThat(page.getContent()).extracting(TheEntity::getProp).containsExactly("db2", "db1");
+    }
+
     @Test
     public void test_save_exception_doNothing() {
         // Given
@@ -139,6 +709,114 @@ public class AbstractElasticsearchRepositoryTest extends BaseESTestCase {
         assertThat(e.getId()).isEqualTo(7777l);
     }
 
+    @Test
+    public void test_findOne_documentCache_readOnceAndWrittenThrough() throws Exception {
+        // Given
+        indexEntity(7779l, "first");
+        ElasticsearchDocumentCache documentCache = new ElasticsearchDocumentCache(10, 0, 60000);
+        testElasticsearchRepository.setDocumentCache(documentCache);
+
+        // When
+        TheEntity first = testElasticsearchRepository.findOne(7779l);
+        // Written without the repository : the cached document is read
+        highLevelClient.index(testElasticsearchRepository.buildIndexRequest(new TheEntity().id(7779l).prop("external"))
+            .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE));
+        TheEntity cached = testElasticsearchRepository.findOne(7779l);
+        indexEntity(7779l, "saved");
+        TheEntity saved = testElasticsearchRepository.findOne(7779l);
+        testElasticsearchRepository.delete(7779l);
+        TheEntity deleted = testElasticsearchRepository.findOne(7779l);
+
+        // Then
+        assertThat(first.getProp()).isEqualTo("first");
+        assertThat(cached.getProp()).isEqualTo("first");
+        assertThat(cached).isNotSameAs(first);
+        assertThat(saved.getProp()).isEqualTo("saved");
+        assertThat(deleted).isNull();
+        assertThat(documentCache.getStatistics()).containsEntry("hits", 2L).containsEntry("misses", 2L);
+    }
+
+    @Test
+    public void test_exists_existsFilterBuilt_missingDocumentsFilteredOut() {
+        // Given
+        indexEntity(1L, "one");
+        indexEntity(2L, "two");
+
+        // When
+        testElasticsearchRepository.buildExistsFilter(1000, 0.001);
+        indexEntity(3L, "three");
+
+        // Then
+        assertThat(testElasticsearchRepository.getExistsFilter()).isNotNull();
+        assertThat(testElasticsearchRepository.exists(1L)).isTrue();
+        assertThat(testElasticsearchRepository.exists(3L)).isTrue();
+        assertThat(testElasticsearchRepository.findOne(2L).getProp()).isEqualTo("two");
+        assertThat(testElasticsearchRepository.exists(5L)).isFalse();
+        assertThat(testElasticsearchRepository.findOne(5L)).isNull();
+    }
+
+    @Test
+    public void test_buildExistsFilter_unrefreshedDocuments_included() throws Exception {
+        // Given : documents indexed by another application, not refreshed yet
+        indexEntity(1L, "one");
+        for (long id = 2; id <= 5; id++) {
+            highLevelClient.index(testElasticsearchRepository.buildIndexRequest(new TheEntity().id(id).prop("unrefreshed"))
+                .setRefreshPolicy(WriteRequest.RefreshPolicy.NONE));
+        }
+
+        // When
+        testElasticsearchRepository.buildExistsFilter(1000, 0.001);
+
+        // Then
+        for (long id = 1; id <= 5; id++) {
+            assertThat(testElasticsearchRepository.getExistsFilter().mightContain(String.valueOf(id))).isTrue();
+        }
+    }
+
+    @Test
+    public void test_async_saveFindSearchCountDelete_completedOnAsyncExecutor() throws Exception {
+        // Given
+        ExecutorService executor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("test-async-"));
+        template.setAsyncExecutor(executor);
+
+        try {
+            // When
+            TheEntity saved = testElasticsearchRepository.saveAsync(new TheEntity().id(1L).prop("async")).get(5, TimeUnit.SECONDS);
+            String thread = testElasticsearchRepository.findOneAsync(1L).thenApply(e -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+            TheEntity found = testElasticsearchRepository.findOneAsync(1L).get(5, TimeUnit.SECONDS);
+            CompletableFuture<Page<TheEntity>> page = testElasticsearchRepository.searchAsync(new PageRequest(0, 10), QueryBuilders.matchQuery("prop", "async"));
+            CompletableFuture<Long> count = testElasticsearchRepository.countAsync();
+            Page<TheEntity> result = page.get(5, TimeUnit.SECONDS);
+            long nbDocuments = count.get(5, TimeUnit.SECONDS);
+            testElasticsearchRepository.deleteAsync(1L).get(5, TimeUnit.SECONDS);
+            TheEntity deleted = testElasticsearchRepository.findOneAsync(1L).get(5, TimeUnit.SECONDS);
+
+            // Then
+            assertThat(saved.getId()).isEqualTo(1L);
+            assertThat(thread).startsWith("test-async-");
+            assertThat(found.getProp()).isEqualTo("async");
+            assertThat(result.getContent()).extracting(TheEntity::getId).containsExactly(1L);
+            assertThat(nbDocuments).isEqualTo(1);
+            assertThat(deleted).isNull();
+        } finally {
+            template.setAsyncExecutor(ForkJoinPool.commonPool());
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_async_indexNotFound_emptyResults() throws Exception {
+        // When
+        Page<TheEntity> page = testElasticsearchRepository.searchAsync(new PageRequest(0, 10), QueryBuilders.matchAllQuery()).get(5, TimeUnit.SECONDS);
+        TheEntity found = testElasticsearchRepository.findOneAsync(1L).get(5, TimeUnit.SECONDS);
+        long count = testElasticsearchRepository.countAsync().get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(page.getContent()).isEmpty();
+        assertThat(found).isNull();
+        assertThat(count).isEqualTo(0);
+    }
+
     @Test
     public void test_exists_true() {
         // Given
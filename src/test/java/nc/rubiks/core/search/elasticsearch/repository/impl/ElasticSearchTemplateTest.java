@@ -1,5 +1,6 @@
 package nc.rubiks.core.search.elasticsearch.repository.impl;
 
+import nc.rubiks.core.search.elasticsearch.cache.ElasticsearchSearchCache;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.message.BasicRequestLine;
 import org.apache.http.message.BasicStatusLine;
@@ -13,6 +14,7 @@ import org.junit.runners.JUnit4;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.eq;
@@ -60,6 +62,19 @@ public class ElasticSearchTemplateTest {
         assertThat(indice).isNull();
     }
 
+    @Test
+    public void test_getNumberOfShards_error_returnOne() throws IOException {
+
+        // Given
+        when(restClient.performRequest(eq("GET"), eq("/_cat/indices/context/root"), anyMap())).thenThrow(new IOException());
+
+        // When
+        int shards = template.getNumberOfShards(restClient, rootIndiceName);
+
+        // Then
+        assertThat(shards).isEqualTo(1);
+    }
+
     @Test
     public void test_deleteAllIndices_IndiceNotFound_doNothing() throws IOException {
 
@@ -110,4 +125,86 @@ public class ElasticSearchTemplateTest {
 
     }
 
+    @Test
+    public void test_indexExists_cached_queryOnce() throws IOException {
+
+        // Given
+        ElasticSearchTemplate cachingTemplate = new ElasticSearchTemplate("context", false, 60000);
+        Response r = mock(Response.class);
+        when(r.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, ""));
+        when(restClient.performRequest(eq("HEAD"), eq("/context/root"), eq(Collections.emptyMap()))).thenReturn(r);
+
+        // When
+        boolean first = cachingTemplate.indexExists(restClient, rootIndiceName, typeName);
+        boolean second = cachingTemplate.indexExists(restClient, rootIndiceName, typeName);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        verify(restClient, times(1)).performRequest(eq("HEAD"), eq("/context/root"), eq(Collections.emptyMap()));
+
+        // When : deleting the index evicts it from the cache
+        cachingTemplate.deleteIndex(restClient, rootIndiceName);
+        cachingTemplate.indexExists(restClient, rootIndiceName, typeName);
+
+        // Then
+        verify(restClient, times(2)).performRequest(eq("HEAD"), eq("/context/root"), eq(Collections.emptyMap()));
+    }
+
+    @Test
+    public void test_indexExists_missing_notCached() throws IOException {
+
+        // Given
+        ElasticSearchTemplate cachingTemplate = new ElasticSearchTemplate("context", false, 60000);
+        Response r = mock(Response.class);
+        when(r.getStatusLine()).thenReturn(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 404, ""));
+        when(restClient.performRequest(eq("HEAD"), eq("/context/root"), eq(Collections.emptyMap()))).thenReturn(r);
+
+        // When
+        cachingTemplate.indexExists(restClient, rootIndiceName, typeName);
+        boolean result = cachingTemplate.indexExists(restClient, rootIndiceName, typeName);
+
+        // Then
+        assertThat(result).isFalse();
+        verify(restClient, times(2)).performRequest(eq("HEAD"), eq("/context/root"), eq(Collections.emptyMap()));
+    }
+
+    @Test
+    public void test_evictSearchCache_refreshPolicyNone_notCachedUntilRefreshed() {
+
+        // Given : outside of the test mode, writes are not refreshed (RefreshPolicy.NONE)
+        ElasticSearchTemplate noneTemplate = new ElasticSearchTemplate("context", false);
+        ElasticsearchSearchCache searchCache = new ElasticsearchSearchCache(10, 60000, 60000);
+        noneTemplate.setSearchCache(searchCache);
+        AtomicInteger searches = new AtomicInteger();
+        searchCache.get(noneTemplate.getRootIndexName("root"), "query", searches::incrementAndGet);
+
+        // When
+        noneTemplate.evictSearchCache("root");
+        int first = searchCache.get(noneTemplate.getRootIndexName("root"), "query", searches::incrementAndGet);
+        int second = searchCache.get(noneTemplate.getRootIndexName("root"), "query", searches::incrementAndGet);
+
+        // Then : the results read before the refresh are not cached
+        assertThat(first).isEqualTo(2);
+        assertThat(second).isEqualTo(3);
+    }
+
+    @Test
+    public void test_evictSearchCache_testMode_cachedAgain() {
+
+        // Given : in test mode, writes are refreshed immediately
+        ElasticSearchTemplate immediateTemplate = new ElasticSearchTemplate("context", true);
+        ElasticsearchSearchCache searchCache = new ElasticsearchSearchCache(10, 60000, 60000);
+        immediateTemplate.setSearchCache(searchCache);
+        AtomicInteger searches = new AtomicInteger();
+
+        // When
+        immediateTemplate.evictSearchCache("root");
+        int first = searchCache.get(immediateTemplate.getRootIndexName("root"), "query", searches::incrementAndGet);
+        int second = searchCache.get(immediateTemplate.getRootIndexName("root"), "query", searches::incrementAndGet);
+
+        // Then
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isEqualTo(1);
+    }
 }
@@ -0,0 +1,100 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchFindOneBatcherTest {
+
+    private ElasticsearchRepository<TheEntity, Long> repository;
+    private ElasticsearchFindOneBatcher<TheEntity, Long> batcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        repository = mock(ElasticsearchRepository.class);
+        when(repository.findAll(anyList())).thenAnswer(invocation -> ((List<Long>) invocation.getArguments()[0]).stream()
+            .map(id -> id % 5 == 0 ? null : new TheEntity().id(id))
+            .collect(Collectors.toList()));
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        if (batcher != null) {
+            batcher.destroy();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_findOneAsync_concurrentLookups_singleMultiGet() throws Exception {
+        // Given
+        batcher = new ElasticsearchFindOneBatcher<>(repository, 200, 100);
+
+        // When
+        List<CompletableFuture<TheEntity>> futures = new ArrayList<>();
+        for (long i = 1; i <= 20; i++) {
+            futures.add(batcher.findOneAsync(i % 10 + 1));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        // Then
+        verify(repository, times(1)).findAll(anyList());
+        for (int i = 0; i < 20; i++) {
+            long id = (i + 1) % 10 + 1;
+            if (id % 5 == 0) {
+                assertThat(futures.get(i).get()).isNull();
+            } else {
+                assertThat(futures.get(i).get().getId()).isEqualTo(id);
+            }
+        }
+    }
+
+    @Test
+    public void test_findOne_batchFull_loadWithoutWaitingForTheWindow() {
+        // Given
+        batcher = new ElasticsearchFindOneBatcher<>(repository, 60000, 1);
+
+        // When
+        long start = System.currentTimeMillis();
+        TheEntity entity = batcher.findOne(3l);
+
+        // Then
+        assertThat(entity.getId()).isEqualTo(3l);
+        assertThat(System.currentTimeMillis() - start).isLessThan(10000);
+    }
+
+    @Test
+    public void test_findOneAsync_loadError_completeExceptionally() throws Exception {
+        // Given
+        doThrow(new RubiksElasticsearchException("error")).when(repository).findAll(anyList());
+        batcher = new ElasticsearchFindOneBatcher<>(repository, 10, 100);
+
+        // When
+        Throwable thrown = null;
+        try {
+            batcher.findOneAsync(1l).get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            thrown = ex.getCause();
+        }
+
+        // Then
+        assertThat(thrown).isInstanceOf(RubiksElasticsearchException.class).hasMessage("error");
+    }
+}
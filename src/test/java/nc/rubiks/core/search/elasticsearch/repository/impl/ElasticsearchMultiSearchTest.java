@@ -0,0 +1,96 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.config.BaseESTestCase;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchMultiSearchTest extends BaseESTestCase {
+
+    private TestElasticsearchRepository testElasticsearchRepository;
+    private AbstractElasticsearchRepository<TheVersionedEntity, Long> versionedRepository;
+
+    @Before
+    public void before() {
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theentity");
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theversionedentity");
+        testElasticsearchRepository = new TestElasticsearchRepository(highLevelClient, template, new TestMapper());
+        versionedRepository = new AbstractElasticsearchRepository<TheVersionedEntity, Long>(highLevelClient, new TestMapper(), template, TheVersionedEntity.class) {
+        };
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_execute_severalRepositories_resultPerEntry() {
+        // Given
+        testElasticsearchRepository.save(Arrays.asList(
+            new TheEntity().id(1l).prop("one"),
+            new TheEntity().id(2l).prop("two"),
+            new TheEntity().id(3l).prop("two")));
+        versionedRepository.save(new TheVersionedEntity().id(1l).prop("versioned").version(1l));
+        ElasticsearchMultiSearch multiSearch = new ElasticsearchMultiSearch(highLevelClient);
+
+        // When
+        ElasticsearchMultiSearch.Entry<TheEntity> entities = multiSearch.add(testElasticsearchRepository,
+            new PageRequest(0, 2, new Sort(Sort.Direction.DESC, "id")), QueryBuilders.matchAllQuery(),
+            AggregationBuilders.terms("by_prop").field("prop.keyword"));
+        ElasticsearchMultiSearch.Entry<TheVersionedEntity> versioned = multiSearch.add(versionedRepository,
+            new PageRequest(0, 10), QueryBuilders.matchQuery("prop", "versioned"));
+        multiSearch.execute();
+
+        // Then
+        assertThat(entities.isFailed()).isFalse();
+        assertThat(entities.getPage().getTotalElements()).isEqualTo(3);
+        assertThat(entities.getPage().getContent()).extracting(TheEntity::getId).containsExactly(3l, 2l);
+        Map<String, Object> byProp = (Map<String, Object>) entities.getResult().getAggregations().get("by_prop");
+        assertThat((List<Object>) byProp.get("buckets")).hasSize(2);
+        assertThat(versioned.getPage().getContent()).extracting(TheVersionedEntity::getProp).containsExactly("versioned");
+    }
+
+    @Test
+    public void test_execute_failingSearch_isolated() {
+        // Given
+        testElasticsearchRepository.save(new TheEntity().id(1l).prop("one"));
+        ElasticsearchMultiSearch multiSearch = new ElasticsearchMultiSearch(highLevelClient);
+
+        // When
+        ElasticsearchMultiSearch.Entry<TheEntity> failing = multiSearch.add(testElasticsearchRepository,
+            new PageRequest(0, 10), QueryBuilders.matchAllQuery(), AggregationBuilders.avg("avg_prop").field("prop"));
+        ElasticsearchMultiSearch.Entry<TheEntity> succeeding = multiSearch.add(testElasticsearchRepository,
+            new PageRequest(0, 10), QueryBuilders.matchAllQuery());
+        ElasticsearchMultiSearch.Entry<TheVersionedEntity> noIndex = multiSearch.add(versionedRepository,
+            new PageRequest(0, 10), QueryBuilders.matchAllQuery());
+        multiSearch.execute();
+
+        // Then
+        assertThat(failing.isFailed()).isTrue();
+        assertThat(failing.getFailure()).isInstanceOf(RubiksElasticsearchException.class);
+        assertThat(succeeding.isFailed()).isFalse();
+        assertThat(succeeding.getPage().getContent()).extracting(TheEntity::getProp).containsExactly("one");
+        assertThat(noIndex.isFailed()).isFalse();
+        assertThat(noIndex.getPage().getContent()).isEmpty();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_getResult_notExecuted_throwException() {
+        // Given
+        ElasticsearchMultiSearch multiSearch = new ElasticsearchMultiSearch(highLevelClient);
+        ElasticsearchMultiSearch.Entry<TheEntity> entry = multiSearch.add(testElasticsearchRepository, new PageRequest(0, 10), QueryBuilders.matchAllQuery());
+
+        // When
+        entry.getResult();
+    }
+}
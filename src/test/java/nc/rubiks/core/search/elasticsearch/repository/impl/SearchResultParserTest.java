@@ -0,0 +1,87 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.model.Result;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.springframework.data.domain.PageRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class SearchResultParserTest {
+
+    private static final String RESPONSE = "{\"took\":2,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0}," +
+        "\"hits\":{\"total\":12,\"max_score\":null,\"hits\":[" +
+        "{\"_index\":\"theentity\",\"_type\":\"theentity\",\"_id\":\"1\",\"_score\":null,\"_source\":{\"id\":1,\"prop\":\"one\",\"nested\":{\"a\":[1,2]}},\"sort\":[1]}," +
+        "{\"_index\":\"theentity\",\"_type\":\"theentity\",\"_id\":\"2\",\"_score\":1.5,\"_source\":{\"id\":2,\"prop\":\"two\"}}]}," +
+        "\"aggregations\":{\"by_prop\":{\"buckets\":[{\"key\":\"one\",\"doc_count\":1}]}}}";
+
+    private InputStream response() {
+        return new ByteArrayInputStream(RESPONSE.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test_parse_bindSourcesWithoutRawMaps() throws IOException {
+
+        // When
+        Result<TheEntity> result = SearchResultParser.parse(response(), new TestMapper(), TheEntity.class, new PageRequest(0, 2));
+
+        // Then
+        assertThat(result.getHits().getTotal()).isEqualTo(12);
+        assertThat(result.getHits().getMaxScore()).isNull();
+        assertThat(result.getHits().getRawResults()).hasSize(2);
+        assertThat(result.getHits().getRawResults().get(0).getId()).isEqualTo("1");
+        assertThat(result.getHits().getRawResults().get(0).getIndex()).isEqualTo("theentity");
+        assertThat(result.getHits().getRawResults().get(0).getElementAsMap()).isNull();
+        assertThat(result.getHits().getRawResults().get(1).getScore()).isEqualTo(1.5F);
+        assertThat(result.getHits().getResults().getTotalElements()).isEqualTo(12);
+        assertThat(result.getHits().getResults().getContent()).extracting("prop").containsExactly("one", "two");
+    }
+
+    @Test
+    public void test_parse_aggregationsParsedOnAccess() throws IOException {
+
+        // Given
+        TestMapper mapper = spy(new TestMapper());
+
+        // When
+        Result<TheEntity> result = SearchResultParser.parse(response(), mapper, TheEntity.class, new PageRequest(0, 2));
+
+        // Then
+        verify(mapper, never()).mapToObject(any(InputStream.class), eq(Map.class));
+
+        // When
+        Map<String, Object> aggregations = result.getAggregations();
+        result.getAggregations();
+
+        // Then
+        verify(mapper, times(1)).mapToObject(any(InputStream.class), eq(Map.class));
+        assertThat((List) ((Map) aggregations.get("by_prop")).get("buckets")).hasSize(1);
+    }
+
+    @Test
+    public void test_parse_noAggregations_returnEmptyMap() throws IOException {
+
+        // Given
+        String response = "{\"hits\":{\"total\":0,\"max_score\":null,\"hits\":[]}}";
+
+        // When
+        Result<TheEntity> result = SearchResultParser.parse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)),
+            new TestMapper(), TheEntity.class, new PageRequest(0, 2));
+
+        // Then
+        assertThat(result.getHits().getResults().getContent()).isEmpty();
+        assertThat(result.getAggregations()).isEmpty();
+    }
+}
@@ -0,0 +1,140 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(JUnit4.class)
+public class SingleFlightTest {
+
+    @Test
+    public void test_execute_concurrentIdenticalCalls_executedOnce() throws Exception {
+        // Given
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }), executor);
+            started.await(5, TimeUnit.SECONDS);
+            CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+                calls.incrementAndGet();
+                return "other";
+            }), executor);
+            Thread.sleep(100);
+            release.countDown();
+
+            // Then
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            assertThat(calls.get()).isEqualTo(1);
+            assertThat(singleFlight.size()).isEqualTo(0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_execute_sequentialCalls_executedEachTime() {
+        // Given
+        SingleFlight singleFlight = new SingleFlight();
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        singleFlight.execute("key", calls::incrementAndGet);
+        int result = singleFlight.execute("key", calls::incrementAndGet);
+
+        // Then
+        assertThat(result).isEqualTo(2);
+    }
+
+    @Test
+    public void test_execute_failingCall_failureShared() throws Exception {
+        // Given
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When
+            CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw new RubiksElasticsearchException("ES unavailable");
+            }), executor);
+            started.await(5, TimeUnit.SECONDS);
+            CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("key", () -> "other"), executor);
+            Thread.sleep(100);
+            release.countDown();
+
+            // Then
+            try {
+                follower.get(5, TimeUnit.SECONDS);
+                fail("The failure should be shared");
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause()).isInstanceOf(RubiksElasticsearchException.class).hasMessage("ES unavailable");
+            }
+            assertThat(leader.handle((result, ex) -> ex).get(5, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_execute_groupInvalidatedDuringCall_newCallNotJoined() throws Exception {
+        // Given
+        SingleFlight singleFlight = new SingleFlight();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            // When : a document of the index is written while an identical search is in flight
+            CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("index", "key", () -> {
+                started.countDown();
+                await(release);
+                return "beforeWrite";
+            }), executor);
+            started.await(5, TimeUnit.SECONDS);
+            singleFlight.invalidate("index");
+            CompletableFuture<String> afterWrite = CompletableFuture.supplyAsync(() -> singleFlight.execute("index", "key", () -> "afterWrite"), executor);
+
+            // Then : the search started after the write doesn't wait for the earlier one
+            assertThat(afterWrite.get(5, TimeUnit.SECONDS)).isEqualTo("afterWrite");
+            release.countDown();
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("beforeWrite");
+            assertThat(singleFlight.size()).isEqualTo(0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
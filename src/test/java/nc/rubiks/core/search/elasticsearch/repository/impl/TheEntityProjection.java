@@ -0,0 +1,20 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Projection of TheEntity, only reading its prop
+ */
+public class TheEntityProjection {
+
+    @JsonProperty("prop")
+    private String label;
+
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+}
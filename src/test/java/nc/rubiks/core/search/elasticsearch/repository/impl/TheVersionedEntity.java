@@ -0,0 +1,55 @@
+package nc.rubiks.core.search.elasticsearch.repository.impl;
+
+import nc.rubiks.core.search.elasticsearch.annotation.ElasticsearchDocument;
+import org.elasticsearch.index.VersionType;
+
+import javax.persistence.Version;
+
+@ElasticsearchDocument(versionType = VersionType.EXTERNAL)
+public class TheVersionedEntity {
+
+    private Long id;
+    private String prop;
+
+    @Version
+    private Long version;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public TheVersionedEntity id(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getProp() {
+        return prop;
+    }
+
+    public void setProp(String prop) {
+        this.prop = prop;
+    }
+
+    public TheVersionedEntity prop(String prop) {
+        this.prop = prop;
+        return this;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public TheVersionedEntity version(Long version) {
+        this.version = version;
+        return this;
+    }
+}
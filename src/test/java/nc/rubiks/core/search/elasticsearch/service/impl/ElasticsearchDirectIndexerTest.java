@@ -0,0 +1,157 @@
+package nc.rubiks.core.search.elasticsearch.service.impl;
+
+import nc.rubiks.core.search.elasticsearch.config.BaseESTestCase;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.AbstractElasticsearchRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.TestMapper;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchDirectIndexerTest extends BaseESTestCase {
+
+    private ElasticsearchSyncActionRepository elasticsearchSyncActionRepository;
+    private AbstractElasticsearchRepository<TheEntity, Long> elasticsearchTheEntityRepository;
+    private EntityManager entityManager;
+    private ElasticsearchSyncServiceImpl elasticsearchSyncService;
+
+    @Before
+    public void before() {
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theentity");
+        elasticsearchSyncActionRepository = mock(ElasticsearchSyncActionRepository.class);
+        elasticsearchTheEntityRepository = new AbstractElasticsearchRepository<TheEntity, Long>(highLevelClient, new TestMapper(), template, TheEntity.class) {
+        };
+        entityManager = mock(EntityManager.class);
+        elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Collections.singletonList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            highLevelClient,
+            new RubiksElasticsearchSyncProperties());
+    }
+
+    private ElasticsearchDirectIndexer buildIndexer(int queueCapacity) {
+        RubiksElasticsearchSyncProperties.Direct properties = new RubiksElasticsearchSyncProperties.Direct();
+        properties.setQueueCapacity(queueCapacity);
+        return new ElasticsearchDirectIndexer(elasticsearchSyncService, highLevelClient, new TestMapper(),
+            mock(PlatformTransactionManager.class), properties);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_index_indexAndDeleteDocumentsThenTheirSyncActions() {
+
+        // Given
+        when(entityManager.find(TheEntity.class, 1L)).thenReturn(new TheEntity().id(1L).prop("one"));
+        when(entityManager.find(TheEntity.class, 2L)).thenReturn(new TheEntity().id(2L).prop("two"));
+        ElasticsearchDirectIndexer indexer = buildIndexer(10);
+        UUID created1 = UUID.randomUUID();
+        UUID updated1 = UUID.randomUUID();
+        UUID created2 = UUID.randomUUID();
+        UUID deleted3 = UUID.randomUUID();
+
+        // When
+        indexer.index(Arrays.asList(
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 1L, ElasticsearchSyncActionEnum.CREATE, created1),
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 1L, ElasticsearchSyncActionEnum.UPDATE, updated1),
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 2L, ElasticsearchSyncActionEnum.CREATE, created2),
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 3L, ElasticsearchSyncActionEnum.DELETE, deleted3)));
+
+        // Then : changes of the same document are coalesced
+        verify(entityManager, times(1)).find(TheEntity.class, 1L);
+        assertThat(elasticsearchTheEntityRepository.findOne(1L).getProp()).isEqualTo("one");
+        assertThat(elasticsearchTheEntityRepository.findOne(2L).getProp()).isEqualTo("two");
+        ArgumentCaptor<Collection> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(elasticsearchSyncActionRepository, times(1)).deleteByIds(captor.capture());
+        assertThat((Collection<UUID>) captor.getValue()).containsExactlyInAnyOrder(created1, updated1, created2, deleted3);
+        verify(elasticsearchSyncActionRepository, never()).save(any(ElasticsearchSyncAction.class));
+    }
+
+    @Test
+    public void test_offer_indexInBackground() throws Exception {
+
+        // Given
+        when(entityManager.find(TheEntity.class, 1L)).thenReturn(new TheEntity().id(1L).prop("one"));
+        ElasticsearchDirectIndexer indexer = buildIndexer(10);
+        indexer.afterPropertiesSet();
+        UUID actionId = UUID.randomUUID();
+
+        // When
+        indexer.offer(TheEntity.class, 1L, ElasticsearchSyncActionEnum.CREATE, actionId);
+
+        // Then
+        TheEntity indexed = null;
+        for (int i = 0; i < 50 && indexed == null; i++) {
+            Thread.sleep(100);
+            indexed = elasticsearchTheEntityRepository.findOne(1L);
+        }
+        indexer.destroy();
+        assertThat(indexed).isNotNull();
+        assertThat(indexed.getProp()).isEqualTo("one");
+        verify(elasticsearchSyncActionRepository, timeout(5000)).deleteByIds(Collections.singletonList(actionId));
+    }
+
+    @Test
+    public void test_offer_leaveSyncActionWhenQueueIsFull() throws Exception {
+
+        // Given : worker not started
+        ElasticsearchDirectIndexer indexer = buildIndexer(1);
+
+        // When
+        indexer.offer(TheEntity.class, 1L, ElasticsearchSyncActionEnum.CREATE, UUID.randomUUID());
+        indexer.offer(TheEntity.class, 2L, ElasticsearchSyncActionEnum.UPDATE, UUID.randomUUID());
+
+        // Then
+        assertThat(indexer.getQueueSize()).isEqualTo(1);
+
+        // When : stopped, remaining changes are left to the sync job
+        indexer.destroy();
+
+        // Then : their ElasticsearchSyncAction are kept
+        assertThat(indexer.getQueueSize()).isEqualTo(0);
+        verify(elasticsearchSyncActionRepository, never()).deleteByIds(anyCollectionOf(UUID.class));
+        verify(elasticsearchSyncActionRepository, never()).save(any(ElasticsearchSyncAction.class));
+    }
+
+    @Test
+    public void test_index_leaveSyncActionWhenNotIndexed() {
+
+        // Given
+        when(entityManager.find(TheEntity.class, 1L)).thenThrow(new IllegalStateException("DB error"));
+        when(entityManager.find(TheEntity.class, 2L)).thenReturn(new TheEntity().id(2L).prop("two"));
+        ElasticsearchDirectIndexer indexer = buildIndexer(10);
+        UUID indexed = UUID.randomUUID();
+
+        // When
+        indexer.index(Arrays.asList(
+            new ElasticsearchDirectIndexer.Change(String.class, "1", ElasticsearchSyncActionEnum.CREATE, UUID.randomUUID()),
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 1L, ElasticsearchSyncActionEnum.UPDATE, UUID.randomUUID()),
+            new ElasticsearchDirectIndexer.Change(TheEntity.class, 2L, ElasticsearchSyncActionEnum.UPDATE, indexed)));
+
+        // Then : only the ElasticsearchSyncAction of the indexed document is deleted
+        verify(elasticsearchSyncActionRepository, times(1)).deleteByIds(Collections.singletonList(indexed));
+        verify(elasticsearchSyncActionRepository, never()).save(any(ElasticsearchSyncAction.class));
+    }
+}
@@ -0,0 +1,211 @@
+package nc.rubiks.core.search.elasticsearch.service.impl;
+
+import nc.rubiks.core.search.elasticsearch.config.BaseESTestCase;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.AbstractElasticsearchRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.TestMapper;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSyncPipelineTest extends BaseESTestCase {
+
+    private ElasticsearchSyncActionRepository elasticsearchSyncActionRepository;
+    private AbstractElasticsearchRepository<TheEntity, Long> elasticsearchTheEntityRepository;
+    private EntityManager entityManager;
+
+    @Before
+    public void before() {
+        template.deleteIndex(highLevelClient.getLowLevelClient(), "theentity");
+        elasticsearchSyncActionRepository = mock(ElasticsearchSyncActionRepository.class);
+        elasticsearchTheEntityRepository = new AbstractElasticsearchRepository<TheEntity, Long>(highLevelClient, new TestMapper(), template, TheEntity.class) {
+        };
+        entityManager = mock(EntityManager.class);
+    }
+
+    private ElasticsearchSyncAction action(String id, ElasticsearchSyncActionEnum actionEnum) {
+        ElasticsearchSyncAction action = new ElasticsearchSyncAction();
+        action.setAction(actionEnum);
+        action.setObjId(id);
+        action.setObjType("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+        return action;
+    }
+
+    private ElasticsearchSyncServiceImpl buildService(int batchSize) {
+        RubiksElasticsearchSyncProperties properties = new RubiksElasticsearchSyncProperties();
+        properties.getPipeline().setEnabled(true);
+        properties.getPipeline().setBatchSize(batchSize);
+        return new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Collections.singletonList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            highLevelClient,
+            properties);
+    }
+
+    @Test
+    public void test_sync_pipeline_indexAndAcknowledgeActions() {
+
+        // Given
+        ElasticsearchSyncAction create1 = action("1", ElasticsearchSyncActionEnum.CREATE);
+        ElasticsearchSyncAction update1 = action("1", ElasticsearchSyncActionEnum.UPDATE);
+        ElasticsearchSyncAction create2 = action("2", ElasticsearchSyncActionEnum.CREATE);
+        ElasticsearchSyncAction delete3 = action("3", ElasticsearchSyncActionEnum.DELETE);
+        ElasticsearchSyncAction create4 = action("4", ElasticsearchSyncActionEnum.CREATE);
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(create1, update1, create2, delete3, create4));
+        when(entityManager.find(TheEntity.class, 1L)).thenReturn(new TheEntity().id(1L).prop("one"));
+        when(entityManager.find(TheEntity.class, 2L)).thenReturn(new TheEntity().id(2L).prop("two"));
+
+        // When
+        buildService(2).sync();
+
+        // Then : actions on the same document are coalesced
+        verify(entityManager, times(1)).find(TheEntity.class, 1L);
+        assertThat(elasticsearchTheEntityRepository.findOne(1L).getProp()).isEqualTo("one");
+        assertThat(elasticsearchTheEntityRepository.findOne(2L).getProp()).isEqualTo("two");
+        verify(elasticsearchSyncActionRepository, times(1)).delete(create1);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(update1);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(create2);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(delete3);
+
+        // Then : entity 4 was not found in database
+        verify(elasticsearchSyncActionRepository, never()).delete(create4);
+        verify(elasticsearchSyncActionRepository, times(1)).save(create4);
+        assertThat(create4.getNbTryouts()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_sync_pipeline_invalidProperties_fail() {
+
+        // Given
+        RubiksElasticsearchSyncProperties properties = new RubiksElasticsearchSyncProperties();
+        properties.getPipeline().setEnabled(true);
+        properties.getPipeline().setConvertParallelism(0);
+
+        // When
+        Throwable batchSize = catchThrowable(() -> buildService(0));
+        Throwable parallelism = catchThrowable(() -> new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Collections.singletonList(elasticsearchTheEntityRepository), new ArrayList<>(), entityManager, 3,
+            new ElasticsearchSyncThrottle(), new TestMapper(), highLevelClient, properties));
+
+        // Then : the job would otherwise loop or wait forever
+        assertThat(batchSize).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("batchSize");
+        assertThat(parallelism).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("convertParallelism");
+    }
+
+    @Test(timeout = 30000)
+    public void test_sync_pipeline_reuseWorkersAcrossRuns() throws Exception {
+
+        // Given
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3))
+            .thenAnswer(invocation -> Collections.singletonList(action("1", ElasticsearchSyncActionEnum.UPDATE)));
+        when(entityManager.find(TheEntity.class, 1L)).thenAnswer(invocation -> {
+            workers.add(Thread.currentThread());
+            return new TheEntity().id(1L).prop("one");
+        });
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = buildService(1);
+
+        // When
+        elasticsearchSyncService.sync();
+        elasticsearchSyncService.sync();
+
+        // Then : the workers are kept between runs
+        verify(entityManager, times(2)).find(TheEntity.class, 1L);
+        assertThat(workers.stream().allMatch(Thread::isAlive)).isTrue();
+
+        // When
+        elasticsearchSyncService.shutdown();
+
+        // Then
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    @Test
+    public void test_sync_pipeline_keepActionsOrderAcrossBatches() {
+
+        // Given
+        ElasticsearchSyncAction create = action("1", ElasticsearchSyncActionEnum.CREATE);
+        ElasticsearchSyncAction delete = action("1", ElasticsearchSyncActionEnum.DELETE);
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(create, delete));
+        when(entityManager.find(TheEntity.class, 1L)).thenReturn(new TheEntity().id(1L).prop("one"));
+
+        // When
+        buildService(1).sync();
+
+        // Then
+        assertThat(elasticsearchTheEntityRepository.findOne(1L)).isNull();
+        verify(elasticsearchSyncActionRepository, times(1)).delete(create);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(delete);
+    }
+
+    @Test
+    public void test_sync_pipeline_sendPayloadWithoutReloading() throws Exception {
+
+        // Given
+        ElasticsearchSyncAction update = action("1", ElasticsearchSyncActionEnum.UPDATE);
+        update.setPayload(ElasticsearchSyncServiceImpl.compress("{\"id\":1,\"prop\":\"snapshot\"}"));
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Collections.singletonList(update));
+
+        // When
+        buildService(10).sync();
+
+        // Then
+        verify(entityManager, never()).find(TheEntity.class, 1L);
+        assertThat(elasticsearchTheEntityRepository.findOne(1L).getProp()).isEqualTo("snapshot");
+        verify(elasticsearchSyncActionRepository, times(1)).delete(update);
+    }
+
+    @Test(timeout = 30000)
+    public void test_sync_pipeline_sendFailure_failBatchAndSendNextOnes() {
+
+        // Given
+        AtomicBoolean failed = new AtomicBoolean(false);
+        elasticsearchTheEntityRepository = new AbstractElasticsearchRepository<TheEntity, Long>(highLevelClient, new TestMapper(), template, TheEntity.class) {
+            @Override
+            public void evictSearchCache() {
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Unexpected failure");
+                }
+            }
+        };
+        ElasticsearchSyncAction create1 = action("1", ElasticsearchSyncActionEnum.CREATE);
+        ElasticsearchSyncAction create2 = action("2", ElasticsearchSyncActionEnum.CREATE);
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(create1, create2));
+        when(entityManager.find(TheEntity.class, 1L)).thenReturn(new TheEntity().id(1L).prop("one"));
+        when(entityManager.find(TheEntity.class, 2L)).thenReturn(new TheEntity().id(2L).prop("two"));
+
+        // When
+        buildService(1).sync();
+
+        // Then
+        verify(elasticsearchSyncActionRepository, never()).delete(create1);
+        verify(elasticsearchSyncActionRepository, times(1)).save(create1);
+        assertThat(create1.getNbTryouts()).isEqualTo(1);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(create2);
+        assertThat(elasticsearchTheEntityRepository.findOne(2L).getProp()).isEqualTo("two");
+    }
+}
@@ -1,40 +1,62 @@
 package nc.rubiks.core.search.elasticsearch.service.impl;
 
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
 import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
-import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchRepository;
+import nc.rubiks.core.search.elasticsearch.mapper.DocumentMapper;
 import nc.rubiks.core.search.elasticsearch.repository.ElasticsearchSyncActionRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.ElasticsearchBulkRepository;
+import nc.rubiks.core.search.elasticsearch.repository.impl.TestMapper;
+import nc.rubiks.core.search.elasticsearch.service.ElasticsearchSyncScope;
 import nc.rubiks.core.search.elasticsearch.service.EntityToElasticsearchDocumentConverter;
+import nc.rubiks.core.search.elasticsearch.throttle.ElasticsearchSyncThrottle;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RestHighLevelClient;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.Mockito.*;
 
 public class ElasticsearchSyncServiceImplTest {
 
     private ElasticsearchSyncActionRepository elasticsearchSyncActionRepository;
-    private ElasticsearchRepository<TheEntity, Long> elasticsearchTheEntityRepository;
-    private ElasticsearchRepository<TheEntityDto, Long> elasticsearchTheEntityDtoRepository;
-    private ElasticsearchRepository<TheEntityWithNamedQuery, Long> elasticsearchTheEntityWithNamedQueryRepository;
+    private ElasticsearchBulkRepository<TheEntity, Long> elasticsearchTheEntityRepository;
+    private ElasticsearchBulkRepository<TheEntityDto, Long> elasticsearchTheEntityDtoRepository;
+    private ElasticsearchBulkRepository<TheEntityWithNamedQuery, Long> elasticsearchTheEntityWithNamedQueryRepository;
     private EntityManager entityManager;
 
     @Before
     public void setUp() {
 
         elasticsearchSyncActionRepository = mock(ElasticsearchSyncActionRepository.class);
-        elasticsearchTheEntityRepository = mock(ElasticsearchRepository.class);
+        elasticsearchTheEntityRepository = mock(ElasticsearchBulkRepository.class);
         when(elasticsearchTheEntityRepository.getIndexedClass()).thenReturn(TheEntity.class);
-        elasticsearchTheEntityDtoRepository = mock(ElasticsearchRepository.class);
+        elasticsearchTheEntityDtoRepository = mock(ElasticsearchBulkRepository.class);
         when(elasticsearchTheEntityDtoRepository.getIndexedClass()).thenReturn(TheEntityDto.class);
-        elasticsearchTheEntityWithNamedQueryRepository = mock(ElasticsearchRepository.class);
+        elasticsearchTheEntityWithNamedQueryRepository = mock(ElasticsearchBulkRepository.class);
         when(elasticsearchTheEntityWithNamedQueryRepository.getIndexedClass()).thenReturn(TheEntityWithNamedQuery.class);
         entityManager = mock(EntityManager.class);
     }
@@ -264,4 +286,381 @@ public class ElasticsearchSyncServiceImplTest {
         // Then
         verify(query, times(1)).executeUpdate();
     }
+
+    @Test
+    public void test_sync_withThrottle_acquireDocumentAndBytesBeforeSaving() throws Exception {
+
+        // Given
+        ElasticsearchSyncAction action = new ElasticsearchSyncAction();
+        action.setAction(ElasticsearchSyncActionEnum.UPDATE);
+        action.setObjId("564");
+        action.setObjType("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(action));
+
+        TheEntity theEntity = new TheEntity();
+        theEntity.setId(564l);
+        when(entityManager.find(TheEntity.class, 564l)).thenReturn(theEntity);
+
+        ElasticsearchSyncThrottle throttle = mock(ElasticsearchSyncThrottle.class);
+        when(throttle.isBytesLimited("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity")).thenReturn(true);
+        DocumentMapper documentMapper = mock(DocumentMapper.class);
+        when(documentMapper.mapToString(theEntity)).thenReturn("{\"id\":564}");
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            throttle,
+            documentMapper);
+
+        // When
+        elasticsearchSyncService.sync();
+
+        // Then
+        verify(throttle, times(1)).acquire("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity", 1, 10);
+        verify(elasticsearchTheEntityRepository, times(1)).save(theEntity);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(action);
+    }
+
+    @Test
+    public void test_sync_interruptedWhileThrottled_keepAction() throws Exception {
+
+        // Given
+        ElasticsearchSyncAction action = new ElasticsearchSyncAction();
+        action.setAction(ElasticsearchSyncActionEnum.DELETE);
+        action.setObjId("564");
+        action.setObjType("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(action));
+
+        ElasticsearchSyncThrottle throttle = mock(ElasticsearchSyncThrottle.class);
+        doThrow(new InterruptedException()).when(throttle).acquire("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity", 1, 0);
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            throttle,
+            null);
+
+        // When
+        elasticsearchSyncService.sync();
+
+        // Then
+        assertThat(Thread.interrupted()).isTrue();
+        verify(elasticsearchTheEntityRepository, never()).delete(564l);
+        verify(elasticsearchSyncActionRepository, never()).delete(action);
+        verify(elasticsearchSyncActionRepository, never()).save(action);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_suspendForCurrentThread_recordChangesAndReindexInBulkOnClose() throws Exception {
+
+        // Given
+        Metamodel metamodel = mock(Metamodel.class);
+        EntityType entityType = mock(EntityType.class);
+        Type idType = mock(Type.class);
+        SingularAttribute idAttribute = mock(SingularAttribute.class);
+        when(entityManager.getMetamodel()).thenReturn(metamodel);
+        when(metamodel.entity(TheEntity.class)).thenReturn(entityType);
+        when(entityType.getName()).thenReturn("TheEntity");
+        when(entityType.getIdType()).thenReturn(idType);
+        when(idType.getJavaType()).thenReturn(Long.class);
+        when(entityType.getId(Long.class)).thenReturn(idAttribute);
+        when(idAttribute.getName()).thenReturn("id");
+
+        TheEntity e1 = new TheEntity().id(10L);
+        TheEntity e2 = new TheEntity().id(12L);
+        Query query = mock(Query.class);
+        when(entityManager.createQuery("select e.id, e from TheEntity e where e.id between :fromId and :toId order by e.id")).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.setMaxResults(500)).thenReturn(query);
+        when(query.getResultList()).thenReturn(Arrays.asList(new Object[]{10L, e1}, new Object[]{12L, e2}));
+
+        when(elasticsearchTheEntityRepository.buildIndexRequest(anyString(), any(byte[].class), any(TheEntity.class)))
+            .thenAnswer(invocation -> new IndexRequest("theentity", "theentity", (String) invocation.getArguments()[0]));
+        when(elasticsearchTheEntityRepository.buildDeleteRequest(anyString()))
+            .thenAnswer(invocation -> new DeleteRequest("theentity", "theentity", (String) invocation.getArguments()[0]));
+        RestHighLevelClient highLevelClient = mock(RestHighLevelClient.class);
+        BulkItemResponse deleted = mock(BulkItemResponse.class);
+        BulkItemResponse indexed = mock(BulkItemResponse.class);
+        BulkItemResponse rejected = mock(BulkItemResponse.class);
+        when(rejected.isFailed()).thenReturn(true);
+        when(rejected.getFailure()).thenReturn(new BulkItemResponse.Failure("theentity", "theentity", "12", new IllegalStateException("rejected")));
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        when(highLevelClient.bulk(captor.capture()))
+            .thenReturn(new BulkResponse(new BulkItemResponse[]{deleted}, 1))
+            .thenReturn(new BulkResponse(new BulkItemResponse[]{indexed, rejected}, 1));
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            highLevelClient,
+            new RubiksElasticsearchSyncProperties());
+
+        // When
+        try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntity.class)) {
+            elasticsearchSyncService.addAction(TheEntity.class, 12L, ElasticsearchSyncActionEnum.CREATE);
+            elasticsearchSyncService.addAction(TheEntity.class, 10L, ElasticsearchSyncActionEnum.UPDATE);
+            elasticsearchSyncService.addAction(TheEntity.class, 3L, ElasticsearchSyncActionEnum.DELETE);
+
+            // Then
+            verify(elasticsearchSyncActionRepository, never()).save(any(ElasticsearchSyncAction.class));
+            assertThat(scope.getChanges().get(TheEntity.class).getMinId()).isEqualTo(10L);
+            assertThat(scope.getChanges().get(TheEntity.class).getMaxId()).isEqualTo(12L);
+        }
+
+        // Then
+        verify(query, times(1)).setParameter("fromId", 10L);
+        verify(query, never()).setParameter("fromId", 13L);
+        assertThat(captor.getAllValues()).hasSize(2);
+        assertThat(captor.getAllValues().get(0).requests()).extracting(DocWriteRequest::id).containsExactly("3");
+        assertThat(captor.getAllValues().get(1).requests()).extracting(DocWriteRequest::id).containsExactly("10", "12");
+
+        // Then : the document that could not be reindexed is left to the sync job
+        ArgumentCaptor<ElasticsearchSyncAction> actionCaptor = ArgumentCaptor.forClass(ElasticsearchSyncAction.class);
+        verify(elasticsearchSyncActionRepository, times(1)).save(actionCaptor.capture());
+        assertThat(actionCaptor.getValue().getObjId()).isEqualTo("12");
+        assertThat(actionCaptor.getValue().getAction()).isEqualTo(ElasticsearchSyncActionEnum.UPDATE);
+
+        // When : once closed, the sync is back to normal
+        elasticsearchSyncService.addAction(TheEntity.class, 14L, ElasticsearchSyncActionEnum.CREATE);
+
+        // Then
+        verify(elasticsearchSyncActionRepository, times(2)).save(any(ElasticsearchSyncAction.class));
+    }
+
+    @Test
+    public void test_suspendForCurrentThread_rolledBackDeletion_reindexDocument() throws Exception {
+
+        // Given : the deleted entity still exists, its deletion was rolled back
+        when(entityManager.find(TheEntity.class, 3L)).thenReturn(new TheEntity().id(3L));
+        when(elasticsearchTheEntityRepository.buildIndexRequest(anyString(), any(byte[].class), any(TheEntity.class)))
+            .thenAnswer(invocation -> new IndexRequest("theentity", "theentity", (String) invocation.getArguments()[0]));
+        RestHighLevelClient highLevelClient = mock(RestHighLevelClient.class);
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        when(highLevelClient.bulk(captor.capture())).thenReturn(new BulkResponse(new BulkItemResponse[]{mock(BulkItemResponse.class)}, 1));
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            highLevelClient,
+            new RubiksElasticsearchSyncProperties());
+
+        // When
+        try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntity.class)) {
+            elasticsearchSyncService.addAction(TheEntity.class, 3L, ElasticsearchSyncActionEnum.DELETE);
+        }
+
+        // Then : the document is indexed instead of being deleted
+        assertThat(captor.getValue().requests()).hasSize(1);
+        assertThat(captor.getValue().requests().get(0)).isInstanceOf(IndexRequest.class);
+        assertThat(captor.getValue().requests().get(0).id()).isEqualTo("3");
+        verify(elasticsearchTheEntityRepository, never()).buildDeleteRequest(anyString());
+        verify(elasticsearchSyncActionRepository, never()).save(any(ElasticsearchSyncAction.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void test_suspendForCurrentThread_unreadableRow_storeActionForSyncJob() throws Exception {
+
+        // Given : the row of 3 is gone, the one of 4 can't be read
+        TypedQuery<TheEntityWithNamedQuery> query = mock(TypedQuery.class);
+        TypedQuery<TheEntityWithNamedQuery> missing = mock(TypedQuery.class);
+        TypedQuery<TheEntityWithNamedQuery> failing = mock(TypedQuery.class);
+        when(entityManager.createNamedQuery(eq("theNamedQuery"), eq(TheEntityWithNamedQuery.class))).thenReturn(query);
+        when(query.setParameter("id", 3L)).thenReturn(missing);
+        when(query.setParameter("id", 4L)).thenReturn(failing);
+        when(missing.getSingleResult()).thenThrow(new NoResultException());
+        when(failing.getSingleResult()).thenThrow(new IllegalStateException("DB error"));
+        when(elasticsearchTheEntityWithNamedQueryRepository.buildDeleteRequest(anyString()))
+            .thenAnswer(invocation -> new DeleteRequest("theentitywithnamedquery", "theentitywithnamedquery", (String) invocation.getArguments()[0]));
+        RestHighLevelClient highLevelClient = mock(RestHighLevelClient.class);
+        ArgumentCaptor<BulkRequest> captor = ArgumentCaptor.forClass(BulkRequest.class);
+        when(highLevelClient.bulk(captor.capture())).thenReturn(new BulkResponse(new BulkItemResponse[]{mock(BulkItemResponse.class)}, 1));
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityWithNamedQueryRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            highLevelClient,
+            new RubiksElasticsearchSyncProperties());
+
+        // When
+        try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntityWithNamedQuery.class)) {
+            elasticsearchSyncService.addAction(TheEntityWithNamedQuery.class, 3L, ElasticsearchSyncActionEnum.DELETE);
+            elasticsearchSyncService.addAction(TheEntityWithNamedQuery.class, 4L, ElasticsearchSyncActionEnum.DELETE);
+        }
+
+        // Then : the missing row is deleted, the unreadable one is left to the sync job
+        assertThat(captor.getValue().requests()).extracting(DocWriteRequest::id).containsExactly("3");
+        ArgumentCaptor<ElasticsearchSyncAction> actionCaptor = ArgumentCaptor.forClass(ElasticsearchSyncAction.class);
+        verify(elasticsearchSyncActionRepository, times(1)).save(actionCaptor.capture());
+        assertThat(actionCaptor.getValue().getObjId()).isEqualTo("4");
+        assertThat(actionCaptor.getValue().getAction()).isEqualTo(ElasticsearchSyncActionEnum.DELETE);
+    }
+
+    @Test
+    public void test_suspendForCurrentThread_unreadableRange_storeActionsForSyncJob() {
+
+        // Given
+        Metamodel metamodel = mock(Metamodel.class);
+        EntityType entityType = mock(EntityType.class);
+        Type idType = mock(Type.class);
+        SingularAttribute idAttribute = mock(SingularAttribute.class);
+        when(entityManager.getMetamodel()).thenReturn(metamodel);
+        when(metamodel.entity(TheEntity.class)).thenReturn(entityType);
+        when(entityType.getName()).thenReturn("TheEntity");
+        when(entityType.getIdType()).thenReturn(idType);
+        when(idType.getJavaType()).thenReturn(Long.class);
+        when(entityType.getId(Long.class)).thenReturn(idAttribute);
+        when(idAttribute.getName()).thenReturn("id");
+        when(entityManager.createQuery(anyString())).thenThrow(new PersistenceException("DB error"));
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper(),
+            mock(RestHighLevelClient.class),
+            new RubiksElasticsearchSyncProperties());
+
+        // When
+        try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntity.class)) {
+            elasticsearchSyncService.addAction(TheEntity.class, 10L, ElasticsearchSyncActionEnum.CREATE);
+            elasticsearchSyncService.addAction(TheEntity.class, 12L, ElasticsearchSyncActionEnum.UPDATE);
+        }
+
+        // Then : the whole range is left to the sync job
+        ArgumentCaptor<ElasticsearchSyncAction> actionCaptor = ArgumentCaptor.forClass(ElasticsearchSyncAction.class);
+        verify(elasticsearchSyncActionRepository, times(3)).save(actionCaptor.capture());
+        assertThat(actionCaptor.getAllValues()).extracting(ElasticsearchSyncAction::getObjId).containsExactly("10", "11", "12");
+        assertThat(actionCaptor.getAllValues()).extracting(ElasticsearchSyncAction::getAction).containsOnly(ElasticsearchSyncActionEnum.UPDATE);
+    }
+
+    @Test
+    public void test_suspendForCurrentThread_withoutConverter_failOnClose() {
+
+        // Given
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityDtoRepository),
+            new ArrayList<>(),
+            entityManager,
+            3);
+        ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntityWithDto.class);
+        elasticsearchSyncService.addAction(TheEntityWithDto.class, 10L, ElasticsearchSyncActionEnum.UPDATE);
+
+        // When
+        Throwable thrown = catchThrowable(scope::close);
+
+        // Then
+        assertThat(thrown).isInstanceOf(RubiksElasticsearchException.class).hasMessageContaining(TheEntityWithDto.class.getName());
+        verify(entityManager, never()).getMetamodel();
+    }
+
+    @Test
+    public void test_suspendForCurrentThread_otherThreadsStillSynced() throws Exception {
+
+        // Given
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3);
+
+        try (ElasticsearchSyncScope scope = elasticsearchSyncService.suspendForCurrentThread(TheEntity.class)) {
+
+            // When
+            elasticsearchSyncService.addAction(TheEntity.class, 3L, ElasticsearchSyncActionEnum.DELETE);
+            Thread other = new Thread(() -> elasticsearchSyncService.addAction(TheEntity.class, 564L, ElasticsearchSyncActionEnum.CREATE));
+            other.start();
+            other.join();
+
+            // Then
+            assertThat(scope.getChanges().get(TheEntity.class).getDeletedIds()).containsExactly("3");
+            ArgumentCaptor<ElasticsearchSyncAction> captor = ArgumentCaptor.forClass(ElasticsearchSyncAction.class);
+            verify(elasticsearchSyncActionRepository, times(1)).save(captor.capture());
+            assertThat(captor.getValue().getObjId()).isEqualTo("564");
+        }
+
+        // Then : without RestHighLevelClient, the recorded changes are left to the sync job
+        ArgumentCaptor<ElasticsearchSyncAction> captor = ArgumentCaptor.forClass(ElasticsearchSyncAction.class);
+        verify(elasticsearchSyncActionRepository, times(2)).save(captor.capture());
+        assertThat(captor.getValue().getObjId()).isEqualTo("3");
+        assertThat(captor.getValue().getAction()).isEqualTo(ElasticsearchSyncActionEnum.DELETE);
+    }
+
+    @Test
+    public void test_addSnapshotAction_saveActionAndAttachCompressedPayload() throws Exception {
+
+        // Given
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3);
+        when(elasticsearchSyncActionRepository.save(any(ElasticsearchSyncAction.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+
+        // When
+        ElasticsearchSyncAction stored = elasticsearchSyncService.addSnapshotAction(TheEntity.class, 564l, ElasticsearchSyncActionEnum.UPDATE);
+        elasticsearchSyncService.attachPayload(stored, "{\"id\":564}");
+
+        // Then
+        verify(elasticsearchSyncActionRepository, times(1)).save(stored);
+        verify(elasticsearchSyncActionRepository, times(1)).saveAndFlush(stored);
+        assertThat(stored.getObjId()).isEqualTo("564");
+        assertThat(new String(ElasticsearchSyncServiceImpl.decompress(stored.getPayload()), StandardCharsets.UTF_8)).isEqualTo("{\"id\":564}");
+    }
+
+    @Test
+    public void test_sync_withPayload_indexNewestPayloadWithoutReloading() throws Exception {
+
+        // Given
+        ElasticsearchSyncAction older = new ElasticsearchSyncAction();
+        older.setAction(ElasticsearchSyncActionEnum.CREATE);
+        older.setObjId("564");
+        older.setObjType("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+        older.setPayload(ElasticsearchSyncServiceImpl.compress("{\"id\":564,\"prop\":\"old\"}"));
+        ElasticsearchSyncAction newer = new ElasticsearchSyncAction();
+        newer.setAction(ElasticsearchSyncActionEnum.UPDATE);
+        newer.setObjId("564");
+        newer.setObjType("nc.rubiks.core.search.elasticsearch.service.impl.TheEntity");
+        newer.setPayload(ElasticsearchSyncServiceImpl.compress("{\"id\":564,\"prop\":\"new\"}"));
+        when(elasticsearchSyncActionRepository.findAllOrderByCreatedDateAsc(3)).thenReturn(Arrays.asList(older, newer));
+
+        ElasticsearchSyncServiceImpl elasticsearchSyncService = new ElasticsearchSyncServiceImpl(elasticsearchSyncActionRepository,
+            Arrays.asList(elasticsearchTheEntityRepository),
+            new ArrayList<>(),
+            entityManager,
+            3,
+            new ElasticsearchSyncThrottle(),
+            new TestMapper());
+
+        // When
+        elasticsearchSyncService.sync();
+
+        // Then : the newest payload is sent as is
+        verify(entityManager, never()).find(TheEntity.class, 564l);
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(elasticsearchTheEntityRepository, times(1)).indexSource(eq("564"), captor.capture());
+        assertThat(new String(captor.getValue(), StandardCharsets.UTF_8)).isEqualTo("{\"id\":564,\"prop\":\"new\"}");
+        verify(elasticsearchTheEntityRepository, never()).save(any(TheEntity.class));
+        verify(elasticsearchSyncActionRepository, times(1)).delete(older);
+        verify(elasticsearchSyncActionRepository, times(1)).delete(newer);
+    }
 }
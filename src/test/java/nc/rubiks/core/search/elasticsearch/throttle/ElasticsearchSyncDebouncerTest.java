@@ -0,0 +1,109 @@
+package nc.rubiks.core.search.elasticsearch.throttle;
+
+import nc.rubiks.core.search.elasticsearch.config.RubiksElasticsearchSyncProperties;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncAction;
+import nc.rubiks.core.search.elasticsearch.entity.ElasticsearchSyncActionEnum;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class ElasticsearchSyncDebouncerTest {
+
+    private static final String HOT_TYPE = "nc.rubiks.core.search.elasticsearch.service.impl.TheEntity";
+    private static final String OTHER_TYPE = "nc.rubiks.core.search.elasticsearch.service.impl.TheEntityWithDto";
+
+    private final Clock clock = Clock.fixed(Instant.parse("2018-01-15T10:00:00Z"), ZoneId.of("UTC"));
+
+    private ElasticsearchSyncDebouncer debouncer;
+
+    private final List<ElasticsearchSyncAction> superseded = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        RubiksElasticsearchSyncProperties properties = new RubiksElasticsearchSyncProperties();
+        RubiksElasticsearchSyncProperties.TypeProperties typeProperties = new RubiksElasticsearchSyncProperties.TypeProperties();
+        typeProperties.getDebounce().setQuietPeriodMilliseconds(2000);
+        typeProperties.getDebounce().setMaxDelayMilliseconds(10000);
+        properties.getTypes().put("TheEntity", typeProperties);
+        debouncer = new ElasticsearchSyncDebouncer(properties, clock);
+    }
+
+    private ElasticsearchSyncAction action(String type, String id, long millisAgo) {
+        ElasticsearchSyncAction action = new ElasticsearchSyncAction();
+        action.setAction(ElasticsearchSyncActionEnum.UPDATE);
+        action.setObjType(type);
+        action.setObjId(id);
+        action.setCreatedDate(LocalDateTime.now(clock).minusNanos(millisAgo * 1000000));
+        return action;
+    }
+
+    @Test
+    public void test_filter_recentlyModified_deferred() {
+
+        // Given
+        ElasticsearchSyncAction hot1 = action(HOT_TYPE, "1", 5000);
+        ElasticsearchSyncAction hot2 = action(HOT_TYPE, "1", 500);
+        ElasticsearchSyncAction other = action(OTHER_TYPE, "1", 500);
+
+        // When
+        List<ElasticsearchSyncAction> result = debouncer.filter(Arrays.asList(hot1, other, hot2), superseded::add);
+
+        // Then
+        assertThat(result).containsExactly(other);
+        assertThat(superseded).isEmpty();
+    }
+
+    @Test
+    public void test_filter_quiet_keepNewestOnly() {
+
+        // Given
+        ElasticsearchSyncAction hot1 = action(HOT_TYPE, "1", 5000);
+        ElasticsearchSyncAction hot2 = action(HOT_TYPE, "1", 3000);
+        ElasticsearchSyncAction hot3 = action(HOT_TYPE, "2", 3000);
+
+        // When
+        List<ElasticsearchSyncAction> result = debouncer.filter(Arrays.asList(hot1, hot2, hot3), superseded::add);
+
+        // Then
+        assertThat(result).containsExactly(hot2, hot3);
+        assertThat(superseded).containsExactly(hot1);
+    }
+
+    @Test
+    public void test_filter_neverQuietButOverdue_keepNewestOnly() {
+
+        // Given
+        ElasticsearchSyncAction hot1 = action(HOT_TYPE, "1", 11000);
+        ElasticsearchSyncAction hot2 = action(HOT_TYPE, "1", 100);
+
+        // When
+        List<ElasticsearchSyncAction> result = debouncer.filter(Arrays.asList(hot1, hot2), superseded::add);
+
+        // Then
+        assertThat(result).containsExactly(hot2);
+        assertThat(superseded).containsExactly(hot1);
+    }
+
+    @Test
+    public void test_filter_noDebounce_returnAll() {
+
+        // Given
+        ElasticsearchSyncDebouncer noDebouncer = new ElasticsearchSyncDebouncer(new RubiksElasticsearchSyncProperties(), clock);
+        List<ElasticsearchSyncAction> actions = Arrays.asList(action(HOT_TYPE, "1", 100), action(HOT_TYPE, "1", 50));
+
+        // When & Then
+        assertThat(noDebouncer.filter(actions, superseded::add)).isSameAs(actions);
+    }
+}
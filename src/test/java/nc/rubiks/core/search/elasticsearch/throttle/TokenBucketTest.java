@@ -0,0 +1,82 @@
+package nc.rubiks.core.search.elasticsearch.throttle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public class TokenBucketTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void test_reserve_unlimited_neverWait() {
+
+        // Given
+        TokenBucket bucket = new TokenBucket(0, clock::get);
+
+        // When & Then
+        assertThat(bucket.reserve(1000000)).isEqualTo(0);
+        assertThat(bucket.reserve(1000000)).isEqualTo(0);
+    }
+
+    @Test
+    public void test_reserve_withinBurst_noWait() {
+
+        // Given
+        TokenBucket bucket = new TokenBucket(10, clock::get);
+
+        // When & Then
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.reserve(1)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void test_reserve_inDebt_waitForRefill() {
+
+        // Given
+        TokenBucket bucket = new TokenBucket(10, clock::get);
+        bucket.reserve(15);
+
+        // When
+        long wait = bucket.reserve(1);
+
+        // Then : 5 tokens of debt at 10 tokens/s
+        assertThat(wait).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    @Test
+    public void test_reserve_afterRefill_noWait() {
+
+        // Given
+        TokenBucket bucket = new TokenBucket(10, clock::get);
+        bucket.reserve(15);
+
+        // When
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        // Then
+        assertThat(bucket.reserve(1)).isEqualTo(0);
+    }
+
+    @Test
+    public void test_setRatePerSecond_toUnlimited_noWait() {
+
+        // Given
+        TokenBucket bucket = new TokenBucket(10, clock::get);
+        bucket.reserve(100);
+
+        // When
+        bucket.setRatePerSecond(0);
+
+        // Then
+        assertThat(bucket.reserve(100)).isEqualTo(0);
+        assertThat(bucket.getRatePerSecond()).isEqualTo(0);
+    }
+}
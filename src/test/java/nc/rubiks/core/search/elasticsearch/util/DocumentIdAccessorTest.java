@@ -0,0 +1,141 @@
+package nc.rubiks.core.search.elasticsearch.util;
+
+import nc.rubiks.core.search.elasticsearch.RubiksElasticsearchException;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.persistence.Id;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(JUnit4.class)
+public class DocumentIdAccessorTest {
+
+    public static class EntityWithGetId {
+        private long id;
+
+        public long getId() {
+            return id;
+        }
+    }
+
+    public static class EntityWithIdField {
+        @Id
+        UUID reference;
+        Long id;
+    }
+
+    public static class EntityWithIdGetter {
+        private String code;
+
+        @Id
+        public String getCode() {
+            return code;
+        }
+    }
+
+    public static class ChildEntity extends EntityWithIdField {
+    }
+
+    private static class HiddenEntity {
+        private Integer id;
+
+        public Integer getId() {
+            return id;
+        }
+    }
+
+    @Test
+    public void test_getId_withGetIdMethod() {
+
+        // Given
+        EntityWithGetId entity = new EntityWithGetId();
+        entity.id = 12L;
+
+        // When
+        DocumentIdAccessor accessor = DocumentIdAccessor.of(EntityWithGetId.class);
+
+        // Then
+        assertThat(accessor.getId(entity)).isEqualTo(12L);
+        assertThat(accessor.getIdType()).isEqualTo(Long.class);
+        assertThat(accessor.parseId("12")).isEqualTo(12L);
+    }
+
+    @Test
+    public void test_getId_withIdField_overGetId() {
+
+        // Given
+        UUID reference = UUID.randomUUID();
+        ChildEntity entity = new ChildEntity();
+        entity.reference = reference;
+        entity.id = 3L;
+
+        // When
+        DocumentIdAccessor accessor = DocumentIdAccessor.of(ChildEntity.class);
+
+        // Then
+        assertThat(accessor.getId(entity)).isEqualTo(reference);
+        assertThat(accessor.parseId(reference.toString())).isEqualTo(reference);
+    }
+
+    @Test
+    public void test_getId_withIdGetter() {
+
+        // Given
+        EntityWithIdGetter entity = new EntityWithIdGetter();
+        entity.code = "ABC";
+
+        // When
+        DocumentIdAccessor accessor = DocumentIdAccessor.of(EntityWithIdGetter.class);
+
+        // Then
+        assertThat(accessor.getId(entity)).isEqualTo("ABC");
+        assertThat(accessor.parseId("ABC")).isEqualTo("ABC");
+    }
+
+    @Test
+    public void test_getId_withNonPublicClass() {
+
+        // Given
+        HiddenEntity entity = new HiddenEntity();
+        entity.id = 5;
+
+        // When
+        DocumentIdAccessor accessor = DocumentIdAccessor.of(HiddenEntity.class);
+
+        // Then
+        assertThat(accessor.getId(entity)).isEqualTo(5);
+        assertThat(accessor.parseId("5")).isEqualTo(5);
+    }
+
+    @Test
+    public void test_getId_withHibernateProxy_readIdFromLazyInitializer() {
+
+        // Given : the fields of an uninitialized proxy are never set
+        UUID reference = UUID.randomUUID();
+        LazyInitializer lazyInitializer = mock(LazyInitializer.class);
+        when(lazyInitializer.getIdentifier()).thenReturn(reference);
+        EntityWithIdField proxy = mock(EntityWithIdField.class, withSettings().extraInterfaces(HibernateProxy.class));
+        when(((HibernateProxy) proxy).getHibernateLazyInitializer()).thenReturn(lazyInitializer);
+
+        // When
+        DocumentIdAccessor accessor = DocumentIdAccessor.of(proxy.getClass());
+
+        // Then
+        assertThat(accessor).isSameAs(DocumentIdAccessor.of(EntityWithIdField.class));
+        assertThat(accessor.getId(proxy)).isEqualTo(reference);
+        verify(lazyInitializer, never()).initialize();
+    }
+
+    @Test(expected = RubiksElasticsearchException.class)
+    public void test_of_withoutId_throwException() {
+
+        // When
+        DocumentIdAccessor.of(Object.class);
+    }
+}